@@ -0,0 +1,100 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import com.sopovs.moradanen.tarantool.TarantoolClient;
+import com.sopovs.moradanen.tarantool.TarantoolClientImpl;
+import com.sopovs.moradanen.tarantool.TarantoolConfig;
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+
+import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server benchmarks are run against. By default it is in-process {@link TarantoolStubServer}, so that client side
+ * costs are measured without network and server noise, real Tarantool on localhost:3301 is used with
+ * {@code -p server=tarantool}. Note that allocation reported by GCProfiler includes the one of stub threads, which is
+ * the same for every client.
+ */
+final class BenchmarkServer implements Closeable {
+    static final String STUB = "stub";
+    static final String TARANTOOL = "tarantool";
+    static final String USERNAME = "admin";
+    static final String PASSWORD = "javapass";
+
+    @Nullable
+    private final TarantoolStubServer stub;
+
+    BenchmarkServer(String server, long latencyMicros) {
+        switch (server) {
+            case STUB:
+                stub = new TarantoolStubServer()
+                        .withUser(USERNAME, PASSWORD)
+                        .withLatency(latencyMicros, TimeUnit.MICROSECONDS);
+                break;
+            case TARANTOOL:
+                stub = null;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown server " + server);
+        }
+    }
+
+    @Nullable
+    TarantoolStubServer getStub() {
+        return stub;
+    }
+
+    int getPort() {
+        return stub == null ? 3301 : stub.getPort();
+    }
+
+    TarantoolConfig config(boolean nio) {
+        return new TarantoolConfig("localhost", getPort(), USERNAME, PASSWORD, nio);
+    }
+
+    TarantoolClient client() {
+        return new TarantoolClientImpl("localhost", getPort(), USERNAME, PASSWORD);
+    }
+
+    /**
+     * Creates space with primary index over integer first field filled with {@code (i, "FooBar" + i)} tuples.
+     */
+    int createSpace(String name, String indexType, int size) {
+        try (TarantoolClient client = client()) {
+            int space;
+            if (stub == null) {
+                client.evalFully("box.schema.space.create('" + name + "')").close();
+                client.evalFully("box.space." + name + ":create_index('primary', {type = '" + indexType
+                        + "', parts = {1, 'num'}})").close();
+                space = client.space(name);
+            } else {
+                space = stub.createSpace(name);
+            }
+            for (int i = 0; i < size; i++) {
+                client.insert(space);
+                client.setInt(i);
+                client.setString("FooBar" + i);
+                client.addBatch();
+            }
+            client.executeBatch();
+            return space;
+        }
+    }
+
+    void dropSpace(String name, int space) {
+        if (stub == null) {
+            try (TarantoolClient client = client()) {
+                client.evalFully("box.space." + name + ":drop()").close();
+            }
+        } else {
+            stub.dropSpace(space);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+}
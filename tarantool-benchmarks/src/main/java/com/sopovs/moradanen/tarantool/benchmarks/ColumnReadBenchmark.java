@@ -0,0 +1,88 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import com.sopovs.moradanen.tarantool.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Select of many rows that needs only the integer field of them, read row by row with {@link Result#next()} compared
+ * with {@link Result#readColumns(int[], Column...)} into a reused column.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ColumnReadBenchmark {
+    private static final int[] ID_FIELD = {0};
+
+    private TarantoolClientSource clientSource;
+    private BenchmarkServer benchmarkServer;
+    private int space;
+    private final LongColumn ids = new LongColumn();
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"0"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ColumnReadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup
+    public void setup() {
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        clientSource = new TarantoolPooledClientSource(benchmarkServer.config(false), 1);
+        space = benchmarkServer.createSpace("javabenchmark", "tree", size);
+    }
+
+    @Benchmark
+    public long rows() {
+        try (TarantoolClient client = clientSource.getClient()) {
+            client.selectAll(space);
+            Result result = client.execute();
+            long sum = 0;
+            while (result.next()) {
+                sum += result.getLong(0);
+            }
+            return sum;
+        }
+    }
+
+    @Benchmark
+    public long columns() {
+        try (TarantoolClient client = clientSource.getClient()) {
+            client.selectAll(space);
+            ids.clear();
+            client.execute().readColumns(ID_FIELD, ids);
+            long sum = 0;
+            for (int row = 0; row < ids.size(); row++) {
+                sum += ids.get(row);
+            }
+            return sum;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkServer.dropSpace("javabenchmark", space);
+        clientSource.close();
+        benchmarkServer.close();
+    }
+}
@@ -3,6 +3,11 @@ package com.sopovs.moradanen.tarantool.benchmarks;
 import com.sopovs.moradanen.tarantool.*;
 import com.sopovs.moradanen.tarantool.core.Iter;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.tarantool.TarantoolClientConfig;
 
 import java.net.InetSocketAddress;
@@ -53,51 +58,66 @@ public class ConcurrentSelectBenchmark {
 
     private static final String THREAD_LOCAL = "threadLocal";
     private static final String POOLED_CLIENT_SOURCE = "pooledClientSource";
+    private static final String SYNCHRONIZED_POOLED_CLIENT_SOURCE = "synchronizedPooledClientSource";
     private static final String REFERENCE_CLIENT = "upstreamClient";
+    private static final String ASYNC_CLIENT = "asyncClient";
     int size = 10000;
     private org.tarantool.TarantoolClient referenceClient;
     private TarantoolClientSource clientSource;
     private ThreadLocal<TarantoolClient> threadLocalClient;
+    private TarantoolAsyncClient asyncClient;
     private int space;
+    private BenchmarkServer benchmarkServer;
 
-    @Param({REFERENCE_CLIENT, POOLED_CLIENT_SOURCE, THREAD_LOCAL})
+    @Param({REFERENCE_CLIENT, POOLED_CLIENT_SOURCE, SYNCHRONIZED_POOLED_CLIENT_SOURCE, THREAD_LOCAL, ASYNC_CLIENT})
     public String type;
 
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"0"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ConcurrentSelectBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
     @Setup
     public void setup() throws Exception {
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        int port = benchmarkServer.getPort();
         switch (type) {
             case REFERENCE_CLIENT:
-                SocketChannel referenceClientChannel = SocketChannel.open(new InetSocketAddress("localhost", 3301));
+                SocketChannel referenceClientChannel = SocketChannel.open(new InetSocketAddress("localhost", port));
                 TarantoolClientConfig tarantoolClientConfig = new TarantoolClientConfig();
-                tarantoolClientConfig.username = "admin";
-                tarantoolClientConfig.password = "javapass";
+                tarantoolClientConfig.username = BenchmarkServer.USERNAME;
+                tarantoolClientConfig.password = BenchmarkServer.PASSWORD;
                 referenceClient = new org.tarantool.TarantoolClientImpl((r, e) -> referenceClientChannel,
                         tarantoolClientConfig);
                 break;
             case POOLED_CLIENT_SOURCE:
-                clientSource = new TarantoolPooledClientSource("localhost", 3301, "admin", "javapass", 16);
+                clientSource = new TarantoolPooledClientSource(benchmarkServer.config(false), 16);
+                break;
+            case SYNCHRONIZED_POOLED_CLIENT_SOURCE:
+                clientSource = new SynchronizedPooledClientSource("localhost", port,
+                        BenchmarkServer.USERNAME, BenchmarkServer.PASSWORD, 16);
                 break;
             case THREAD_LOCAL:
-                threadLocalClient = ThreadLocal.withInitial(() -> new TarantoolClientImpl("localhost", "admin", "javapass"));
+                threadLocalClient = ThreadLocal.withInitial(benchmarkServer::client);
+                break;
+            case ASYNC_CLIENT:
+                asyncClient = new TarantoolAsyncClientImpl("localhost", port,
+                        BenchmarkServer.USERNAME, BenchmarkServer.PASSWORD);
                 break;
             default:
                 throw new IllegalStateException();
         }
 
-        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
-            client.evalFully("box.schema.space.create('javabenchmark')").close();
-            client.evalFully(
-                    "box.space.javabenchmark:create_index('primary', {type = 'hash', parts = {1, 'num'}})")
-                    .close();
-            space = client.space("javabenchmark");
-            for (int i = 0; i < size; i++) {
-                client.insert(space);
-                client.setInt(i);
-                client.setString("FooBar" + i);
-                client.addBatch();
-            }
-            client.executeBatch();
-        }
+        space = benchmarkServer.createSpace("javabenchmark", "hash", size);
     }
 
     @Benchmark
@@ -106,9 +126,12 @@ public class ConcurrentSelectBenchmark {
             case REFERENCE_CLIENT:
                 return referenceClient();
             case POOLED_CLIENT_SOURCE:
+            case SYNCHRONIZED_POOLED_CLIENT_SOURCE:
                 return clientSource();
             case THREAD_LOCAL:
                 return threadLocal();
+            case ASYNC_CLIENT:
+                return asyncClient();
             default:
                 throw new IllegalStateException();
         }
@@ -120,9 +143,12 @@ public class ConcurrentSelectBenchmark {
             case REFERENCE_CLIENT:
                 return referenceClientAll();
             case POOLED_CLIENT_SOURCE:
+            case SYNCHRONIZED_POOLED_CLIENT_SOURCE:
                 return clientSourceAll();
             case THREAD_LOCAL:
                 return threadLocalAll();
+            case ASYNC_CLIENT:
+                return asyncClientAll();
             default:
                 throw new IllegalStateException();
         }
@@ -148,6 +174,31 @@ public class ConcurrentSelectBenchmark {
         return fromClient(threadLocalClient.get());
     }
 
+    String asyncClient() {
+        int key = ThreadLocalRandom.current().nextInt(size);
+        Result result = asyncClient.execute(query -> {
+            query.select(space, 0);
+            query.setInt(key);
+        }).join();
+        if (result.getSize() != 1) {
+            throw new IllegalStateException();
+        }
+        result.next();
+        return result.getString(1);
+    }
+
+    List<String> asyncClientAll() {
+        Result select = asyncClient.execute(query -> query.selectAll(space)).join();
+        if (select.getSize() != size) {
+            throw new IllegalStateException();
+        }
+        List<String> result = new ArrayList<>(select.getSize());
+        while (select.next()) {
+            result.add(select.getString(1));
+        }
+        return result;
+    }
+
     private String fromClient(TarantoolClient client) {
         int key = ThreadLocalRandom.current().nextInt(size);
         client.select(space, 0);
@@ -198,21 +249,24 @@ public class ConcurrentSelectBenchmark {
 
     @TearDown
     public void tearDown() {
-        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
-            client.evalFully("box.space.javabenchmark:drop()").close();
-        }
+        benchmarkServer.dropSpace("javabenchmark", space);
         switch (type) {
             case REFERENCE_CLIENT:
                 referenceClient.close();
                 break;
             case POOLED_CLIENT_SOURCE:
+            case SYNCHRONIZED_POOLED_CLIENT_SOURCE:
                 clientSource.close();
                 break;
             case THREAD_LOCAL:
                 // TODO leave to gc?
                 break;
+            case ASYNC_CLIENT:
+                asyncClient.close();
+                break;
             default:
                 throw new IllegalStateException();
         }
+        benchmarkServer.close();
     }
 }
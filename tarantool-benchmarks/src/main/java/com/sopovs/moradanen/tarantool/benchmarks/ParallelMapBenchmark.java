@@ -0,0 +1,91 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import com.sopovs.moradanen.tarantool.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Select of many rows mapped to objects by {@link TarantoolTemplate#selectAndMapAll(int,
+ * TarantoolTemplate.ResultRowMapper)} on the calling thread compared with mapping them in parallel in a pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ParallelMapBenchmark {
+    private static final TarantoolTemplate.ResultRowMapper<Row> MAPPER =
+            result -> new Row(result.getLong(0), result.getString(1));
+
+    private TarantoolClientSource clientSource;
+    private TarantoolTemplate template;
+    private BenchmarkServer benchmarkServer;
+    private ForkJoinPool pool;
+    private int space;
+
+    @Param({"100000"})
+    public int size;
+
+    @Param({"4"})
+    public int parallelism = 4;
+
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"0"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ParallelMapBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup
+    public void setup() {
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        clientSource = new TarantoolPooledClientSource(benchmarkServer.config(false), 1);
+        template = new TarantoolTemplate(clientSource);
+        pool = new ForkJoinPool(parallelism);
+        space = benchmarkServer.createSpace("javabenchmark", "tree", size);
+    }
+
+    @Benchmark
+    public List<Row> sequential() {
+        return template.selectAndMapAll(space, MAPPER);
+    }
+
+    @Benchmark
+    public List<Row> parallel() {
+        return template.selectAndMapAll(space, MAPPER, pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkServer.dropSpace("javabenchmark", space);
+        pool.shutdown();
+        clientSource.close();
+        benchmarkServer.close();
+    }
+
+    static final class Row {
+        final long id;
+        final String name;
+
+        Row(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
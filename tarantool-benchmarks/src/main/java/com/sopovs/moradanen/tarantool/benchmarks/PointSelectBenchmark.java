@@ -0,0 +1,87 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import com.sopovs.moradanen.tarantool.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Select of a single row by primary key set value by value compared with {@link TarantoolQuery#selectByLong}, which
+ * encodes the whole request at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PointSelectBenchmark {
+
+    private TarantoolClient client;
+    private BenchmarkServer benchmarkServer;
+    private int space;
+    private long key;
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"0"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PointSelectBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup
+    public void setup() {
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        client = benchmarkServer.client();
+        space = benchmarkServer.createSpace("javabenchmark", "hash", size);
+    }
+
+    @Benchmark
+    public int select() {
+        client.select(space, 0);
+        client.setLong(nextKey());
+        return readFirst();
+    }
+
+    @Benchmark
+    public int selectByLong() {
+        client.selectByLong(space, 0, nextKey());
+        return readFirst();
+    }
+
+    private long nextKey() {
+        long result = key;
+        key = (key + 1) % size;
+        return result;
+    }
+
+    private int readFirst() {
+        Result result = client.execute();
+        result.next();
+        int id = result.getInt(0);
+        result.close();
+        return id;
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        benchmarkServer.dropSpace("javabenchmark", space);
+        benchmarkServer.close();
+    }
+}
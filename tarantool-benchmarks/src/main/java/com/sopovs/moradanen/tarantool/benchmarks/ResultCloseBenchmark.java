@@ -0,0 +1,82 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import com.sopovs.moradanen.tarantool.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Select of many rows that reads only the first one and leaves the rest to {@link Result#close()} called by pooled
+ * client proxy, compared with reading all of them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResultCloseBenchmark {
+
+    private TarantoolClientSource clientSource;
+    private BenchmarkServer benchmarkServer;
+    private int space;
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"0"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ResultCloseBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup
+    public void setup() {
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        clientSource = new TarantoolPooledClientSource(benchmarkServer.config(false), 1);
+        space = benchmarkServer.createSpace("javabenchmark", "tree", size);
+    }
+
+    @Benchmark
+    public int readFirstAndClose() {
+        try (TarantoolClient client = clientSource.getClient()) {
+            client.selectAll(space);
+            Result result = client.execute();
+            result.next();
+            return result.getInt(0);
+        }
+    }
+
+    @Benchmark
+    public int readAll() {
+        try (TarantoolClient client = clientSource.getClient()) {
+            client.selectAll(space);
+            Result result = client.execute();
+            int sum = 0;
+            while (result.next()) {
+                sum += result.getInt(0);
+            }
+            return sum;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        benchmarkServer.dropSpace("javabenchmark", space);
+        clientSource.close();
+        benchmarkServer.close();
+    }
+}
@@ -0,0 +1,98 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import com.sopovs.moradanen.tarantool.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of a space with {@link TarantoolCursor} selecting pages one after another compared with the next page
+ * prefetched by another pooled connection and by a pipelined request of {@link TarantoolAsyncClient}. Difference is
+ * seen with latency of the stub or of network.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ScanBenchmark {
+    private static final int[] KEY = {0};
+
+    private BenchmarkServer benchmarkServer;
+    private TarantoolClientSource clientSource;
+    private TarantoolAsyncClient asyncClient;
+    private ExecutorService executor;
+    private int space;
+
+    @Param({"10000"})
+    public int size;
+
+    @Param({"100"})
+    public int pageSize;
+
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"100"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ScanBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    @Setup
+    public void setup() {
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        clientSource = new TarantoolPooledClientSource(benchmarkServer.config(false), 2);
+        asyncClient = new TarantoolAsyncClientImpl("localhost", benchmarkServer.getPort(),
+                BenchmarkServer.USERNAME, BenchmarkServer.PASSWORD);
+        executor = Executors.newSingleThreadExecutor();
+        space = benchmarkServer.createSpace("javabenchmark", "tree", size);
+    }
+
+    @Benchmark
+    public long sequential() {
+        return sum(new TarantoolCursor(clientSource, space, 0, KEY, pageSize, null));
+    }
+
+    @Benchmark
+    public long prefetch() {
+        return sum(new TarantoolCursor(clientSource, space, 0, KEY, pageSize, executor));
+    }
+
+    @Benchmark
+    public long pipelined() {
+        return sum(new TarantoolCursor(asyncClient, space, 0, KEY, pageSize));
+    }
+
+    private static long sum(TarantoolCursor cursor) {
+        long sum = 0;
+        try (TarantoolCursor ignored = cursor) {
+            while (cursor.next()) {
+                sum += cursor.getLong(0);
+            }
+        }
+        return sum;
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+        asyncClient.close();
+        clientSource.close();
+        benchmarkServer.dropSpace("javabenchmark", space);
+        benchmarkServer.close();
+    }
+}
@@ -2,7 +2,13 @@ package com.sopovs.moradanen.tarantool.benchmarks;
 
 import com.sopovs.moradanen.tarantool.*;
 import com.sopovs.moradanen.tarantool.core.Iter;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.tarantool.TarantoolClientConfig;
 import org.tarantool.TarantoolConnection;
 
@@ -11,6 +17,7 @@ import java.net.Socket;
 import java.nio.channels.SocketChannel;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
@@ -64,31 +71,64 @@ public class SingleSelectBenchmark {
     private org.tarantool.TarantoolClient referenceClient;
     private TarantoolClientSource clientSource;
     private TarantoolTemplate template;
+    private TarantoolClientSource channelClientSource;
+    private TarantoolTemplate channelTemplate;
     private Connection jdbcConnection;
     private Connection upstreamJdbcConnection;
     private int space;
+    private BenchmarkServer benchmarkServer;
 
     @Param({"1", "100", "10000"})
     public int size;
 
+    @Param({BenchmarkServer.STUB})
+    public String server = BenchmarkServer.STUB;
+
+    @Param({"0"})
+    public long stubLatencyMicros;
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SingleSelectBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
     @Setup
     public void setup() throws Exception {
-        SocketChannel referenceClientChannel = SocketChannel.open(new InetSocketAddress("localhost", 3301));
+        benchmarkServer = new BenchmarkServer(server, stubLatencyMicros);
+        int port = benchmarkServer.getPort();
+        SocketChannel referenceClientChannel = SocketChannel.open(new InetSocketAddress("localhost", port));
         TarantoolClientConfig tarantoolClientConfig = new TarantoolClientConfig();
-        tarantoolClientConfig.username = "admin";
-        tarantoolClientConfig.password = "javapass";
+        tarantoolClientConfig.username = BenchmarkServer.USERNAME;
+        tarantoolClientConfig.password = BenchmarkServer.PASSWORD;
         referenceClient = new org.tarantool.TarantoolClientImpl((r, e) -> referenceClientChannel, tarantoolClientConfig);
-        connection = new TarantoolConnection("admin", "javapass", new Socket("localhost", 3301));
-        clientSource = new TarantoolPooledClientSource("localhost", 3301, "admin", "javapass", 1);
+        connection = new TarantoolConnection(BenchmarkServer.USERNAME, BenchmarkServer.PASSWORD,
+                new Socket("localhost", port));
+        clientSource = new TarantoolPooledClientSource(benchmarkServer.config(false), 1);
 
         template = new TarantoolTemplate(clientSource);
-        jdbcConnection = new com.sopovs.moradanen.tarantool.jdbc.TarantoolConnection(new TarantoolClientImpl("localhost", 3301, "admin", "javapass"));
-        upstreamJdbcConnection = new org.tarantool.jdbc.SQLDriver().connect("tarantool://localhost:3301?user=admin&password=javapass", new Properties());
+        channelClientSource = new TarantoolPooledClientSource(benchmarkServer.config(true), 1);
+        channelTemplate = new TarantoolTemplate(channelClientSource);
+        jdbcConnection = new com.sopovs.moradanen.tarantool.jdbc.TarantoolConnection(benchmarkServer.client());
+        upstreamJdbcConnection = new org.tarantool.jdbc.SQLDriver().connect("tarantool://localhost:" + port
+                + "?user=" + BenchmarkServer.USERNAME + "&password=" + BenchmarkServer.PASSWORD, new Properties());
         setupData();
 
     }
 
     private void setupData() throws SQLException {
+        TarantoolStubServer stub = benchmarkServer.getStub();
+        if (stub != null) {
+            space = benchmarkServer.createSpace("JDBCBENCHMARK", "tree", size);
+            List<List<?>> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                rows.add(Arrays.asList(i, "FooBar" + i));
+            }
+            stub.withSqlResult("SELECT * FROM JDBCBENCHMARK", Arrays.asList("C1", "C2"), rows);
+            return;
+        }
         try (Statement st = jdbcConnection.createStatement();
              PreparedStatement pst = jdbcConnection.prepareStatement("INSERT INTO JDBCBENCHMARK VALUES(?,?)")) {
             st.executeUpdate("CREATE TABLE JDBCBENCHMARK(C1 INTEGER PRIMARY KEY, C2 VARCHAR(100))");
@@ -130,6 +170,11 @@ public class SingleSelectBenchmark {
         return template.selectAndMapAll(space, res -> new Foo(res.getInt(0), res.getString(1)));
     }
 
+    @Benchmark
+    public List<Foo> channelClient() {
+        return channelTemplate.selectAndMapAll(space, res -> new Foo(res.getInt(0), res.getString(1)));
+    }
+
     public static final class Foo {
         private final int id;
         private final String val;
@@ -161,13 +206,18 @@ public class SingleSelectBenchmark {
 
     @TearDown
     public void tearDown() throws SQLException {
-        try (Statement st = jdbcConnection.createStatement()) {
-            st.executeUpdate("DROP TABLE JDBCBENCHMARK");
+        if (benchmarkServer.getStub() == null) {
+            try (Statement st = jdbcConnection.createStatement()) {
+                st.executeUpdate("DROP TABLE JDBCBENCHMARK");
+            }
         }
 
         connection.close();
         referenceClient.close();
         clientSource.close();
+        channelClientSource.close();
         jdbcConnection.close();
+        upstreamJdbcConnection.close();
+        benchmarkServer.close();
     }
 }
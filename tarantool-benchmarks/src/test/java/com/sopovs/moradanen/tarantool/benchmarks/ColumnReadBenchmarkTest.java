@@ -0,0 +1,34 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ColumnReadBenchmarkTest {
+
+    private final ColumnReadBenchmark benchmark = new ColumnReadBenchmark();
+
+    @BeforeEach
+    void setup() {
+        benchmark.size = 33;
+        benchmark.setup();
+    }
+
+    @Test
+    void testRows() {
+        assertEquals(33 * 32 / 2, benchmark.rows());
+    }
+
+    @Test
+    void testColumns() {
+        assertEquals(33 * 32 / 2, benchmark.columns());
+        assertEquals(33 * 32 / 2, benchmark.columns());
+    }
+
+    @AfterEach
+    void tearDown() {
+        benchmark.tearDown();
+    }
+}
@@ -26,6 +26,13 @@ class ConcurrentSelectBenchmarkTest {
         assertTrue(benchmark.clientSource().startsWith("FooBar"));
     }
 
+    @Test
+    void testSynchronizedClient() throws Exception {
+        benchmark.type = "synchronizedPooledClientSource";
+        benchmark.setup();
+        assertTrue(benchmark.clientSource().startsWith("FooBar"));
+    }
+
     @Test
     void testReferenceClient() throws Exception {
         benchmark.type = "upstreamClient";
@@ -40,6 +47,12 @@ class ConcurrentSelectBenchmarkTest {
         assertTrue(benchmark.threadLocal().startsWith("FooBar"));
     }
 
+    @Test
+    void testAsyncClient() throws Exception {
+        benchmark.type = "asyncClient";
+        benchmark.setup();
+        assertTrue(benchmark.asyncClient().startsWith("FooBar"));
+    }
 
     @Test
     void testClientAll() throws Exception {
@@ -62,6 +75,13 @@ class ConcurrentSelectBenchmarkTest {
         assertEquals(expectedAll(), benchmark.threadLocalAll());
     }
 
+    @Test
+    void testAsyncClientAll() throws Exception {
+        benchmark.type = "asyncClient";
+        benchmark.setup();
+        assertEquals(expectedAll(), benchmark.asyncClientAll());
+    }
+
     private static List<String> expectedAll() {
         List<String> result = new ArrayList<>(33);
         for (int i = 0; i < 33; i++) {
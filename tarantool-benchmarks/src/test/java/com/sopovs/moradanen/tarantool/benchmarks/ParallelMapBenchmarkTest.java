@@ -0,0 +1,45 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ParallelMapBenchmarkTest {
+
+    private final ParallelMapBenchmark benchmark = new ParallelMapBenchmark();
+
+    @BeforeEach
+    void setup() {
+        benchmark.size = 1000;
+        benchmark.setup();
+    }
+
+    private static void assertRows(List<ParallelMapBenchmark.Row> rows) {
+        assertEquals(1000, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(i, rows.get(i).id);
+            assertEquals("FooBar" + i, rows.get(i).name);
+        }
+    }
+
+    @Test
+    void testSequential() {
+        assertRows(benchmark.sequential());
+    }
+
+    @Test
+    void testParallel() {
+        assertRows(benchmark.parallel());
+        assertRows(benchmark.parallel());
+        assertRows(benchmark.sequential());
+    }
+
+    @AfterEach
+    void tearDown() {
+        benchmark.tearDown();
+    }
+}
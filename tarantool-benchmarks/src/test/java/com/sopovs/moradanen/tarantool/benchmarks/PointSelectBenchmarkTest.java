@@ -0,0 +1,39 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PointSelectBenchmarkTest {
+
+    private final PointSelectBenchmark benchmark = new PointSelectBenchmark();
+
+    @BeforeEach
+    void setup() {
+        benchmark.size = 3;
+        benchmark.setup();
+    }
+
+    @Test
+    void testSelect() {
+        assertEquals(0, benchmark.select());
+        assertEquals(1, benchmark.select());
+        assertEquals(2, benchmark.select());
+        assertEquals(0, benchmark.select());
+    }
+
+    @Test
+    void testSelectByLong() {
+        assertEquals(0, benchmark.selectByLong());
+        assertEquals(1, benchmark.selectByLong());
+        assertEquals(2, benchmark.selectByLong());
+        assertEquals(0, benchmark.selectByLong());
+    }
+
+    @AfterEach
+    void tearDown() {
+        benchmark.tearDown();
+    }
+}
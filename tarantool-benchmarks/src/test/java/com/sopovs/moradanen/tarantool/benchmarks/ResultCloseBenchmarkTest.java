@@ -0,0 +1,34 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ResultCloseBenchmarkTest {
+
+    private final ResultCloseBenchmark benchmark = new ResultCloseBenchmark();
+
+    @BeforeEach
+    void setup() {
+        benchmark.size = 33;
+        benchmark.setup();
+    }
+
+    @Test
+    void testReadFirstAndClose() {
+        assertEquals(0, benchmark.readFirstAndClose());
+        assertEquals(0, benchmark.readFirstAndClose());
+    }
+
+    @Test
+    void testReadAll() {
+        assertEquals(33 * 32 / 2, benchmark.readAll());
+    }
+
+    @AfterEach
+    void tearDown() {
+        benchmark.tearDown();
+    }
+}
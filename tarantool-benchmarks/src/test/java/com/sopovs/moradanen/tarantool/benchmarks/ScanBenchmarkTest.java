@@ -0,0 +1,40 @@
+package com.sopovs.moradanen.tarantool.benchmarks;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ScanBenchmarkTest {
+
+    private final ScanBenchmark benchmark = new ScanBenchmark();
+
+    @BeforeEach
+    void setup() {
+        benchmark.size = 25;
+        benchmark.pageSize = 10;
+        benchmark.stubLatencyMicros = 0;
+        benchmark.setup();
+    }
+
+    @Test
+    void testSequential() {
+        assertEquals(300, benchmark.sequential());
+    }
+
+    @Test
+    void testPrefetch() {
+        assertEquals(300, benchmark.prefetch());
+    }
+
+    @Test
+    void testPipelined() {
+        assertEquals(300, benchmark.pipelined());
+    }
+
+    @AfterEach
+    void tearDown() {
+        benchmark.tearDown();
+    }
+}
@@ -7,20 +7,13 @@ import org.junit.jupiter.api.Test;
 import java.sql.SQLException;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 class SingleSelectBenchmarkTest {
 
     private final SingleSelectBenchmark benchmark = new SingleSelectBenchmark();
 
-    private static String getEnvTarantoolVersion() {
-        String version = System.getenv("TARANTOOL_VERSION");
-        return version == null ? "2" : version;
-    }
-
     @BeforeEach
     void setup() throws Exception {
-        assumeTrue(getEnvTarantoolVersion().startsWith("2"));
         benchmark.size = 33;
         benchmark.setup();
     }
@@ -30,6 +23,11 @@ class SingleSelectBenchmarkTest {
         assertEquals(33, benchmark.client().size());
     }
 
+    @Test
+    void testChannelClient() {
+        assertEquals(33, benchmark.channelClient().size());
+    }
+
     @Test
     void testReferenceClient() {
         assertEquals(33, benchmark.upstreamClient().size());
@@ -52,8 +50,6 @@ class SingleSelectBenchmarkTest {
 
     @AfterEach
     void tearDown() throws SQLException {
-        if (getEnvTarantoolVersion().startsWith("2")) {
-            benchmark.tearDown();
-        }
+        benchmark.tearDown();
     }
 }
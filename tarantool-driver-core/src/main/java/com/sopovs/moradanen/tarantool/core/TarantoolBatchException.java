@@ -0,0 +1,25 @@
+package com.sopovs.moradanen.tarantool.core;
+
+/**
+ * Thrown when some queries of a batch failed, responses to all of them are read by then, so the client stays usable.
+ */
+public class TarantoolBatchException extends TarantoolException {
+    private static final long serialVersionUID = 1L;
+    /**
+     * Update count of a failed query, the same as {@code java.sql.Statement.EXECUTE_FAILED}.
+     */
+    public static final int EXECUTE_FAILED = -3;
+    private final int[] updateCounts;
+
+    public TarantoolBatchException(int[] updateCounts, TarantoolException cause) {
+        super(cause.getMessage(), cause);
+        this.updateCounts = updateCounts;
+    }
+
+    /**
+     * @return update counts of all queries of the batch in order, {@link #EXECUTE_FAILED} for failed ones
+     */
+    public int[] getUpdateCounts() {
+        return updateCounts.clone();
+    }
+}
@@ -0,0 +1,12 @@
+package com.sopovs.moradanen.tarantool.core;
+
+/**
+ * Server rejected request sent with schema version older than the current one, ids resolved by names may be stale.
+ */
+public class TarantoolSchemaException extends TarantoolException {
+    private static final long serialVersionUID = 1L;
+
+    public TarantoolSchemaException(String message) {
+        super(message);
+    }
+}
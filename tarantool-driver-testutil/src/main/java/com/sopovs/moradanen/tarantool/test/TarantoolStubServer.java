@@ -0,0 +1,828 @@
+package com.sopovs.moradanen.tarantool.test;
+
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ArrayValue;
+import org.msgpack.value.ImmutableValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal in-process server speaking Tarantool binary protocol (IPROTO). It knows greeting, chap-sha1 auth, ping,
+ * select/insert/replace/delete over in-memory spaces, canned results for eval, call and SQL execute and prepare and may add artificial
+ * latency to every response. Intended for hermetic tests and benchmarks of the client side only - it does not try to
+ * mimic Tarantool behavior beyond that.
+ */
+public class TarantoolStubServer implements Closeable {
+
+    public static final String VERSION = "2.3.1-stub";
+
+    private static final int KEY_CODE = 0x00;
+    private static final int KEY_SYNC = 0x01;
+    private static final int KEY_SCHEMA_ID = 0x05;
+    private static final int KEY_SPACE = 0x10;
+    private static final int KEY_INDEX = 0x11;
+    private static final int KEY_LIMIT = 0x12;
+    private static final int KEY_OFFSET = 0x13;
+    private static final int KEY_ITERATOR = 0x14;
+    private static final int KEY_KEY = 0x20;
+    private static final int KEY_TUPLE = 0x21;
+    private static final int KEY_FUNCTION = 0x22;
+    private static final int KEY_USER_NAME = 0x23;
+    private static final int KEY_EXPRESSION = 0x27;
+    private static final int KEY_DATA = 0x30;
+    private static final int KEY_ERROR = 0x31;
+    private static final int KEY_METADATA = 0x32;
+    private static final int KEY_BIND_METADATA = 0x33;
+    private static final int KEY_BIND_COUNT = 0x34;
+    private static final int KEY_SQL_TEXT = 0x40;
+    private static final int KEY_SQL_INFO = 0x42;
+    private static final int KEY_STMT_ID = 0x43;
+
+    private static final int CODE_SELECT = 1;
+    private static final int CODE_INSERT = 2;
+    private static final int CODE_REPLACE = 3;
+    private static final int CODE_DELETE = 5;
+    private static final int CODE_AUTH = 7;
+    private static final int CODE_EVAL = 8;
+    private static final int CODE_CALL = 10;
+    private static final int CODE_EXECUTE = 11;
+    private static final int CODE_PREPARE = 13;
+    private static final int CODE_PING = 64;
+
+    private static final int ITER_EQ = 0;
+    private static final int ITER_ALL = 2;
+    private static final int ITER_LT = 3;
+    private static final int ITER_LE = 4;
+    private static final int ITER_GE = 5;
+    private static final int ITER_GT = 6;
+
+    private static final int ER_UNSUPPORTED = 2;
+    private static final int ER_TUPLE_FOUND = 3;
+    private static final int ER_ACCESS_DENIED = 42;
+    private static final int ER_PROC_LUA = 32;
+    private static final int ER_NO_SUCH_PROC = 33;
+    private static final int ER_NO_SUCH_INDEX = 35;
+    private static final int ER_NO_SUCH_SPACE = 36;
+    private static final int ER_PASSWORD_MISMATCH = 47;
+    private static final int ER_WRONG_SCHEMA_VERSION = 109;
+    private static final int ER_WRONG_QUERY_ID = 195;
+
+    private static final int SPACE_VSPACE = 281;
+    private static final int SPACE_VINDEX = 289;
+    private static final int FIRST_USER_SPACE = 512;
+    private static final int HEADER_SIZE = 1 + 2 + 4 + 2 + 8 + 2 + 4;
+
+    private final ServerSocket serverSocket;
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Space> spaces = new ConcurrentHashMap<>();
+    private final Map<String, ImmutableValue> evalResults = new ConcurrentHashMap<>();
+    private final Map<String, ImmutableValue> callResults = new ConcurrentHashMap<>();
+    private final Map<String, String> callErrors = new ConcurrentHashMap<>();
+    private final Map<String, SqlResponse> sqlResults = new ConcurrentHashMap<>();
+    private final Map<Long, String> statements = new ConcurrentHashMap<>();
+    private final List<Socket> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextSpaceId = new AtomicInteger(FIRST_USER_SPACE);
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger accepted = new AtomicInteger();
+    private volatile ImmutableValue lastArguments = ValueFactory.emptyArray();
+    private volatile int schemaId = 1;
+    private volatile long latencyNanos;
+
+    public TarantoolStubServer() {
+        this(0);
+    }
+
+    public TarantoolStubServer(int port) {
+        try {
+            serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        spaces.put(SPACE_VSPACE, new Space(SPACE_VSPACE, "_vspace", new int[][]{{0}, {1}, {2}}));
+        spaces.put(SPACE_VINDEX, new Space(SPACE_VINDEX, "_vindex", new int[][]{{0, 1}, {2}, {0, 2}}));
+        Thread acceptor = new Thread(this::accept, "tarantool-stub-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public TarantoolStubServer withUser(String user, String password) {
+        users.put(user, password);
+        return this;
+    }
+
+    public TarantoolStubServer withLatency(long latency, TimeUnit unit) {
+        latencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of connections accepted since start, including closed ones
+     */
+    public int getAcceptedCount() {
+        return accepted.get();
+    }
+
+    /**
+     * @return arguments of the last eval or call
+     */
+    public ImmutableValue getLastArguments() {
+        return lastArguments;
+    }
+
+    /**
+     * @return number of SQL statements prepared and not unprepared yet by all connections
+     */
+    public int getPreparedCount() {
+        return statements.size();
+    }
+
+    public int getSchemaId() {
+        return schemaId;
+    }
+
+    /**
+     * Creates space with tree primary index over its first field.
+     *
+     * @param fields names of fields in space format, all of type any
+     */
+    public int createSpace(String name, String... fields) {
+        int id = nextSpaceId.getAndIncrement();
+        Space space = new Space(id, name, new int[][]{{0}});
+        spaces.put(id, space);
+        Value[] format = new Value[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            format[i] = ValueFactory.newMap(ValueFactory.newString("name"), ValueFactory.newString(fields[i]),
+                    ValueFactory.newString("type"), ValueFactory.newString("any"));
+        }
+        spaces.get(SPACE_VSPACE).put(tuple(id, 1, name, "memtx", 0, ValueFactory.emptyMap(),
+                ValueFactory.newArray(format)));
+        spaces.get(SPACE_VINDEX).put(tuple(id, 0, "primary", "tree", ValueFactory.emptyMap(), ValueFactory.emptyArray()));
+        schemaId++;
+        return id;
+    }
+
+    /**
+     * Creates tree index over the given fields of the space, tuples with equal keys are ordered by primary key.
+     *
+     * @return id of the index
+     */
+    public int createIndex(int space, String name, boolean unique, int... fields) {
+        Space target = getSpace(space);
+        int id;
+        synchronized (target) {
+            id = target.indexes.length;
+            int[][] indexes = Arrays.copyOf(target.indexes, id + 1);
+            indexes[id] = fields.clone();
+            target.indexes = indexes;
+        }
+        spaces.get(SPACE_VINDEX).put(tuple(space, id, name, "tree",
+                ValueFactory.newMap(ValueFactory.newString("unique"), ValueFactory.newBoolean(unique)),
+                ValueFactory.emptyArray()));
+        schemaId++;
+        return id;
+    }
+
+    public void dropSpace(int id) {
+        Space space = spaces.remove(id);
+        if (space == null) {
+            throw new IllegalArgumentException("No space " + id);
+        }
+        spaces.get(SPACE_VSPACE).delete(Collections.singletonList(ValueFactory.newInteger(id)));
+        spaces.get(SPACE_VINDEX).delete(Arrays.asList(ValueFactory.newInteger(id), ValueFactory.newInteger(0)));
+        schemaId++;
+    }
+
+    public void insert(int space, Object... fields) {
+        getSpace(space).put(tuple(fields));
+    }
+
+    public int size(int space) {
+        return getSpace(space).tuples.size();
+    }
+
+    /**
+     * Eval of the given expression will return the given tuple, eval of not registered expression fails.
+     */
+    public TarantoolStubServer withEvalResult(String expression, Object... fields) {
+        evalResults.put(expression, tuple(fields));
+        return this;
+    }
+
+    /**
+     * Call of the given function with any arguments will return the given tuple, call of not registered function
+     * fails.
+     */
+    public TarantoolStubServer withCallResult(String function, Object... fields) {
+        callErrors.remove(function);
+        callResults.put(function, tuple(fields));
+        return this;
+    }
+
+    /**
+     * Call of the given function with any arguments will fail with the given message as if raised by the function.
+     */
+    public TarantoolStubServer withCallError(String function, String message) {
+        callResults.remove(function);
+        callErrors.put(function, message);
+        return this;
+    }
+
+    public TarantoolStubServer withSqlUpdate(String sql, int rowCount) {
+        sqlResults.put(sql, new SqlResponse(null, null, rowCount));
+        return this;
+    }
+
+    public TarantoolStubServer withSqlResult(String sql, List<String> columns, List<List<?>> rows) {
+        List<ImmutableValue> tuples = new ArrayList<>(rows.size());
+        for (List<?> row : rows) {
+            tuples.add(tuple(row.toArray()));
+        }
+        sqlResults.put(sql, new SqlResponse(columns, tuples, 0));
+        return this;
+    }
+
+    private Space getSpace(int space) {
+        Space result = spaces.get(space);
+        if (result == null) {
+            throw new IllegalArgumentException("No space " + space);
+        }
+        return result;
+    }
+
+    private static ImmutableValue tuple(Object... fields) {
+        Value[] values = new Value[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = toValue(fields[i]);
+        }
+        return ValueFactory.newArray(values);
+    }
+
+    private static ImmutableValue arguments(Map<Integer, Value> body) {
+        Value arguments = body.get(KEY_TUPLE);
+        return arguments == null ? ValueFactory.emptyArray() : arguments.immutableValue();
+    }
+
+    private static Value toValue(Object field) {
+        if (field == null) {
+            return ValueFactory.newNil();
+        } else if (field instanceof Value) {
+            return (Value) field;
+        } else if (field instanceof Integer || field instanceof Long || field instanceof Short || field instanceof Byte) {
+            return ValueFactory.newInteger(((Number) field).longValue());
+        } else if (field instanceof Float || field instanceof Double) {
+            return ValueFactory.newFloat(((Number) field).doubleValue());
+        } else if (field instanceof String) {
+            return ValueFactory.newString((String) field);
+        } else if (field instanceof Boolean) {
+            return ValueFactory.newBoolean((Boolean) field);
+        } else if (field instanceof byte[]) {
+            return ValueFactory.newBinary((byte[]) field);
+        } else if (field instanceof Map) {
+            Map<Value, Value> map = new LinkedHashMap<>();
+            ((Map<?, ?>) field).forEach((key, value) -> map.put(toValue(key), toValue(value)));
+            return ValueFactory.newMap(map);
+        }
+        throw new IllegalArgumentException("Unsupported field " + field);
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                // accept may still return a connection while the server socket is being closed
+                synchronized (connections) {
+                    if (serverSocket.isClosed()) {
+                        socket.close();
+                        return;
+                    }
+                    connections.add(socket);
+                }
+                accepted.incrementAndGet();
+                socket.setTcpNoDelay(true);
+                Thread connection = new Thread(() -> serve(socket), "tarantool-stub-connection");
+                connection.setDaemon(true);
+                connection.start();
+            } catch (IOException e) {
+                // server closed
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket ignored = socket) {
+            byte[] salt = new byte[32];
+            new Random().nextBytes(salt);
+            String encodedSalt = Base64.getEncoder().encodeToString(salt);
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            out.write(padGreetingLine("Tarantool " + VERSION + " (Binary) " + UUID.randomUUID()));
+            out.write(padGreetingLine(encodedSalt));
+            out.flush();
+
+            MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(new BufferedInputStream(socket.getInputStream()));
+            MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+            while (true) {
+                MessageUnpacker frame = MessagePack.newDefaultUnpacker(unpacker.readPayload(unpacker.unpackInt()));
+                Map<Integer, Value> header = unpackMap(frame);
+                Map<Integer, Value> body = frame.hasNext() ? unpackMap(frame) : Collections.emptyMap();
+                requests.incrementAndGet();
+                int code = header.get(KEY_CODE).asIntegerValue().asInt();
+                long sync = header.containsKey(KEY_SYNC) ? header.get(KEY_SYNC).asIntegerValue().asLong() : 0L;
+                long schemaVersion = header.containsKey(KEY_SCHEMA_ID)
+                        ? header.get(KEY_SCHEMA_ID).asIntegerValue().asLong() : 0L;
+                sleepLatency();
+                try {
+                    checkSchemaVersion(code, schemaVersion);
+                    respond(packer, sync, handle(code, body, salt));
+                } catch (StubException e) {
+                    respondError(packer, sync, e.code, e.getMessage());
+                }
+                writeFrame(out, packer);
+                // do not delay pipelined requests already in buffer
+                if (socket.getInputStream().available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // connection closed
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    // like Tarantool checks it only for data requests
+    private void checkSchemaVersion(int code, long schemaVersion) {
+        boolean data = code == CODE_SELECT || code == CODE_INSERT || code == CODE_REPLACE || code == CODE_DELETE;
+        if (data && schemaVersion != 0L && schemaVersion != schemaId) {
+            throw new StubException(ER_WRONG_SCHEMA_VERSION,
+                    "Wrong schema version, current: " + schemaId + ", in request: " + schemaVersion);
+        }
+    }
+
+    private void sleepLatency() {
+        long latency = latencyNanos;
+        if (latency > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static byte[] padGreetingLine(String line) {
+        byte[] result = new byte[64];
+        Arrays.fill(result, (byte) ' ');
+        byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, result, 0, Math.min(bytes.length, 63));
+        result[63] = '\n';
+        return result;
+    }
+
+    private static Map<Integer, Value> unpackMap(MessageUnpacker unpacker) throws IOException {
+        int size = unpacker.unpackMapHeader();
+        Map<Integer, Value> result = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            result.put(unpacker.unpackInt(), unpacker.unpackValue());
+        }
+        return result;
+    }
+
+    private Response handle(int code, Map<Integer, Value> body, byte[] salt) {
+        switch (code) {
+            case CODE_PING:
+                return Response.EMPTY;
+            case CODE_AUTH:
+                auth(body, salt);
+                return Response.EMPTY;
+            case CODE_SELECT:
+                return Response.data(select(body));
+            case CODE_INSERT:
+                return Response.data(Collections.singletonList(
+                        space(body).insert(body.get(KEY_TUPLE).asArrayValue().immutableValue())));
+            case CODE_REPLACE:
+                ImmutableValue tuple = body.get(KEY_TUPLE).asArrayValue().immutableValue();
+                space(body).put(tuple);
+                return Response.data(Collections.singletonList(tuple));
+            case CODE_DELETE:
+                ImmutableValue deleted = space(body).delete(key(body));
+                return Response.data(deleted == null ? Collections.emptyList() : Collections.singletonList(deleted));
+            case CODE_EVAL:
+                lastArguments = arguments(body);
+                String expression = body.get(KEY_EXPRESSION).asStringValue().asString();
+                ImmutableValue evalResult = evalResults.get(expression);
+                if (evalResult == null) {
+                    throw new StubException(ER_UNSUPPORTED, "Stub cannot eval " + expression);
+                }
+                return Response.data(Collections.singletonList(evalResult));
+            case CODE_CALL:
+                lastArguments = arguments(body);
+                String function = body.get(KEY_FUNCTION).asStringValue().asString();
+                String callError = callErrors.get(function);
+                if (callError != null) {
+                    throw new StubException(ER_PROC_LUA, callError);
+                }
+                ImmutableValue callResult = callResults.get(function);
+                if (callResult == null) {
+                    throw new StubException(ER_NO_SUCH_PROC, "Procedure '" + function + "' is not defined");
+                }
+                return Response.data(Collections.singletonList(callResult));
+            case CODE_EXECUTE:
+                return sqlResponse(body.containsKey(KEY_STMT_ID)
+                        ? statement(body.get(KEY_STMT_ID).asIntegerValue().asLong())
+                        : body.get(KEY_SQL_TEXT).asStringValue().asString());
+            case CODE_PREPARE:
+                if (body.containsKey(KEY_STMT_ID)) {
+                    long statementId = body.get(KEY_STMT_ID).asIntegerValue().asLong();
+                    if (statements.remove(statementId) == null) {
+                        throw new StubException(ER_WRONG_QUERY_ID,
+                                "Prepared statement with id " + statementId + " does not exist");
+                    }
+                    return Response.EMPTY;
+                }
+                String prepared = body.get(KEY_SQL_TEXT).asStringValue().asString();
+                SqlResponse preparedResponse = sqlResponse(prepared);
+                long statementId = prepared.hashCode() & 0xffffffffL;
+                statements.put(statementId, prepared);
+                return preparedResponse.prepared(statementId, prepared);
+            default:
+                throw new StubException(ER_UNSUPPORTED, "Stub does not support request type " + code);
+        }
+    }
+
+    private SqlResponse sqlResponse(String sql) {
+        SqlResponse sqlResponse = sqlResults.get(sql);
+        if (sqlResponse == null) {
+            throw new StubException(ER_UNSUPPORTED, "Stub cannot execute " + sql);
+        }
+        return sqlResponse;
+    }
+
+    private String statement(long statementId) {
+        String sql = statements.get(statementId);
+        if (sql == null) {
+            throw new StubException(ER_WRONG_QUERY_ID, "Prepared statement with id " + statementId + " does not exist");
+        }
+        return sql;
+    }
+
+    private void auth(Map<Integer, Value> body, byte[] salt) {
+        String user = body.get(KEY_USER_NAME).asStringValue().asString();
+        String password = users.get(user);
+        if (password == null) {
+            throw new StubException(ER_ACCESS_DENIED, "User '" + user + "' is not found");
+        }
+        ArrayValue tuple = body.get(KEY_TUPLE).asArrayValue();
+        byte[] scramble = tuple.get(1).asRawValue().asByteArray();
+        if (!Arrays.equals(scramble(password, salt), scramble)) {
+            throw new StubException(ER_PASSWORD_MISMATCH, "Incorrect password supplied for user '" + user + "'");
+        }
+    }
+
+    private static byte[] scramble(String password, byte[] salt) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] step1 = sha1.digest(password.getBytes(StandardCharsets.UTF_8));
+            byte[] step2 = sha1.digest(step1);
+            sha1.update(salt, 0, 20);
+            sha1.update(step2);
+            byte[] step3 = sha1.digest();
+            for (int i = 0; i < 20; i++) {
+                step1[i] ^= step3[i];
+            }
+            return step1;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Space space(Map<Integer, Value> body) {
+        int id = body.get(KEY_SPACE).asIntegerValue().asInt();
+        Space space = spaces.get(id);
+        if (space == null) {
+            throw new StubException(ER_NO_SUCH_SPACE, "Space '" + id + "' does not exist");
+        }
+        return space;
+    }
+
+    private static List<Value> key(Map<Integer, Value> body) {
+        Value key = body.get(KEY_KEY);
+        return key == null ? Collections.emptyList() : key.asArrayValue().list();
+    }
+
+    private List<ImmutableValue> select(Map<Integer, Value> body) {
+        Space space = space(body);
+        int index = intOrDefault(body, KEY_INDEX, 0);
+        int limit = intOrDefault(body, KEY_LIMIT, Integer.MAX_VALUE);
+        int offset = intOrDefault(body, KEY_OFFSET, 0);
+        int iterator = intOrDefault(body, KEY_ITERATOR, ITER_EQ);
+        if (index < 0 || index >= space.indexes.length) {
+            throw new StubException(ER_NO_SUCH_INDEX, "No index #" + index + " is defined in space '" + space.name + "'");
+        }
+        return space.select(index, iterator, key(body), offset, limit);
+    }
+
+    private static int intOrDefault(Map<Integer, Value> body, int key, int defaultValue) {
+        Value value = body.get(key);
+        return value == null ? defaultValue : value.asIntegerValue().asInt();
+    }
+
+    private void respond(MessageBufferPacker packer, long sync, Response response) throws IOException {
+        packHeader(packer, 0, sync);
+        response.pack(packer);
+    }
+
+    private void respondError(MessageBufferPacker packer, long sync, int code, String message) throws IOException {
+        packHeader(packer, 0x8000 | code, sync);
+        packer.packMapHeader(1);
+        packer.packInt(KEY_ERROR);
+        packer.packString(message);
+    }
+
+    // like Tarantool itself uses fixed width integers in header, some clients rely on their types
+    private void packHeader(MessageBufferPacker packer, int code, long sync) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put((byte) (MessagePack.Code.FIXMAP_PREFIX | 3));
+        header.put((byte) KEY_CODE).put(MessagePack.Code.UINT32).putInt(code);
+        header.put((byte) KEY_SYNC).put(MessagePack.Code.UINT64).putLong(sync);
+        header.put((byte) KEY_SCHEMA_ID).put(MessagePack.Code.UINT32).putInt(schemaId);
+        packer.writePayload(header.array());
+    }
+
+    private static void writeFrame(OutputStream out, MessageBufferPacker packer) throws IOException {
+        byte[] frame = packer.toByteArray();
+        packer.clear();
+        out.write(MessagePack.Code.UINT32);
+        out.write(frame.length >>> 24);
+        out.write(frame.length >>> 16);
+        out.write(frame.length >>> 8);
+        out.write(frame.length);
+        out.write(frame);
+    }
+
+    @Override
+    public void close() {
+        try {
+            synchronized (connections) {
+                serverSocket.close();
+            }
+            for (Socket connection : connections) {
+                connection.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int compare(List<? extends Value> left, List<? extends Value> right) {
+        int size = Math.min(left.size(), right.size());
+        for (int i = 0; i < size; i++) {
+            int result = compare(left.get(i), right.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    private static int compare(Value left, Value right) {
+        if (left.isIntegerValue() && right.isIntegerValue()) {
+            return Long.compare(left.asIntegerValue().asLong(), right.asIntegerValue().asLong());
+        }
+        if (left.isNumberValue() && right.isNumberValue()) {
+            return Double.compare(left.asNumberValue().toDouble(), right.asNumberValue().toDouble());
+        }
+        if (left.isStringValue() && right.isStringValue()) {
+            return left.asStringValue().asString().compareTo(right.asStringValue().asString());
+        }
+        return Integer.compare(left.getValueType().ordinal(), right.getValueType().ordinal());
+    }
+
+    private static final class Space {
+        private final int id;
+        private final String name;
+        private volatile int[][] indexes;
+        private final NavigableMap<List<Value>, ImmutableValue> tuples =
+                new TreeMap<>(TarantoolStubServer::compare);
+
+        Space(int id, String name, int[][] indexes) {
+            this.id = id;
+            this.name = name;
+            this.indexes = indexes;
+        }
+
+        private List<Value> indexKey(int index, Value tuple) {
+            int[] parts = indexes[index];
+            List<Value> key = new ArrayList<>(parts.length);
+            for (int part : parts) {
+                key.add(tuple.asArrayValue().get(part));
+            }
+            return key;
+        }
+
+        synchronized ImmutableValue insert(ImmutableValue tuple) {
+            List<Value> key = indexKey(0, tuple);
+            if (tuples.containsKey(key)) {
+                throw new StubException(ER_TUPLE_FOUND,
+                        "Duplicate key exists in unique index 'primary' in space '" + name + "'");
+            }
+            tuples.put(key, tuple);
+            return tuple;
+        }
+
+        synchronized void put(ImmutableValue tuple) {
+            tuples.put(indexKey(0, tuple), tuple);
+        }
+
+        synchronized ImmutableValue delete(List<Value> key) {
+            return tuples.remove(key);
+        }
+
+        synchronized List<ImmutableValue> select(int index, int iterator, List<Value> key, int offset, int limit) {
+            Collection<ImmutableValue> candidates;
+            if (index == 0 && key.size() == indexes[0].length) {
+                switch (iterator) {
+                    case ITER_EQ:
+                        ImmutableValue tuple = tuples.get(key);
+                        candidates = tuple == null ? Collections.emptyList() : Collections.singletonList(tuple);
+                        break;
+                    case ITER_GT:
+                        candidates = tuples.tailMap(key, false).values();
+                        break;
+                    case ITER_GE:
+                        candidates = tuples.tailMap(key, true).values();
+                        break;
+                    case ITER_LT:
+                        candidates = tuples.headMap(key, false).descendingMap().values();
+                        break;
+                    case ITER_LE:
+                        candidates = tuples.headMap(key, true).descendingMap().values();
+                        break;
+                    case ITER_ALL:
+                        candidates = tuples.values();
+                        break;
+                    default:
+                        throw new StubException(ER_UNSUPPORTED, "Stub does not support iterator " + iterator);
+                }
+            } else if (index != 0 && (iterator == ITER_GT || iterator == ITER_GE
+                    || iterator == ITER_ALL && key.isEmpty())) {
+                List<ImmutableValue> ordered = new ArrayList<>();
+                for (ImmutableValue tuple : tuples.values()) {
+                    int result = key.isEmpty() ? 1 : compare(indexKey(index, tuple), key);
+                    if (result > 0 || result == 0 && iterator == ITER_GE) {
+                        ordered.add(tuple);
+                    }
+                }
+                // sort is stable, so tuples with equal keys stay in primary key order
+                ordered.sort((left, right) -> compare(indexKey(index, left), indexKey(index, right)));
+                candidates = ordered;
+            } else if (key.isEmpty()) {
+                candidates = tuples.values();
+            } else if (iterator == ITER_EQ || iterator == ITER_ALL) {
+                candidates = new ArrayList<>();
+                for (ImmutableValue tuple : tuples.values()) {
+                    if (compare(indexKey(index, tuple), key) == 0) {
+                        candidates.add(tuple);
+                    }
+                }
+            } else {
+                throw new StubException(ER_UNSUPPORTED, "Stub supports only EQ for partial or secondary keys");
+            }
+            List<ImmutableValue> result = new ArrayList<>();
+            int skipped = 0;
+            for (ImmutableValue tuple : candidates) {
+                if (result.size() >= limit) {
+                    break;
+                }
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    result.add(tuple);
+                }
+            }
+            return result;
+        }
+    }
+
+    private interface Response {
+        Response EMPTY = packer -> packer.packMapHeader(0);
+
+        static Response data(List<ImmutableValue> tuples) {
+            return packer -> {
+                packer.packMapHeader(1);
+                packer.packInt(KEY_DATA);
+                packer.packArrayHeader(tuples.size());
+                for (ImmutableValue tuple : tuples) {
+                    packer.packValue(tuple);
+                }
+            };
+        }
+
+        void pack(MessageBufferPacker packer) throws IOException;
+    }
+
+    private static final class SqlResponse implements Response {
+        private final List<String> columns;
+        private final List<ImmutableValue> rows;
+        private final int rowCount;
+
+        SqlResponse(List<String> columns, List<ImmutableValue> rows, int rowCount) {
+            this.columns = columns;
+            this.rows = rows;
+            this.rowCount = rowCount;
+        }
+
+        Response prepared(long statementId, String sql) {
+            int bindCount = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                if (sql.charAt(i) == '?') {
+                    bindCount++;
+                }
+            }
+            int params = bindCount;
+            return packer -> {
+                packer.packMapHeader(columns == null ? 3 : 4);
+                packer.packInt(KEY_STMT_ID);
+                packer.packLong(statementId);
+                packer.packInt(KEY_BIND_COUNT);
+                packer.packInt(params);
+                packer.packInt(KEY_BIND_METADATA);
+                packer.packArrayHeader(params);
+                for (int i = 0; i < params; i++) {
+                    packer.packMapHeader(2);
+                    packer.packInt(0);
+                    packer.packString("?");
+                    packer.packInt(1);
+                    packer.packString("ANY");
+                }
+                if (columns != null) {
+                    packMetadata(packer);
+                }
+            };
+        }
+
+        private void packMetadata(MessageBufferPacker packer) throws IOException {
+            packer.packInt(KEY_METADATA);
+            packer.packArrayHeader(columns.size());
+            for (String column : columns) {
+                packer.packMapHeader(2);
+                packer.packInt(0);
+                packer.packString(column);
+                packer.packInt(1);
+                packer.packString("any");
+            }
+        }
+
+        @Override
+        public void pack(MessageBufferPacker packer) throws IOException {
+            if (columns == null) {
+                packer.packMapHeader(1);
+                packer.packInt(KEY_SQL_INFO);
+                packer.packMapHeader(1);
+                packer.packInt(0);
+                packer.packInt(rowCount);
+                return;
+            }
+            packer.packMapHeader(2);
+            packMetadata(packer);
+            packer.packInt(KEY_DATA);
+            packer.packArrayHeader(rows.size());
+            for (ImmutableValue row : rows) {
+                packer.packValue(row);
+            }
+        }
+    }
+
+    private static final class StubException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        private final int code;
+
+        StubException(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+}
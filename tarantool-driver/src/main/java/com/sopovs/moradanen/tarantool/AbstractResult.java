@@ -2,45 +2,39 @@ package com.sopovs.moradanen.tarantool;
 
 import com.sopovs.moradanen.tarantool.core.Nullable;
 import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import org.msgpack.core.MessagePack;
 import org.msgpack.core.MessagePackException;
-import org.msgpack.core.MessageTypeCastException;
+import org.msgpack.core.MessagePacker;
 import org.msgpack.core.MessageUnpacker;
-import org.msgpack.value.ImmutableArrayValue;
 import org.msgpack.value.Value;
-import org.msgpack.value.ValueType;
 
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Spliterator;
 
 abstract class AbstractResult implements Result {
 
     private final MessageUnpacker unpacker;
+    private final LazyTuple current = new LazyTuple();
+    // array the unpacker reads from starting at frameOffset
+    private final byte[] frame;
+    private final int frameOffset;
+    private final int byteSize;
     private int counter;
-    @Nullable
-    private ImmutableArrayValue current;
+    private int currentStart;
+    private int currentEnd;
 
-    AbstractResult(MessageUnpacker unpacker) {
+    AbstractResult(MessageUnpacker unpacker, byte[] frame, int frameOffset, int byteSize) {
         this.unpacker = unpacker;
-
+        this.frame = frame;
+        this.frameOffset = frameOffset;
+        this.byteSize = byteSize;
     }
 
-    private static String decode(ValueType valueType) {
-        switch (valueType) {
-            case NIL:
-                return "null";
-            case MAP:
-            case ARRAY:
-            case FLOAT:
-            case BINARY:
-            case STRING:
-            case BOOLEAN:
-            case INTEGER:
-            case EXTENSION:
-                return valueType.toString().toLowerCase();
-            default:
-                throw new TarantoolException("Unknown msgpack value type " + valueType);
-        }
+    @Override
+    public int getByteSize() {
+        return byteSize;
     }
 
     @Override
@@ -50,29 +44,93 @@ abstract class AbstractResult implements Result {
 
     @Override
     public void close() {
-        while (counter < getSize()) {
-            counter++;
-            try {
-                // TODO seems like it may hang in case no data to read...
-                unpacker.unpackValue();
-            } catch (IOException e) {
-                throw new UncheckedIOException(e);
-            }
-        }
+        // the whole frame is already in memory and nothing else is read after this result from it,
+        // so rows left are dropped without even skipping them
+        counter = getSize();
     }
 
     @Override
     public boolean next() {
         if (hasNext()) {
             counter++;
-            current = nextInternal();
+            nextInternal();
             return true;
         }
         return false;
     }
 
+    @Override
+    public int readColumns(int[] fieldIndexes, Column... columns) {
+        if (fieldIndexes.length != columns.length) {
+            throw new IllegalArgumentException("Got " + fieldIndexes.length + " field indexes for "
+                    + columns.length + " columns");
+        }
+        int maxIndex = -1;
+        for (int index : fieldIndexes) {
+            if (index < 0) {
+                throw new IllegalArgumentException("Negative field index " + index);
+            }
+            maxIndex = Math.max(maxIndex, index);
+        }
+        // column of every field up to the last one asked for, -1 for fields skipped
+        int[] fieldColumns = new int[maxIndex + 1];
+        Arrays.fill(fieldColumns, -1);
+        for (int i = 0; i < fieldIndexes.length; i++) {
+            if (fieldColumns[fieldIndexes[i]] != -1) {
+                throw new IllegalArgumentException("Field " + fieldIndexes[i] + " is read twice");
+            }
+            fieldColumns[fieldIndexes[i]] = i;
+        }
+        current.reset();
+        int rows = 0;
+        try {
+            while (hasNext()) {
+                counter++;
+                int fields = unpacker.unpackArrayHeader();
+                for (int field = 0; field < fields; field++) {
+                    int column = field < fieldColumns.length ? fieldColumns[field] : -1;
+                    if (column == -1) {
+                        unpacker.skipValue();
+                    } else {
+                        columns[column].read(unpacker);
+                    }
+                }
+                for (int field = fields; field < fieldColumns.length; field++) {
+                    if (fieldColumns[field] != -1) {
+                        columns[fieldColumns[field]].appendNull();
+                    }
+                }
+                rows++;
+            }
+        } catch (IOException | MessagePackException e) {
+            throw new TarantoolException(e);
+        }
+        return rows;
+    }
+
+    @Override
+    public <T> Spliterator<T> spliterator(TarantoolTemplate.ResultRowMapper<T> mapper) {
+        int rows = getSize() - counter;
+        current.reset();
+        counter = getSize();
+        try {
+            // rows are the last thing in the frame the result is read from
+            byte[] data = unpacker.readPayload(byteSize - (int) unpacker.getTotalReadBytes());
+            int[] offsets = new int[rows + 1];
+            MessageUnpacker index = MessagePack.newDefaultUnpacker(data);
+            for (int i = 0; i < rows; i++) {
+                offsets[i] = (int) index.getTotalReadBytes();
+                index.skipValue();
+            }
+            offsets[rows] = (int) index.getTotalReadBytes();
+            return new RowSpliterator<>(data, offsets, mapper, 0, rows);
+        } catch (IOException | MessagePackException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
     private void checkNextCalled() {
-        if (current == null) {
+        if (!current.isRead()) {
             throw new TarantoolException("next() was not called on result");
         }
     }
@@ -80,131 +138,105 @@ abstract class AbstractResult implements Result {
     @Override
     public boolean isNull(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        return current.get(index).isNilValue();
+        return current.isNull(index);
     }
 
     @Override
     public boolean getBoolean(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asBooleanValue().getBoolean();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected boolean, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getBoolean(index);
     }
 
     @Override
     public double getDouble(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asFloatValue().toDouble();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected float, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getDouble(index);
     }
 
     @Override
     public float getFloat(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asFloatValue().toFloat();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected float, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return (float) current.getDouble(index);
     }
 
     @Override
     public long getLong(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asIntegerValue().asLong();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected integer, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getLong(index);
     }
 
     @Override
     public int getInt(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asIntegerValue().asInt();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected integer, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getInt(index);
     }
 
     @Override
     @Nullable
     public String getString(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        Value value = current.get(index);
-        if (value.isNilValue()) {
-            return null;
-        }
-        try {
-            return value.asStringValue().asString();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected string, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getString(index);
     }
 
     @Override
     public byte[] getBytes(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asBinaryValue().asByteArray();
-
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected binary, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getBytes(index);
     }
 
     @Override
     public ByteBuffer getByteBuffer(int index) {
         checkNextCalled();
-        assert current != null; //hack to disable warning
-        try {
-            return current.get(index).asBinaryValue().asByteBuffer();
-        } catch (MessageTypeCastException e) {
-            throw new TarantoolException("Expected binary, but got " + decode(current.get(index).getValueType()), e);
-        } catch (MessagePackException e) {
-            throw new TarantoolException(e);
-        }
+        return current.getByteBuffer(index);
+    }
+
+    /**
+     * Called before the frame is reused for the next response, so that the current row stays readable.
+     */
+    void detach() {
+        current.detach();
+    }
+
+    @Override
+    public ByteBuffer rawTuple() {
+        checkNextCalled();
+        return ByteBuffer.wrap(frame, currentStart, currentEnd - currentStart).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @see LazyTuple#getValue(int)
+     */
+    @Nullable
+    Value getValue(int index) {
+        checkNextCalled();
+        return current.getValue(index);
+    }
+
+    /**
+     * @see LazyTuple#pack(MessagePacker)
+     */
+    void packCurrent(MessagePacker packer) throws IOException {
+        checkNextCalled();
+        current.pack(packer);
+    }
+
+    void packField(int index, MessagePacker packer) throws IOException {
+        checkNextCalled();
+        current.packField(index, packer);
     }
 
     @Override
     public int currentSize() {
         checkNextCalled();
-        assert current != null; //hack to disable warning
         return current.size();
     }
 
-    private ImmutableArrayValue nextInternal() {
+    private void nextInternal() {
         try {
-            return unpacker.unpackValue().asArrayValue();
-        } catch (IOException e) {
+            currentStart = frameOffset + (int) unpacker.getTotalReadBytes();
+            current.read(unpacker, frame, frameOffset);
+            currentEnd = frameOffset + (int) unpacker.getTotalReadBytes();
+        } catch (IOException | MessagePackException e) {
             throw new TarantoolException(e);
         }
     }
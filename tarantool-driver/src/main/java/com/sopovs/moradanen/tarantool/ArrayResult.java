@@ -8,8 +8,8 @@ import java.io.IOException;
 class ArrayResult extends AbstractResult {
     private final int size;
 
-    ArrayResult(MessageUnpacker unpacker) {
-        super(unpacker);
+    ArrayResult(MessageUnpacker unpacker, byte[] frame, int byteSize) {
+        super(unpacker, frame, 0, byteSize);
         size = getArraySize(unpacker);
     }
 
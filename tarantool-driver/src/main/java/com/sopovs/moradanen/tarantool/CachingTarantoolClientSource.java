@@ -0,0 +1,509 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.*;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Client source that serves selects from the given spaces with {@link TarantoolTupleCache} and sends them to the
+ * server only on a cache miss. Meant for rarely changed spaces read much more often than written, such as
+ * configuration or dictionaries.
+ * <p>
+ * Inserts, replaces, updates, upserts and deletes sent with clients of this source invalidate cached results of their
+ * space once executed. Changes done otherwise (other clients, eval, call or sql) are seen after ttl of the cache or
+ * after {@link TarantoolTupleCache#invalidate(int)}.
+ */
+public class CachingTarantoolClientSource implements TarantoolClientSource {
+    private final TarantoolClientSource source;
+    private final TarantoolTupleCache cache;
+    private final int[] spaces;
+
+    /**
+     * @param spaces ids of spaces selects from which are cached
+     */
+    public CachingTarantoolClientSource(TarantoolClientSource source, TarantoolTupleCache cache, int... spaces) {
+        this.source = source;
+        this.cache = cache;
+        this.spaces = spaces.clone();
+        Arrays.sort(this.spaces);
+    }
+
+    public TarantoolTupleCache getCache() {
+        return cache;
+    }
+
+    private boolean isCached(int space) {
+        return Arrays.binarySearch(spaces, space) >= 0;
+    }
+
+    @Override
+    public TarantoolClient getClient() {
+        return new CachingClient(source.getClient());
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    private final class CachingClient implements TarantoolClient {
+        private final TarantoolClient client;
+        // select from a cached space is kept here until execute, so that it is not sent on a cache hit
+        private final MessageBufferPacker key = MessagePack.newDefaultBufferPacker();
+        private final MessageBufferPacker tuples = MessagePack.newDefaultBufferPacker();
+        private byte[] tuple = new byte[256];
+        private final Set<Integer> written = new HashSet<>();
+        private boolean selecting;
+        private int space;
+        private int index;
+        private int limit;
+        private int offset;
+        private Iter iterator = Iter.EQ;
+
+        CachingClient(TarantoolClient client) {
+            this.client = client;
+        }
+
+        private boolean startSelect(int space, int index, int limit, int offset, Iter iterator) {
+            if (selecting || !isCached(space)) {
+                return false;
+            }
+            selecting = true;
+            this.space = space;
+            this.index = index;
+            this.limit = limit;
+            this.offset = offset;
+            this.iterator = iterator;
+            return true;
+        }
+
+        // sends select kept so far to the server
+        private void sendSelect() {
+            if (!selecting) {
+                return;
+            }
+            selecting = false;
+            byte[] keyBytes = key.toByteArray();
+            key.clear();
+            sendSelect(keyBytes);
+        }
+
+        private void sendSelect(byte[] keyBytes) {
+            client.select(space, index, limit, offset, iterator);
+            QueryEncoder.setValues(client, keyBytes);
+        }
+
+        private void writing(int space) {
+            sendSelect();
+            if (isCached(space)) {
+                written.add(space);
+            }
+        }
+
+        private void invalidateWritten() {
+            if (written.isEmpty()) {
+                return;
+            }
+            for (Integer space : written) {
+                cache.invalidate(space);
+            }
+            written.clear();
+        }
+
+        @Override
+        public Result execute() {
+            if (!selecting) {
+                try {
+                    return client.execute();
+                } finally {
+                    invalidateWritten();
+                }
+            }
+            selecting = false;
+            byte[] keyBytes = key.toByteArray();
+            key.clear();
+            TarantoolTupleCache.Key cacheKey = new TarantoolTupleCache.Key(space, index, iterator, limit, offset,
+                    keyBytes);
+            TarantoolTupleCache.Entry entry = cache.get(cacheKey);
+            if (entry == null) {
+                long invalidations = cache.getInvalidations();
+                sendSelect(keyBytes);
+                Result result = client.execute();
+                if (!(result instanceof AbstractResult)) {
+                    return result;
+                }
+                entry = new TarantoolTupleCache.Entry(cacheKey, copy(result));
+                cache.put(cacheKey, entry, invalidations);
+            }
+            return new ArrayResult(MessagePack.newDefaultUnpacker(entry.data), entry.data, entry.data.length);
+        }
+
+        // tuples are copied as the server sent them without decoding and encoding them again
+        private byte[] copy(Result result) {
+            try (Result ignored = result) {
+                tuples.packArrayHeader(result.getSize());
+                while (result.next()) {
+                    ByteBuffer raw = result.rawTuple();
+                    int length = raw.remaining();
+                    if (length > tuple.length) {
+                        tuple = new byte[Math.max(tuple.length * 2, length)];
+                    }
+                    raw.get(tuple, 0, length);
+                    tuples.writePayload(tuple, 0, length);
+                }
+                return tuples.toByteArray();
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            } finally {
+                tuples.clear();
+            }
+        }
+
+        @Override
+        public void addBatch() {
+            sendSelect();
+            client.addBatch();
+        }
+
+        @Override
+        public void executeBatch() {
+            sendSelect();
+            try {
+                client.executeBatch();
+            } finally {
+                invalidateWritten();
+            }
+        }
+
+        @Override
+        public int executeUpdate() {
+            sendSelect();
+            try {
+                return client.executeUpdate();
+            } finally {
+                invalidateWritten();
+            }
+        }
+
+        @Override
+        public int[] executeBatchUpdate() {
+            sendSelect();
+            try {
+                return client.executeBatchUpdate();
+            } finally {
+                invalidateWritten();
+            }
+        }
+
+        @Override
+        public void select(int space, int index, int limit, int offset, Iter iterator) {
+            if (!startSelect(space, index, limit, offset, iterator)) {
+                sendSelect();
+                client.select(space, index, limit, offset, iterator);
+            }
+        }
+
+        @Override
+        public void selectByLong(int space, int index, long key) {
+            if (startSelect(space, index, Integer.MAX_VALUE, 0, Iter.EQ)) {
+                setLong(key);
+            } else {
+                sendSelect();
+                client.selectByLong(space, index, key);
+            }
+        }
+
+        @Override
+        public void selectByLongs(int space, int index, long key1, long key2) {
+            if (startSelect(space, index, Integer.MAX_VALUE, 0, Iter.EQ)) {
+                setLong(key1);
+                setLong(key2);
+            } else {
+                sendSelect();
+                client.selectByLongs(space, index, key1, key2);
+            }
+        }
+
+        @Override
+        public void selectAll(int space, int limit, int offset) {
+            if (!startSelect(space, 0, limit, offset, Iter.ALL)) {
+                sendSelect();
+                client.selectAll(space, limit, offset);
+            }
+        }
+
+        @Override
+        public int space(String space) {
+            sendSelect();
+            return client.space(space);
+        }
+
+        @Override
+        public int index(int space, String index) {
+            sendSelect();
+            return client.index(space, index);
+        }
+
+        @Override
+        public void eval(String expression) {
+            sendSelect();
+            client.eval(expression);
+        }
+
+        @Override
+        public void call(String function) {
+            sendSelect();
+            client.call(function);
+        }
+
+        @Override
+        public void call(TarantoolFunction function) {
+            sendSelect();
+            client.call(function);
+        }
+
+        @Override
+        public void insert(int space) {
+            writing(space);
+            client.insert(space);
+        }
+
+        @Override
+        public void replace(int space) {
+            writing(space);
+            client.replace(space);
+        }
+
+        @Override
+        public void delete(int space, int index) {
+            writing(space);
+            client.delete(space, index);
+        }
+
+        @Override
+        public void deleteByLong(int space, int index, long key) {
+            writing(space);
+            client.deleteByLong(space, index, key);
+        }
+
+        @Override
+        public void update(int space, int index) {
+            writing(space);
+            client.update(space, index);
+        }
+
+        @Override
+        public void updateByLong(int space, int index, long key) {
+            writing(space);
+            client.updateByLong(space, index, key);
+        }
+
+        @Override
+        public void upsert(int space) {
+            writing(space);
+            client.upsert(space);
+        }
+
+        @Override
+        public void change(IntOp op, int field, int arg) {
+            sendSelect();
+            client.change(op, field, arg);
+        }
+
+        @Override
+        public void change(IntOp op, int field, long arg) {
+            sendSelect();
+            client.change(op, field, arg);
+        }
+
+        @Override
+        public void change(Op op, int field, @Nullable String arg) {
+            sendSelect();
+            client.change(op, field, arg);
+        }
+
+        @Override
+        public void change(Op op, int field, byte[] arg) {
+            sendSelect();
+            client.change(op, field, arg);
+        }
+
+        @Override
+        public void setNull() {
+            if (!selecting) {
+                client.setNull();
+                return;
+            }
+            try {
+                key.packNil();
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setBoolean(boolean val) {
+            if (!selecting) {
+                client.setBoolean(val);
+                return;
+            }
+            try {
+                key.packBoolean(val);
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setDouble(double val) {
+            if (!selecting) {
+                client.setDouble(val);
+                return;
+            }
+            try {
+                key.packDouble(val);
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setFloat(float val) {
+            if (!selecting) {
+                client.setFloat(val);
+                return;
+            }
+            try {
+                key.packFloat(val);
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setInt(int val) {
+            if (!selecting) {
+                client.setInt(val);
+                return;
+            }
+            try {
+                // packed the same way as long, so that both make the same cache key
+                key.packInt(val);
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setLong(long val) {
+            if (!selecting) {
+                client.setLong(val);
+                return;
+            }
+            try {
+                key.packLong(val);
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setString(@Nullable String val) {
+            if (!selecting) {
+                client.setString(val);
+                return;
+            }
+            try {
+                if (val == null) {
+                    key.packNil();
+                } else {
+                    key.packString(val);
+                }
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void setRawTuple(ByteBuffer tuple) {
+            sendSelect();
+            client.setRawTuple(tuple);
+        }
+
+        @Override
+        public void setBytes(byte[] bytes) {
+            if (!selecting) {
+                client.setBytes(bytes);
+                return;
+            }
+            try {
+                key.packBinaryHeader(bytes.length);
+                key.writePayload(bytes);
+            } catch (IOException e) {
+                throw new TarantoolException(e);
+            }
+        }
+
+        @Override
+        public void sql(String sqlQuery) {
+            sendSelect();
+            client.sql(sqlQuery);
+        }
+
+        @Override
+        public void preparedSql(String sqlQuery) {
+            sendSelect();
+            client.preparedSql(sqlQuery);
+        }
+
+        @Override
+        public void ping() {
+            client.ping();
+        }
+
+        @Override
+        public String getVersion() {
+            return client.getVersion();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return client.isClosed();
+        }
+
+        @Override
+        public void close() {
+            selecting = false;
+            key.clear();
+            written.clear();
+            client.close();
+        }
+
+        @Override
+        public void setNetworkTimeout(int milliseconds) {
+            client.setNetworkTimeout(milliseconds);
+        }
+
+        @Override
+        public int getNetworkTimeout() {
+            return client.getNetworkTimeout();
+        }
+
+        @Override
+        public void setSchemaVersion(long schemaVersion) {
+            client.setSchemaVersion(schemaVersion);
+        }
+
+        @Override
+        public long getSchemaVersion() {
+            sendSelect();
+            return client.getSchemaVersion();
+        }
+    }
+}
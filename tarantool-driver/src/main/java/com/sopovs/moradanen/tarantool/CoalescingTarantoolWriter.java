@@ -0,0 +1,204 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import static com.sopovs.moradanen.tarantool.TarantoolAsyncClientImpl.CLIENT_CLOSED;
+
+/**
+ * Writer accepting single row inserts, replaces, updates, upserts and deletes from many threads and sending them over
+ * a dedicated connection in bursts: requests are written without flushing the connection until the given number of
+ * them is collected or the given delay since the first of them passes, so that many rows cost one write to the
+ * socket instead of a round trip each. Every write gets own future completed with its response as
+ * {@link TarantoolAsyncClient} does, so failure of one write does not affect others.
+ * <p>
+ * Writes are queued in a bounded queue, {@link #write(Consumer)} blocks while it is full.
+ */
+public final class CoalescingTarantoolWriter implements Closeable {
+    static final String WRITER_CLOSED = "Writer is closed";
+    static final String CLOSE_TIMED_OUT = "Writer was closed before the response came";
+    public static final long DEFAULT_CLOSE_TIMEOUT = 30_000L;
+    // put by close after all accepted writes
+    private static final Write CLOSE = new Write(query -> {
+    });
+    private final TarantoolAsyncClientImpl client;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final BlockingQueue<Write> queue;
+    // writes sent, but not answered yet, awaited on close
+    private final Set<CompletableFuture<Integer>> sent = ConcurrentHashMap.newKeySet();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * @param maxBatchSize  number of writes after which the connection is flushed
+     * @param maxDelay      time since the first write of a burst after which the connection is flushed even if
+     *                      fewer writes are collected, 0 flushes as soon as the queue is empty
+     * @param queueCapacity number of writes waiting to be sent after which {@link #write(Consumer)} blocks
+     */
+    public CoalescingTarantoolWriter(TarantoolConfig config, int maxBatchSize, long maxDelay, TimeUnit unit,
+                                     int queueCapacity) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize should be positive");
+        }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("maxDelay can't be negative");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity should be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.client = new TarantoolAsyncClientImpl(config);
+        writer = new Thread(this::writeBursts, "tarantool-coalescing-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param query sets a single write action with its tuple, it is applied later on the writer thread, so it
+     *              should only use values captured by the time of this call
+     * @return future of the number of tuples in the response: 1 for insert and replace, 0 or 1 for update and delete
+     * and 0 for upsert
+     */
+    public CompletableFuture<Integer> write(Consumer<TarantoolQuery> query) {
+        Write write = new Write(query);
+        if (closed) {
+            write.future.completeExceptionally(new TarantoolException(WRITER_CLOSED));
+            return write.future;
+        }
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.future.completeExceptionally(new TarantoolException(e));
+            return write.future;
+        }
+        if (closed && queue.remove(write)) {
+            // writer thread has finished and will not send it
+            write.future.completeExceptionally(new TarantoolException(WRITER_CLOSED));
+        }
+        return write.future;
+    }
+
+    public boolean isClosed() {
+        return closed || client.isClosed();
+    }
+
+    private void writeBursts() {
+        try {
+            boolean closing = false;
+            while (!closing) {
+                Write first = queue.take();
+                if (first == CLOSE) {
+                    break;
+                }
+                send(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                for (int size = 1; size < maxBatchSize; size++) {
+                    Write next = queue.poll();
+                    if (next == null && maxDelayNanos > 0) {
+                        next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    }
+                    if (next == CLOSE) {
+                        closing = true;
+                    }
+                    if (next == null || closing) {
+                        break;
+                    }
+                    send(next);
+                }
+                client.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            failQueued(new TarantoolException(client.isClosed() ? CLIENT_CLOSED : WRITER_CLOSED));
+        }
+    }
+
+    private void send(Write write) {
+        CompletableFuture<Integer> response;
+        try {
+            response = client.sendWrite(write.query);
+        } catch (RuntimeException e) {
+            write.future.completeExceptionally(e);
+            return;
+        }
+        sent.add(response);
+        response.whenComplete((rows, e) -> {
+            sent.remove(response);
+            if (e == null) {
+                write.future.complete(rows);
+            } else {
+                write.future.completeExceptionally(e);
+            }
+        });
+    }
+
+    private void failQueued(TarantoolException e) {
+        for (Write write = queue.poll(); write != null; write = queue.poll()) {
+            write.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Same as {@link #close(long, TimeUnit)} with {@link #DEFAULT_CLOSE_TIMEOUT} milliseconds.
+     */
+    @Override
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends writes queued so far, waits for their responses and closes the connection. Writes not answered within
+     * the timeout, for example when the server stopped responding, are failed.
+     */
+    public synchronized void close(long timeout, TimeUnit unit) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            if (queue.offer(CLOSE, timeout, unit)) {
+                TimeUnit.NANOSECONDS.timedJoin(writer, deadline - System.nanoTime());
+            }
+            CompletableFuture.allOf(sent.toArray(new CompletableFuture<?>[0]))
+                    .handle((ignored, e) -> null)
+                    .get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // writes left are failed below
+        }
+        // writer thread stuck in sending fails the writes it has not sent when interrupted
+        writer.interrupt();
+        TarantoolException timedOut = new TarantoolException(CLOSE_TIMED_OUT);
+        failQueued(timedOut);
+        for (CompletableFuture<Integer> response : sent) {
+            response.completeExceptionally(timedOut);
+        }
+        client.close();
+    }
+
+    private static final class Write {
+        private final Consumer<TarantoolQuery> query;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        Write(Consumer<TarantoolQuery> query) {
+            this.query = query;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Growable column of values of one field filled by {@link Result#readColumns(int[], Column...)} straight from the
+ * response, without a row object for every tuple. Columns can be reused for several results after {@link #clear()}.
+ */
+public abstract class Column {
+    static final int INITIAL_CAPACITY = 16;
+    // allocated with the first null only
+    private boolean[] nulls;
+    int size;
+
+    Column() {
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        checkRow(row);
+        return nulls != null && row < nulls.length && nulls[row];
+    }
+
+    public void clear() {
+        if (nulls != null) {
+            // nulls grow only with the nulls appended, so rows after the last of them may not be there
+            Arrays.fill(nulls, 0, Math.min(size, nulls.length), false);
+        }
+        size = 0;
+    }
+
+    void read(MessageUnpacker unpacker) throws IOException {
+        MessageFormat format = unpacker.getNextFormat();
+        if (format == MessageFormat.NIL) {
+            unpacker.unpackNil();
+            appendNull();
+        } else {
+            read(unpacker, format);
+        }
+    }
+
+    void appendNull() {
+        int row = size;
+        ensureCapacity(row + 1);
+        if (nulls == null) {
+            nulls = new boolean[capacity()];
+        } else if (nulls.length < capacity()) {
+            nulls = Arrays.copyOf(nulls, capacity());
+        }
+        nulls[row] = true;
+        size = row + 1;
+    }
+
+    /**
+     * Reads a value that is not nil and appends it.
+     */
+    abstract void read(MessageUnpacker unpacker, MessageFormat format) throws IOException;
+
+    abstract int capacity();
+
+    abstract void ensureCapacity(int capacity);
+
+    static int grow(int capacity, int required) {
+        return Math.max(capacity * 2, required);
+    }
+
+    void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+
+    static TarantoolException typeMismatch(String expected, ValueType actual) {
+        return new TarantoolException("Expected " + expected + ", but got " + actual.toString().toLowerCase());
+    }
+}
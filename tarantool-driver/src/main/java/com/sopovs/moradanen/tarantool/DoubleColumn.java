@@ -0,0 +1,58 @@
+package com.sopovs.moradanen.tarantool;
+
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Column of float field, integers are read as doubles too since number fields hold both. Null values are read as
+ * {@link Double#NaN}.
+ */
+public final class DoubleColumn extends Column {
+    private double[] values = new double[INITIAL_CAPACITY];
+
+    public double get(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    public double[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    void read(MessageUnpacker unpacker, MessageFormat format) throws IOException {
+        ensureCapacity(size + 1);
+        switch (format.getValueType()) {
+            case FLOAT:
+                values[size++] = unpacker.unpackDouble();
+                break;
+            case INTEGER:
+                values[size++] = unpacker.unpackLong();
+                break;
+            default:
+                throw typeMismatch("float", format.getValueType());
+        }
+    }
+
+    @Override
+    int capacity() {
+        return values.length;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    void appendNull() {
+        super.appendNull();
+        values[size - 1] = Double.NaN;
+    }
+}
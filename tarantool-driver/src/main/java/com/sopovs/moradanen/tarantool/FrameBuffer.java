@@ -0,0 +1,124 @@
+package com.sopovs.moradanen.tarantool;
+
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.MessageBufferOutput;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Output of the request packer into a single growable array, so that sizes unknown while encoding are written later
+ * into the place reserved for them instead of encoding the rest into a separate buffer and copying it. The array
+ * starts with IPROTO length prefix, the whole frame is then written to transport with one copy.
+ */
+final class FrameBuffer implements MessageBufferOutput {
+    static final int PREFIX_SIZE = 5;
+    private static final int INITIAL_SIZE = 8192;
+    // larger arrays are dropped on clear not to keep them referenced after a single huge request
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024;
+    private byte[] array = new byte[INITIAL_SIZE];
+    private int size = PREFIX_SIZE;
+
+    byte[] array() {
+        return array;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Skips the given number of bytes to be written later with {@link #putArray32Header(int, int)}. Packer must be
+     * flushed before it.
+     *
+     * @return position of the reserved bytes
+     */
+    int reserve(int length) {
+        ensureCapacity(length);
+        int position = size;
+        size += length;
+        return position;
+    }
+
+    /**
+     * Writes array header of the fixed width reserved with {@link #reserve(int)}, so that the size of array is not
+     * known before all its elements are encoded.
+     */
+    void putArray32Header(int position, int arraySize) {
+        array[position] = MessagePack.Code.ARRAY32;
+        putInt(position + 1, arraySize);
+    }
+
+    /**
+     * Writes length prefix of the frame encoded so far. Packer must be flushed before it.
+     */
+    void putPrefix() {
+        array[0] = MessagePack.Code.UINT32;
+        putInt(1, size - PREFIX_SIZE);
+    }
+
+    private void putInt(int position, int value) {
+        array[position] = (byte) (value >>> 24);
+        array[position + 1] = (byte) (value >>> 16);
+        array[position + 2] = (byte) (value >>> 8);
+        array[position + 3] = (byte) value;
+    }
+
+    /**
+     * Copies the remaining bytes of the buffer without changing its position, whatever kind of buffer it is. Packer
+     * must be flushed before it.
+     */
+    void write(ByteBuffer buffer) {
+        int length = buffer.remaining();
+        ensureCapacity(length);
+        buffer.duplicate().get(array, size, length);
+        size += length;
+    }
+
+    void clear() {
+        if (array.length > MAX_RETAINED_SIZE) {
+            array = new byte[INITIAL_SIZE];
+        }
+        size = PREFIX_SIZE;
+    }
+
+    private void ensureCapacity(int length) {
+        if (array.length - size < length) {
+            byte[] grown = new byte[Math.max(array.length * 2, size + length)];
+            System.arraycopy(array, 0, grown, 0, size);
+            array = grown;
+        }
+    }
+
+    @Override
+    public MessageBuffer next(int minimumSize) {
+        ensureCapacity(minimumSize);
+        // packer encodes directly into the free part of the array and reports what was written with writeBuffer
+        return MessageBuffer.wrap(array, size, array.length - size);
+    }
+
+    @Override
+    public void writeBuffer(int length) {
+        size += length;
+    }
+
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(buffer, offset, array, size, length);
+        size += length;
+    }
+
+    @Override
+    public void add(byte[] buffer, int offset, int length) {
+        write(buffer, offset, length);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,283 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Current row of a result reused for every row. Scalars are kept unboxed, string and binary fields are kept as
+ * offsets into the frame the row is read from and decoded only when asked for, so that fields that are never read cost
+ * neither a copy nor an allocation. The frame should stay unchanged while the row is read. Only nested arrays, maps, extensions and integers not fitting into long are materialized as {@link Value}.
+ */
+final class LazyTuple {
+    private static final int INITIAL_FIELDS = 8;
+    private ValueType[] types = new ValueType[INITIAL_FIELDS];
+    // boolean as 0/1, integers as is, floats as raw long bits
+    private long[] scalars = new long[INITIAL_FIELDS];
+    private int[] offsets = new int[INITIAL_FIELDS];
+    private int[] lengths = new int[INITIAL_FIELDS];
+    private Value[] values = new Value[INITIAL_FIELDS];
+    private byte[] frame;
+    private int size = -1;
+
+    private static String decode(ValueType valueType) {
+        switch (valueType) {
+            case NIL:
+                return "null";
+            case MAP:
+            case ARRAY:
+            case FLOAT:
+            case BINARY:
+            case STRING:
+            case BOOLEAN:
+            case INTEGER:
+            case EXTENSION:
+                return valueType.toString().toLowerCase();
+            default:
+                throw new TarantoolException("Unknown msgpack value type " + valueType);
+        }
+    }
+
+    /**
+     * @param frame       array the unpacker reads from
+     * @param frameOffset position in the frame the unpacker started reading from
+     */
+    void read(MessageUnpacker unpacker, byte[] frame, int frameOffset) throws IOException {
+        size = -1;
+        this.frame = frame;
+        int fields = unpacker.unpackArrayHeader();
+        ensureFields(fields);
+        for (int i = 0; i < fields; i++) {
+            MessageFormat format = unpacker.getNextFormat();
+            ValueType type = format.getValueType();
+            types[i] = type;
+            values[i] = null;
+            switch (type) {
+                case NIL:
+                    unpacker.unpackNil();
+                    break;
+                case BOOLEAN:
+                    scalars[i] = unpacker.unpackBoolean() ? 1L : 0L;
+                    break;
+                case INTEGER:
+                    if (format == MessageFormat.UINT64) {
+                        // may not fit into long
+                        values[i] = unpacker.unpackValue();
+                    } else {
+                        scalars[i] = unpacker.unpackLong();
+                    }
+                    break;
+                case FLOAT:
+                    scalars[i] = Double.doubleToRawLongBits(unpacker.unpackDouble());
+                    break;
+                case STRING:
+                case BINARY:
+                    int start = (int) unpacker.getTotalReadBytes();
+                    unpacker.skipValue();
+                    int end = (int) unpacker.getTotalReadBytes();
+                    int headerSize = headerSize(format);
+                    offsets[i] = frameOffset + start + headerSize;
+                    lengths[i] = end - start - headerSize;
+                    break;
+                default:
+                    values[i] = unpacker.unpackValue();
+            }
+        }
+        size = fields;
+    }
+
+    private static int headerSize(MessageFormat format) {
+        switch (format) {
+            case FIXSTR:
+                return 1;
+            case STR8:
+            case BIN8:
+                return 2;
+            case STR16:
+            case BIN16:
+                return 3;
+            default:
+                return 5;
+        }
+    }
+
+    private void ensureFields(int fields) {
+        if (fields > types.length) {
+            int newLength = Math.max(types.length * 2, fields);
+            types = Arrays.copyOf(types, newLength);
+            scalars = Arrays.copyOf(scalars, newLength);
+            offsets = Arrays.copyOf(offsets, newLength);
+            lengths = Arrays.copyOf(lengths, newLength);
+            values = Arrays.copyOf(values, newLength);
+        }
+    }
+
+    /**
+     * Encodes the row back from what was kept of it, floats are encoded as doubles whatever they came as.
+     */
+    void pack(MessagePacker packer) throws IOException {
+        packer.packArrayHeader(size);
+        for (int i = 0; i < size; i++) {
+            packField(i, packer);
+        }
+    }
+
+    void packField(int index, MessagePacker packer) throws IOException {
+        switch (type(index)) {
+            case NIL:
+                packer.packNil();
+                break;
+            case BOOLEAN:
+                packer.packBoolean(scalars[index] != 0L);
+                break;
+            case INTEGER:
+                if (values[index] == null) {
+                    packer.packLong(scalars[index]);
+                } else {
+                    packer.packValue(values[index]);
+                }
+                break;
+            case FLOAT:
+                packer.packDouble(Double.longBitsToDouble(scalars[index]));
+                break;
+            case STRING:
+                packer.packRawStringHeader(lengths[index]);
+                packer.writePayload(frame, offsets[index], lengths[index]);
+                break;
+            case BINARY:
+                packer.packBinaryHeader(lengths[index]);
+                packer.writePayload(frame, offsets[index], lengths[index]);
+                break;
+            default:
+                packer.packValue(values[index]);
+        }
+    }
+
+    /**
+     * Copies string and binary fields out of the frame, so that the row stays readable when the frame is reused.
+     */
+    void detach() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == ValueType.STRING || types[i] == ValueType.BINARY) {
+                total += lengths[i];
+            }
+        }
+        byte[] copy = new byte[total];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            if (types[i] == ValueType.STRING || types[i] == ValueType.BINARY) {
+                System.arraycopy(frame, offsets[i], copy, position, lengths[i]);
+                offsets[i] = position;
+                position += lengths[i];
+            }
+        }
+        frame = copy;
+    }
+
+    void reset() {
+        size = -1;
+    }
+
+    boolean isRead() {
+        return size >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private ValueType type(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return types[index];
+    }
+
+    private TarantoolException typeMismatch(String expected, int index) {
+        return new TarantoolException("Expected " + expected + ", but got " + decode(types[index]));
+    }
+
+    boolean isNull(int index) {
+        return type(index) == ValueType.NIL;
+    }
+
+    boolean getBoolean(int index) {
+        if (type(index) != ValueType.BOOLEAN) {
+            throw typeMismatch("boolean", index);
+        }
+        return scalars[index] != 0L;
+    }
+
+    double getDouble(int index) {
+        if (type(index) != ValueType.FLOAT) {
+            throw typeMismatch("float", index);
+        }
+        return Double.longBitsToDouble(scalars[index]);
+    }
+
+    long getLong(int index) {
+        if (type(index) != ValueType.INTEGER) {
+            throw typeMismatch("integer", index);
+        }
+        Value value = values[index];
+        if (value != null) {
+            try {
+                return value.asIntegerValue().asLong();
+            } catch (MessagePackException e) {
+                throw new TarantoolException(e);
+            }
+        }
+        return scalars[index];
+    }
+
+    int getInt(int index) {
+        long value = getLong(index);
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new TarantoolException("Integer " + value + " does not fit into int");
+        }
+        return (int) value;
+    }
+
+    @Nullable
+    String getString(int index) {
+        ValueType type = type(index);
+        if (type == ValueType.NIL) {
+            return null;
+        }
+        if (type != ValueType.STRING) {
+            throw typeMismatch("string", index);
+        }
+        return new String(frame, offsets[index], lengths[index], StandardCharsets.UTF_8);
+    }
+
+    byte[] getBytes(int index) {
+        if (type(index) != ValueType.BINARY) {
+            throw typeMismatch("binary", index);
+        }
+        return Arrays.copyOfRange(frame, offsets[index], offsets[index] + lengths[index]);
+    }
+
+    /**
+     * @return field materialized as a value or null for scalars, strings and binaries which are kept unboxed
+     */
+    @Nullable
+    Value getValue(int index) {
+        type(index);
+        return values[index];
+    }
+
+    ByteBuffer getByteBuffer(int index) {
+        return ByteBuffer.wrap(getBytes(index)).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,51 @@
+package com.sopovs.moradanen.tarantool;
+
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Column of integer field, null values are read as 0.
+ */
+public final class LongColumn extends Column {
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    public long get(int row) {
+        checkRow(row);
+        return values[row];
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    @Override
+    void read(MessageUnpacker unpacker, MessageFormat format) throws IOException {
+        if (format.getValueType() != ValueType.INTEGER) {
+            throw typeMismatch("integer", format.getValueType());
+        }
+        ensureCapacity(size + 1);
+        values[size++] = unpacker.unpackLong();
+    }
+
+    @Override
+    int capacity() {
+        return values.length;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, grow(values.length, capacity));
+        }
+    }
+
+    @Override
+    void appendNull() {
+        super.appendNull();
+        values[size - 1] = 0L;
+    }
+}
@@ -0,0 +1,738 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.*;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.function.IntSupplier;
+
+import static com.sopovs.moradanen.tarantool.TarantoolClientImpl.*;
+
+final class QueryEncoder implements TarantoolQuery {
+    private static final byte INSERT = 1;
+    private static final byte UPSERT_TUPLE = 2;
+    private static final byte UPSERT_OPS = 3;
+    private static final byte EVAL = 4;
+    private static final byte SELECT = 5;
+    private static final byte DELETE = 6;
+    private static final byte UPDATE_KEY = 7;
+    private static final byte UPDATE_TUPLE = 8;
+    private static final byte SQL = 9;
+    private static final byte CALL = 10;
+    // key is already written by one of *ByLong methods, no values may be set
+    private static final byte KEY_WRITTEN = 11;
+    // arrays of arguments are written with fixed-width header reserved before their elements
+    private static final int ARGUMENTS_HEADER_SIZE = 5;
+    private final FrameBuffer frame = new FrameBuffer();
+    private final MessagePacker packer = MessagePack.newDefaultPacker(frame);
+    private final IntSupplier syncs;
+    private int querySize = 0;
+    private int argumentsHeader;
+    private byte currentQuery = 0;
+    private int sync;
+    private int code;
+    private int space = -1;
+    private int frameSize;
+    private long schemaVersion;
+
+    QueryEncoder(IntSupplier syncs) {
+        this.syncs = syncs;
+    }
+
+    private static byte[] scramble(String password, byte[] salt) {
+        final MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new TarantoolException(e);
+        }
+
+        byte[] step1 = sha1.digest(password.getBytes(StandardCharsets.UTF_8));
+
+        sha1.reset();
+        byte[] step2 = sha1.digest(step1);
+        sha1.reset();
+        sha1.update(Base64.getDecoder().decode(salt), 0, 20);
+        sha1.update(step2);
+        byte[] step3 = sha1.digest();
+        for (int i = 0; i < 20; i++) {
+            step1[i] ^= step3[i];
+        }
+        return step1;
+    }
+
+    /**
+     * Sets msgpack encoded values one by one with setters of the given query.
+     */
+    static void setValues(TarantoolQuery query, byte[] values) {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(values)) {
+            while (unpacker.hasNext()) {
+                MessageFormat format = unpacker.getNextFormat();
+                switch (format.getValueType()) {
+                    case NIL:
+                        unpacker.unpackNil();
+                        query.setNull();
+                        break;
+                    case BOOLEAN:
+                        query.setBoolean(unpacker.unpackBoolean());
+                        break;
+                    case INTEGER:
+                        query.setLong(unpacker.unpackLong());
+                        break;
+                    case FLOAT:
+                        if (format == MessageFormat.FLOAT32) {
+                            query.setFloat(unpacker.unpackFloat());
+                        } else {
+                            query.setDouble(unpacker.unpackDouble());
+                        }
+                        break;
+                    case STRING:
+                        query.setString(unpacker.unpackString());
+                        break;
+                    case BINARY:
+                        query.setBytes(unpacker.readPayload(unpacker.unpackBinaryHeader()));
+                        break;
+                    default:
+                        throw new TarantoolException("Unexpected value " + format);
+                }
+            }
+        } catch (IOException | MessagePackException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    int getSync() {
+        return sync;
+    }
+
+    int getCode() {
+        return code;
+    }
+
+    int getSpace() {
+        return space;
+    }
+
+    int getFrameSize() {
+        return frameSize;
+    }
+
+    // 0 means not to send it
+    void setSchemaVersion(long schemaVersion) {
+        this.schemaVersion = schemaVersion;
+    }
+
+    boolean isStarted() {
+        return currentQuery != 0;
+    }
+
+    void clear() {
+        try {
+            // drops whatever is left in the packer before dropping the frame
+            packer.flush();
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+        frame.clear();
+        currentQuery = 0;
+        querySize = 0;
+    }
+
+    void finishQueryWithArguments(TarantoolTransport transport) throws IOException {
+        writeQuery();
+        finishQuery(transport);
+    }
+
+    private void writeQuery() {
+        if (currentQuery == 0) {
+            throw new TarantoolException(EXECUTE_ABSENT_EXCEPTION);
+        }
+        if (currentQuery != KEY_WRITTEN) {
+            frame.putArray32Header(argumentsHeader, querySize);
+        }
+        currentQuery = 0;
+        querySize = 0;
+    }
+
+    // arguments are then packed one by one and counted in querySize
+    private void startArguments(int key) throws IOException {
+        packer.packInt(key);
+        packer.flush();
+        argumentsHeader = frame.reserve(ARGUMENTS_HEADER_SIZE);
+    }
+
+    void finishQuery(TarantoolTransport transport) throws IOException {
+        packer.flush();
+        frame.putPrefix();
+        frameSize = frame.size() - FrameBuffer.PREFIX_SIZE;
+        transport.writeFrame(frame.array(), frame.size());
+        frame.clear();
+    }
+
+    private void writeCode(int code) throws IOException {
+        sync = syncs.getAsInt();
+        this.code = code;
+        this.space = -1;
+        packer.packMapHeader(schemaVersion == 0L ? 2 : 3);
+        packer.packInt(Util.KEY_CODE);
+        packer.packInt(code);
+        packer.packInt(Util.KEY_SYNC);
+        packer.packInt(sync);
+        if (schemaVersion != 0L) {
+            packer.packInt(Util.KEY_SCHEMA_ID);
+            packer.packLong(schemaVersion);
+        }
+    }
+
+    void ping() {
+        try {
+            writeCode(Util.CODE_PING);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    void auth(String login, String password, byte[] salt) {
+        try {
+            writeCode(Util.CODE_AUTH);
+            packer.packMapHeader(2);
+            packer.packInt(Util.KEY_USER_NAME);
+            packer.packString(login);
+            packer.packInt(Util.KEY_TUPLE);
+            packer.packArrayHeader(2);
+            packer.packString("chap-sha1");
+            packer.packBinaryHeader(20);
+            packer.addPayload(scramble(password, salt));
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void eval(String expression) {
+        preActionCheck();
+        currentQuery = EVAL;
+        try {
+            writeCode(Util.CODE_EVAL);
+            packer.packMapHeader(2);
+            packer.packInt(Util.KEY_EXPRESSION);
+            packer.packString(expression);
+            startArguments(Util.KEY_TUPLE);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void call(String function) {
+        preActionCheck();
+        currentQuery = CALL;
+        try {
+            writeCode(Util.CODE_CALL);
+            packer.packMapHeader(2);
+            packer.packInt(Util.KEY_FUNCTION);
+            packer.packString(function);
+            startArguments(Util.KEY_TUPLE);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void call(TarantoolFunction function) {
+        preActionCheck();
+        currentQuery = CALL;
+        try {
+            writeCode(Util.CODE_CALL);
+            packer.packMapHeader(2);
+            packer.writePayload(function.getEncoded());
+            startArguments(Util.KEY_TUPLE);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void select(int space, int index, int limit, int offset, Iter iterator) {
+        selectInternal(6, space, limit, offset, iterator);
+
+        try {
+            packer.packInt(Util.KEY_INDEX);
+            packer.packInt(index);
+            startArguments(Util.KEY_KEY);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void selectAll(int space, int limit, int offset) {
+        selectInternal(5, space, limit, offset, Iter.ALL);
+        try {
+            startArguments(Util.KEY_KEY);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    private void selectInternal(int headSize, int space, int limit, int offset, Iter iterator) {
+        preActionCheck();
+        currentQuery = SELECT;
+        try {
+            writeCode(Util.CODE_SELECT);
+            if (offset == 0) {
+                headSize--;
+            }
+            if (iterator == Iter.EQ) {
+                headSize--;
+            }
+
+            packer.packMapHeader(headSize);
+            packer.packInt(Util.KEY_SPACE);
+            packer.packInt(space);
+            this.space = space;
+
+            if (iterator != Iter.EQ) {
+                packer.packInt(Util.KEY_ITERATOR);
+                packer.packInt(iterator.getValue());
+            }
+            packer.packInt(Util.KEY_LIMIT);
+            packer.packInt(limit);
+            if (offset != 0) {
+                packer.packInt(Util.KEY_OFFSET);
+                packer.packInt(offset);
+            }
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void selectByLong(int space, int index, long key) {
+        try {
+            startByKey(Util.CODE_SELECT, space, index, 1);
+            packer.packLong(key);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void selectByLongs(int space, int index, long key1, long key2) {
+        try {
+            startByKey(Util.CODE_SELECT, space, index, 2);
+            packer.packLong(key1);
+            packer.packLong(key2);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void deleteByLong(int space, int index, long key) {
+        try {
+            startByKey(Util.CODE_DELETE, space, index, 1);
+            packer.packLong(key);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void updateByLong(int space, int index, long key) {
+        try {
+            startByKey(Util.CODE_UPDATE, space, index, 1);
+            packer.packLong(key);
+            // operations are set with change the same way as after update and its key
+            currentQuery = UPDATE_TUPLE;
+            startArguments(Util.KEY_TUPLE);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    // size of the key is known, so unlike arguments set one by one its header is written without reservation
+    private void startByKey(int code, int space, int index, int keySize) throws IOException {
+        preActionCheck();
+        currentQuery = KEY_WRITTEN;
+        writeCode(code);
+        packer.packMapHeader(code == Util.CODE_DELETE ? 3 : 4);
+        packer.packInt(Util.KEY_SPACE);
+        packer.packInt(space);
+        this.space = space;
+        packer.packInt(Util.KEY_INDEX);
+        packer.packInt(index);
+        if (code == Util.CODE_SELECT) {
+            packer.packInt(Util.KEY_LIMIT);
+            packer.packInt(Integer.MAX_VALUE);
+        }
+        packer.packInt(Util.KEY_KEY);
+        packer.packArrayHeader(keySize);
+    }
+
+    @Override
+    public void insert(int space) {
+        insertOrReplace(Util.CODE_INSERT, space);
+    }
+
+    @Override
+    public void replace(int space) {
+        insertOrReplace(Util.CODE_REPLACE, space);
+    }
+
+    private void insertOrReplace(int code, int space) {
+        preActionCheck();
+        currentQuery = INSERT;
+        try {
+            writeCode(code);
+            packer.packMapHeader(2);
+            packer.packInt(Util.KEY_SPACE);
+            packer.packInt(space);
+            this.space = space;
+            startArguments(Util.KEY_TUPLE);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    private void preActionCheck() {
+        if (currentQuery != 0) {
+            throw new TarantoolException(PRE_ACTION_EXCEPTION);
+        }
+    }
+
+    @Override
+    public void delete(int space, int index) {
+        preActionCheck();
+        currentQuery = DELETE;
+        try {
+            writeCode(Util.CODE_DELETE);
+            packer.packMapHeader(3);
+            packer.packInt(Util.KEY_SPACE);
+            packer.packInt(space);
+            this.space = space;
+            packer.packInt(Util.KEY_INDEX);
+            packer.packInt(index);
+            startArguments(Util.KEY_KEY);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    private void preSetCheck() {
+        if (currentQuery == 0) {
+            throw new TarantoolException(PRE_SET_EXCEPTION);
+        }
+        if (currentQuery == KEY_WRITTEN) {
+            throw new TarantoolException(KEY_WRITTEN_EXCEPTION);
+        }
+    }
+
+    @Override
+    public void setNull() {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packNil();
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void setBytes(byte[] bytes) {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packBinaryHeader(bytes.length);
+            packer.writePayload(bytes);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void setRawTuple(ByteBuffer tuple) {
+        if (currentQuery != INSERT || querySize != 0) {
+            throw new TarantoolException(PRE_RAW_TUPLE_EXCEPTION);
+        }
+        int position = tuple.position();
+        int remaining = tuple.remaining();
+        if (remaining == 0) {
+            throw new TarantoolException("Raw tuple is empty");
+        }
+        byte head = tuple.get(position);
+        int headerSize;
+        if (MessagePack.Code.isFixedArray(head)) {
+            headerSize = 1;
+        } else if (head == MessagePack.Code.ARRAY16) {
+            headerSize = 3;
+        } else if (head == MessagePack.Code.ARRAY32) {
+            headerSize = 5;
+        } else {
+            throw new TarantoolException("Expected array, but got "
+                    + MessageFormat.valueOf(head).getValueType().toString().toLowerCase());
+        }
+        if (remaining < headerSize) {
+            throw new TarantoolException("Raw tuple is truncated: array header takes " + headerSize
+                    + " bytes, but got " + remaining);
+        }
+        long fields;
+        if (headerSize == 1) {
+            fields = head & 0x0f;
+        } else if (headerSize == 3) {
+            fields = (tuple.get(position + 1) & 0xff) << 8 | tuple.get(position + 2) & 0xff;
+        } else {
+            fields = (tuple.get(position + 1) & 0xffL) << 24 | (tuple.get(position + 2) & 0xff) << 16
+                    | (tuple.get(position + 3) & 0xff) << 8 | tuple.get(position + 4) & 0xff;
+        }
+        // every field takes at least one byte
+        if (fields > remaining - headerSize) {
+            throw new TarantoolException("Raw tuple is truncated: array of " + fields + " fields, but got "
+                    + (remaining - headerSize) + " bytes after the header");
+        }
+        try {
+            // fields are copied as they are after the header of arguments already reserved
+            packer.flush();
+            ByteBuffer body = tuple.duplicate();
+            body.position(position + headerSize);
+            frame.write(body);
+            querySize += (int) fields;
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void setLong(long val) {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packLong(val);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void setBoolean(boolean val) {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packBoolean(val);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void setDouble(double val) {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packDouble(val);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+
+    }
+
+    @Override
+    public void setFloat(float val) {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packFloat(val);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void setInt(int val) {
+        preSetCheck();
+        try {
+            querySize++;
+            packer.packInt(val);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+
+    }
+
+    @Override
+    public void setString(@Nullable String val) {
+        preSetCheck();
+        try {
+            querySize++;
+            if (val == null) {
+                packer.packNil();
+            } else {
+                packer.packString(val);
+            }
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void update(int space, int index) {
+        preActionCheck();
+        currentQuery = UPDATE_KEY;
+        try {
+            writeCode(Util.CODE_UPDATE);
+            packer.packMapHeader(4);
+            packer.packInt(Util.KEY_SPACE);
+            packer.packInt(space);
+            this.space = space;
+            packer.packInt(Util.KEY_INDEX);
+            packer.packInt(index);
+            startArguments(Util.KEY_KEY);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void upsert(int space) {
+        preActionCheck();
+        currentQuery = UPSERT_TUPLE;
+        try {
+            writeCode(Util.CODE_UPSERT);
+            packer.packMapHeader(3);
+            packer.packInt(Util.KEY_SPACE);
+            packer.packInt(space);
+            this.space = space;
+            startArguments(Util.KEY_TUPLE);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    private void preChange(String op, int field) throws IOException {
+        if (currentQuery == UPDATE_KEY) {
+            writeQuery();
+            currentQuery = UPDATE_TUPLE;
+            startArguments(Util.KEY_TUPLE);
+        } else if (currentQuery == UPSERT_TUPLE) {
+            writeQuery();
+            currentQuery = UPSERT_OPS;
+            startArguments(Util.KEY_UPSERT_OPS);
+        } else if (currentQuery != UPDATE_TUPLE && currentQuery != UPSERT_OPS) {
+            throw new TarantoolException(PRE_CHANGE_EXCEPTION);
+        }
+        querySize++;
+        packer.packArrayHeader(3);
+        packer.packString(op);
+        packer.packInt(field);
+    }
+
+    @Override
+    public void change(IntOp op, int field, int arg) {
+        try {
+            preChange(op.getVal(), field);
+            packer.packInt(arg);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void change(IntOp op, int field, long arg) {
+        try {
+            preChange(op.getVal(), field);
+            packer.packLong(arg);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void change(Op op, int field, @Nullable String arg) {
+        try {
+            preChange(op.getVal(), field);
+            if (arg == null) {
+                packer.packNil();
+            } else {
+                packer.packString(arg);
+            }
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void change(Op op, int field, byte[] bytes) {
+        try {
+            preChange(op.getVal(), field);
+            packer.packBinaryHeader(bytes.length);
+            packer.writePayload(bytes);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void sql(String sqlQuery) {
+        preActionCheck();
+        currentQuery = SQL;
+
+        try {
+            writeCode(Util.CODE_EXECUTE);
+            packer.packMapHeader(2);
+            packer.packInt(Util.KEY_SQL_TEXT);
+            packer.packString(sqlQuery);
+            startArguments(Util.KEY_SQL_BIND);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+
+    }
+
+    void sqlPrepared(long statementId) {
+        preActionCheck();
+        currentQuery = SQL;
+        try {
+            writeCode(Util.CODE_EXECUTE);
+            packer.packMapHeader(2);
+            packer.packInt(Util.KEY_STMT_ID);
+            packer.packLong(statementId);
+            startArguments(Util.KEY_SQL_BIND);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    void prepare(String sqlQuery) {
+        preActionCheck();
+        try {
+            writeCode(Util.CODE_PREPARE);
+            packer.packMapHeader(1);
+            packer.packInt(Util.KEY_SQL_TEXT);
+            packer.packString(sqlQuery);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    void unprepare(long statementId) {
+        preActionCheck();
+        try {
+            writeCode(Util.CODE_PREPARE);
+            packer.packMapHeader(1);
+            packer.packInt(Util.KEY_STMT_ID);
+            packer.packLong(statementId);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+}
@@ -4,11 +4,17 @@ import com.sopovs.moradanen.tarantool.core.Nullable;
 
 import java.io.Closeable;
 import java.nio.ByteBuffer;
+import java.util.Spliterator;
 
 public interface Result extends Closeable {
 
     int getSize();
 
+    /**
+     * @return size in bytes of the response frame this result was read from, not counting the length prefix
+     */
+    int getByteSize();
+
     boolean hasNext();
 
     boolean isNull(int index);
@@ -30,10 +36,32 @@ public interface Result extends Closeable {
 
     ByteBuffer getByteBuffer(int index);
 
+    /**
+     * @return read-only slice of msgpack encoded current row straight from the response without copying it, which
+     * should not be used after the next request on the same client as the response buffer may be reused for it
+     */
+    ByteBuffer rawTuple();
+
     int currentSize();
 
     boolean next();
 
+    /**
+     * Reads all the remaining rows straight into the columns in one pass without decoding rows, fields not asked for
+     * are skipped and fields missing in a tuple are read as nulls. There is no current row after it.
+     *
+     * @param fieldIndexes index of the field read into the column at the same position
+     * @return number of rows read
+     */
+    int readColumns(int[] fieldIndexes, Column... columns);
+
+    /**
+     * Splits the remaining rows for a parallel stream. They are copied out of the response and indexed with a cheap
+     * skip pass first, then every range of rows is decoded on its own thread. The mapper gets a result positioned at
+     * the row, it should be thread safe and should not keep the result. There is no current row after it.
+     */
+    <T> Spliterator<T> spliterator(TarantoolTemplate.ResultRowMapper<T> mapper);
+
     @Override
     void close();
 }
@@ -0,0 +1,80 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import org.msgpack.core.MessagePack;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Rows of a result copied out of the frame with offset of every row, so that ranges of them are decoded in parallel.
+ * Each range is decoded with own {@link AbstractResult}, so that every thread has own current row.
+ */
+final class RowSpliterator<T> implements Spliterator<T> {
+    // ranges of fewer rows are not split further, decoding them is cheaper than handing over to another thread
+    static final int MIN_SPLIT_ROWS = 256;
+    private final byte[] data;
+    // offset of every row and the end of the last one
+    private final int[] offsets;
+    private final TarantoolTemplate.ResultRowMapper<T> mapper;
+    private int from;
+    private final int to;
+    @Nullable
+    private AbstractResult range;
+
+    RowSpliterator(byte[] data, int[] offsets, TarantoolTemplate.ResultRowMapper<T> mapper, int from, int to) {
+        this.data = data;
+        this.offsets = offsets;
+        this.mapper = mapper;
+        this.from = from;
+        this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (from >= to) {
+            return false;
+        }
+        if (range == null) {
+            range = range(from, to);
+        }
+        range.next();
+        from++;
+        action.accept(mapper.map(range));
+        return true;
+    }
+
+    private AbstractResult range(int from, int to) {
+        int size = to - from;
+        int byteSize = offsets[to] - offsets[from];
+        return new AbstractResult(MessagePack.newDefaultUnpacker(data, offsets[from], byteSize), data, offsets[from],
+                byteSize) {
+            @Override
+            public int getSize() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    @Nullable
+    public Spliterator<T> trySplit() {
+        if (range != null || to - from < MIN_SPLIT_ROWS * 2) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Spliterator<T> prefix = new RowSpliterator<>(data, offsets, mapper, from, middle);
+        from = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return to - from;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE;
+    }
+}
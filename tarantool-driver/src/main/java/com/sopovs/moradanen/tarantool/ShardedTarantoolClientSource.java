@@ -0,0 +1,427 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePackException;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Routes requests of a vshard cluster straight to storages instead of going through a router instance. Bucket id is
+ * computed the same way as {@code vshard.router.bucket_id_strcrc32} does and the replicaset owning the bucket is
+ * looked up in a map of active buckets of every storage refreshed periodically in background. Every replicaset is
+ * accessed with own {@link TarantoolPooledClientSource} to its master.
+ * <p>
+ * Functions called with {@link #call} go through {@code vshard.storage.call}, so that the storage checks that it owns
+ * the bucket. Call answered with vshard {@code WRONG_BUCKET} error, for example during rebalancing, is sent again to
+ * the new owner of the bucket after the map is refreshed.
+ */
+public class ShardedTarantoolClientSource implements Closeable {
+    // vshard error code of a bucket not owned by the storage
+    static final int WRONG_BUCKET = 1;
+    static final String SHARDING_ERROR = "ShardingError";
+    // vshard.storage.call takes arguments of the function as a table
+    static final String CALL_EXPRESSION = "local bucket_id, mode, name = ... "
+            + "return vshard.storage.call(bucket_id, mode, name, {select(4, ...)})";
+    static final String BUCKETS_EXPRESSION = "local ids = setmetatable({}, {__serialize = 'seq'}) "
+            + "for _, bucket in box.space._bucket.index.status:pairs('active') do ids[#ids + 1] = bucket.id end "
+            + "return ids";
+    private static final int[] CRC32C_TABLE = new int[256];
+    // Lua prints numbers with %.14g, integers above it are printed in exponent form
+    private static final long MAX_PLAIN_NUMBER = 99_999_999_999_999L;
+    // larger integers are decoded by Tarantool into int64/uint64 cdata rather than Lua numbers
+    private static final long MAX_LUA_NUMBER = 1L << 53;
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+            }
+            CRC32C_TABLE[i] = crc;
+        }
+    }
+
+    private final TarantoolPooledClientSource[] replicasets;
+    private final int bucketCount;
+    @Nullable
+    private final ScheduledExecutorService discovery;
+    // index of the replicaset owning the bucket, -1 if not known
+    private volatile int[] owners;
+    private volatile boolean closed;
+
+    /**
+     * @param replicasets     connection settings of the master of every replicaset
+     * @param bucketCount     total number of buckets as configured in vshard
+     * @param poolConfig      settings of the pool of connections to each replicaset
+     * @param refreshInterval milliseconds between refreshes of the bucket map in background, 0 means only on
+     *                        unknown or moved buckets and {@link #refresh()}
+     */
+    public ShardedTarantoolClientSource(List<TarantoolConfig> replicasets, int bucketCount,
+                                        TarantoolPoolConfig poolConfig, long refreshInterval) {
+        if (replicasets.isEmpty()) {
+            throw new IllegalArgumentException("replicasets can't be empty");
+        }
+        if (bucketCount <= 0) {
+            throw new IllegalArgumentException("bucketCount should be positive");
+        }
+        if (refreshInterval < 0) {
+            throw new IllegalArgumentException("refreshInterval can't be negative");
+        }
+        this.bucketCount = bucketCount;
+        this.replicasets = new TarantoolPooledClientSource[replicasets.size()];
+        try {
+            for (int i = 0; i < this.replicasets.length; i++) {
+                this.replicasets[i] = new TarantoolPooledClientSource(replicasets.get(i), poolConfig);
+            }
+        } catch (RuntimeException e) {
+            closePools();
+            throw e;
+        }
+        int[] unknown = new int[bucketCount + 1];
+        Arrays.fill(unknown, -1);
+        owners = unknown;
+        refresh();
+        if (refreshInterval > 0) {
+            discovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tarantool-bucket-discovery");
+                thread.setDaemon(true);
+                return thread;
+            });
+            discovery.scheduleWithFixedDelay(this::refresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+        } else {
+            discovery = null;
+        }
+    }
+
+    public ShardedTarantoolClientSource(List<TarantoolConfig> replicasets, int bucketCount, int poolSize) {
+        this(replicasets, bucketCount, new TarantoolPoolConfig(poolSize), 60_000L);
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * @param shardKey parts of the key, strings, integers or booleans
+     * @return bucket id the same as of {@code vshard.router.bucket_id_strcrc32}
+     */
+    public int bucketId(Object... shardKey) {
+        return bucketIdStrcrc32(bucketCount, shardKey);
+    }
+
+    public static int bucketIdStrcrc32(int bucketCount, Object... shardKey) {
+        int crc = 0xFFFFFFFF;
+        for (Object part : shardKey) {
+            crc = crc32c(crc, toLuaString(part).getBytes(StandardCharsets.UTF_8));
+        }
+        // Tarantool digest.crc32 does not invert the result
+        return (int) ((crc & 0xFFFFFFFFL) % bucketCount) + 1;
+    }
+
+    private static int crc32c(int crc, byte[] bytes) {
+        for (byte b : bytes) {
+            crc = (crc >>> 8) ^ CRC32C_TABLE[(crc ^ b) & 0xFF];
+        }
+        return crc;
+    }
+
+    // the same as tostring() of the value decoded from msgpack in Lua
+    static String toLuaString(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            long number = ((Number) value).longValue();
+            if (number > MAX_LUA_NUMBER) {
+                return number + "ULL";
+            }
+            if (number < -MAX_LUA_NUMBER) {
+                return number + "LL";
+            }
+            if (Math.abs(number) <= MAX_PLAIN_NUMBER) {
+                return Long.toString(number);
+            }
+            return toExponentForm(number);
+        }
+        throw new IllegalArgumentException("Unsupported shard key part " + value);
+    }
+
+    private static String toExponentForm(long number) {
+        BigDecimal rounded = new BigDecimal(number).round(new MathContext(14, RoundingMode.HALF_EVEN));
+        String digits = rounded.unscaledValue().abs().toString().replaceFirst("0+$", "");
+        int exponent = rounded.precision() - rounded.scale() - 1;
+        StringBuilder result = new StringBuilder();
+        if (number < 0) {
+            result.append('-');
+        }
+        result.append(digits.charAt(0));
+        if (digits.length() > 1) {
+            result.append('.').append(digits, 1, digits.length());
+        }
+        return result.append("e+").append(exponent).toString();
+    }
+
+    /**
+     * @return client of the master of the replicaset owning the bucket
+     */
+    public TarantoolClient getClient(int bucketId) {
+        return replicasets[owner(bucketId)].getClient();
+    }
+
+    /**
+     * @return source of clients of the replicaset owning the bucket, closing it does nothing
+     */
+    public TarantoolClientSource getSource(int bucketId) {
+        return new TarantoolClientSource() {
+            @Override
+            public TarantoolClient getClient() {
+                return ShardedTarantoolClientSource.this.getClient(bucketId);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * Executes the query on the replicaset owning the bucket as of the last refresh of the map. The query is sent as
+     * it is, so the storage doesn't check that it still owns the bucket, see {@link #call} for that.
+     */
+    public <T> T execute(int bucketId, Consumer<TarantoolQuery> query,
+                         TarantoolTemplate.ResultExtractor<T> extractor) {
+        try (TarantoolClient client = getClient(bucketId)) {
+            query.accept(client);
+            try (Result result = client.execute()) {
+                return extractor.extract(result);
+            }
+        }
+    }
+
+    /**
+     * Calls the function on the replicaset owning the bucket through {@code vshard.storage.call}, which checks that
+     * the storage owns the bucket and keeps it from moving until the function returns. If the storage answers with
+     * {@code WRONG_BUCKET} error, the call is sent again to the new owner after the map is refreshed. The call is sent
+     * as eval, so the user needs to be allowed to execute it.
+     *
+     * @param write     whether the function writes, so that the bucket should be writable and not only readable
+     * @param arguments sets arguments of the function on the query, nulls may be lost
+     * @param mapper    maps the tuple returned by {@code vshard.storage.call}, it holds {@code true} in the first
+     *                  field followed by results of the function
+     */
+    public <T> T call(int bucketId, boolean write, String function, Consumer<TarantoolQuery> arguments,
+                      TarantoolTemplate.ResultRowMapper<T> mapper) {
+        int owner = owner(bucketId);
+        for (int attempt = 0; ; attempt++) {
+            CallError error;
+            try (TarantoolClient client = replicasets[owner].getClient()) {
+                client.eval(CALL_EXPRESSION);
+                client.setInt(bucketId);
+                client.setString(write ? "write" : "read");
+                client.setString(function);
+                arguments.accept(client);
+                try (Result result = client.execute()) {
+                    if (!result.next()) {
+                        throw new TarantoolException("No result of vshard.storage.call");
+                    }
+                    // vshard returns errors as nil or false followed by the error
+                    if (!result.isNull(0) && result.getBoolean(0)) {
+                        return mapper.map(result);
+                    }
+                    error = callError(result.rawTuple());
+                }
+            }
+            if (!error.wrongBucket || attempt >= replicasets.length) {
+                throw new TarantoolException(error.message);
+            }
+            refresh();
+            int newOwner = owners[bucketId];
+            if (newOwner == -1 || newOwner == owner) {
+                throw new TarantoolException(error.message);
+            }
+            owner = newOwner;
+        }
+    }
+
+    static CallError callError(ByteBuffer tuple) {
+        // the tuple is a read-only slice, which the unpacker can't wrap
+        byte[] bytes = new byte[tuple.remaining()];
+        tuple.duplicate().get(bytes);
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bytes)) {
+            int size = unpacker.unpackArrayHeader();
+            if (size < 2) {
+                return new CallError(false, "vshard.storage.call failed without error");
+            }
+            unpacker.skipValue();
+            ValueType errorType = unpacker.getNextFormat().getValueType();
+            if (errorType == ValueType.STRING) {
+                return new CallError(false, unpacker.unpackString());
+            }
+            if (errorType != ValueType.MAP) {
+                return new CallError(false, unpacker.unpackValue().toString());
+            }
+            int code = 0;
+            String type = null;
+            String name = null;
+            String message = null;
+            int fields = unpacker.unpackMapHeader();
+            for (int i = 0; i < fields; i++) {
+                String key = null;
+                if (unpacker.getNextFormat().getValueType() == ValueType.STRING) {
+                    key = unpacker.unpackString();
+                } else {
+                    unpacker.skipValue();
+                }
+                ValueType valueType = unpacker.getNextFormat().getValueType();
+                if ("code".equals(key) && valueType == ValueType.INTEGER) {
+                    code = unpacker.unpackInt();
+                } else if ("type".equals(key) && valueType == ValueType.STRING) {
+                    type = unpacker.unpackString();
+                } else if ("name".equals(key) && valueType == ValueType.STRING) {
+                    name = unpacker.unpackString();
+                } else if ("message".equals(key) && valueType == ValueType.STRING) {
+                    message = unpacker.unpackString();
+                } else {
+                    unpacker.skipValue();
+                }
+            }
+            if (message == null) {
+                message = name != null ? name : "vshard.storage.call failed with code " + code;
+            }
+            return new CallError(code == WRONG_BUCKET && SHARDING_ERROR.equals(type), message);
+        } catch (IOException | MessagePackException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    private int owner(int bucketId) {
+        checkClosed();
+        if (bucketId <= 0 || bucketId > bucketCount) {
+            throw new IllegalArgumentException("Bucket id " + bucketId + " is not in 1.." + bucketCount);
+        }
+        int owner = owners[bucketId];
+        if (owner == -1) {
+            refresh();
+            owner = owners[bucketId];
+            if (owner == -1) {
+                throw new TarantoolException("No replicaset owns bucket " + bucketId);
+            }
+        }
+        return owner;
+    }
+
+    /**
+     * Refreshes the map of buckets now. Buckets of replicasets that can't be connected stay as they were.
+     */
+    public synchronized void refresh() {
+        if (closed) {
+            return;
+        }
+        int[][] buckets = new int[replicasets.length][];
+        for (int i = 0; i < replicasets.length; i++) {
+            buckets[i] = activeBuckets(replicasets[i]);
+        }
+        int[] refreshed = owners.clone();
+        for (int bucket = 1; bucket < refreshed.length; bucket++) {
+            int owner = refreshed[bucket];
+            if (owner != -1 && buckets[owner] != null) {
+                refreshed[bucket] = -1;
+            }
+        }
+        for (int i = 0; i < buckets.length; i++) {
+            if (buckets[i] == null) {
+                continue;
+            }
+            for (int bucket : buckets[i]) {
+                if (bucket > 0 && bucket < refreshed.length) {
+                    refreshed[bucket] = i;
+                }
+            }
+        }
+        owners = refreshed;
+    }
+
+    @Nullable
+    private static int[] activeBuckets(TarantoolPooledClientSource replicaset) {
+        try (TarantoolClient client = replicaset.getClient();
+             Result result = client.evalFully(BUCKETS_EXPRESSION)) {
+            if (!result.next()) {
+                return new int[0];
+            }
+            int[] buckets = new int[result.currentSize()];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = result.getInt(i);
+            }
+            return buckets;
+        } catch (TarantoolException e) {
+            return null;
+        }
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new TarantoolException(TarantoolPooledClientSource.POOL_CLOSED);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        if (discovery != null) {
+            discovery.shutdown();
+        }
+        closePools();
+    }
+
+    private void closePools() {
+        TarantoolException closeException = null;
+        for (TarantoolPooledClientSource replicaset : replicasets) {
+            if (replicaset == null) {
+                continue;
+            }
+            try {
+                replicaset.close();
+            } catch (TarantoolException e) {
+                if (closeException == null) {
+                    closeException = e;
+                } else {
+                    closeException.addSuppressed(e);
+                }
+            }
+        }
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+
+    static final class CallError {
+        final boolean wrongBucket;
+        final String message;
+
+        CallError(boolean wrongBucket, String message) {
+            this.wrongBucket = wrongBucket;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Transport over non-blocking {@link SocketChannel}. Requests are copied into a reusable direct buffer, so pipelined
+ * and batched requests go out in a single write, and frames not fitting into it are written directly from the
+ * encoder array. Responses are read through a direct buffer as well, frames larger than it are read directly
+ * into the destination array.
+ */
+public class SocketChannelTransport implements TarantoolTransport {
+    private static final int OUT_BUFFER_SIZE = 8192;
+    private static final int IN_BUFFER_SIZE = 64 * 1024;
+    private final SocketChannel channel;
+    private final Selector readSelector;
+    private final Selector writeSelector;
+    private final ByteBuffer outBuffer = ByteBuffer.allocateDirect(OUT_BUFFER_SIZE);
+    private final ByteBuffer inBuffer = ByteBuffer.allocateDirect(IN_BUFFER_SIZE);
+    private volatile int timeout;
+
+    public SocketChannelTransport(@Nullable String host, int port) {
+        this(openChannel(host, port));
+    }
+
+    public SocketChannelTransport(SocketChannel channel) {
+        this.channel = channel;
+        Selector readSelector = null;
+        Selector writeSelector = null;
+        try {
+            channel.configureBlocking(false);
+            readSelector = Selector.open();
+            writeSelector = Selector.open();
+            // separate selectors let one thread read while another one writes
+            channel.register(readSelector, SelectionKey.OP_READ);
+            channel.register(writeSelector, SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            IOException closeException = closeAll(channel, readSelector, writeSelector);
+            if (closeException != null) {
+                e.addSuppressed(closeException);
+            }
+            throw new TarantoolException(e);
+        }
+        this.readSelector = readSelector;
+        this.writeSelector = writeSelector;
+        inBuffer.limit(0);
+    }
+
+    private static SocketChannel openChannel(@Nullable String host, int port) {
+        try {
+            return SocketChannel.open(host == null
+                    ? new InetSocketAddress(port)
+                    : new InetSocketAddress(host, port));
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    // every resource is closed even if closing others failed, so that no file descriptor leaks
+    @Nullable
+    private static IOException closeAll(Closeable... resources) {
+        IOException failure = null;
+        for (Closeable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        return failure;
+    }
+
+    @Override
+    public void readFully(byte[] buffer, int offset, int length) throws IOException {
+        int buffered = Math.min(inBuffer.remaining(), length);
+        inBuffer.get(buffer, offset, buffered);
+        offset += buffered;
+        length -= buffered;
+        if (length >= inBuffer.capacity()) {
+            ByteBuffer target = ByteBuffer.wrap(buffer, offset, length);
+            while (target.hasRemaining()) {
+                read(target);
+            }
+            return;
+        }
+        while (length > 0) {
+            inBuffer.clear();
+            read(inBuffer);
+            inBuffer.flip();
+            int read = Math.min(inBuffer.remaining(), length);
+            inBuffer.get(buffer, offset, read);
+            offset += read;
+            length -= read;
+        }
+    }
+
+    private void read(ByteBuffer target) throws IOException {
+        int read;
+        while ((read = channel.read(target)) == 0) {
+            await(readSelector);
+        }
+        if (read < 0) {
+            throw new EOFException();
+        }
+    }
+
+    @Override
+    public void writeFrame(byte[] frame, int length) throws IOException {
+        if (length > outBuffer.remaining()) {
+            flush();
+        }
+        if (length > outBuffer.remaining()) {
+            ByteBuffer buffer = ByteBuffer.wrap(frame, 0, length);
+            while (buffer.hasRemaining()) {
+                if (channel.write(buffer) == 0) {
+                    await(writeSelector);
+                }
+            }
+        } else {
+            outBuffer.put(frame, 0, length);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (outBuffer.position() == 0) {
+            return;
+        }
+        outBuffer.flip();
+        try {
+            while (outBuffer.hasRemaining()) {
+                if (channel.write(outBuffer) == 0) {
+                    await(writeSelector);
+                }
+            }
+        } finally {
+            outBuffer.clear();
+        }
+    }
+
+    private void await(Selector selector) throws IOException {
+        long deadline = timeout == 0 ? 0L : System.currentTimeMillis() + timeout;
+        while (true) {
+            if (!channel.isOpen()) {
+                throw new ClosedChannelException();
+            }
+            if (deadline == 0L) {
+                selector.select();
+            } else {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new SocketTimeoutException("Timed out after " + timeout + " ms");
+                }
+                selector.select(left);
+            }
+            if (!selector.selectedKeys().isEmpty()) {
+                selector.selectedKeys().clear();
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void setTimeout(int milliseconds) {
+        if (milliseconds < 0) {
+            throw new IllegalArgumentException("timeout can't be negative");
+        }
+        timeout = milliseconds;
+    }
+
+    @Override
+    public int getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        IOException failure = closeAll(channel, readSelector, writeSelector);
+        if (failure != null) {
+            throw new TarantoolException(failure);
+        }
+    }
+}
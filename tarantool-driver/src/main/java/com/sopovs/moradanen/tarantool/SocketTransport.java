@@ -0,0 +1,81 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+public class SocketTransport implements TarantoolTransport {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    public SocketTransport(@Nullable String host, int port) {
+        this(createSocket(host, port));
+    }
+
+    public SocketTransport(Socket socket) {
+        this.socket = socket;
+        try {
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        } catch (IOException e) {
+            close();
+            throw new TarantoolException(e);
+        }
+    }
+
+    private static Socket createSocket(@Nullable String host, int port) {
+        try {
+            return new Socket(host, port);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    @Override
+    public void readFully(byte[] buffer, int offset, int length) throws IOException {
+        // BufferedInputStream reads large frames directly into the buffer
+        in.readFully(buffer, offset, length);
+    }
+
+    @Override
+    public void writeFrame(byte[] frame, int length) throws IOException {
+        // BufferedOutputStream writes large frames directly to the socket
+        out.write(frame, 0, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void setTimeout(int milliseconds) throws IOException {
+        socket.setSoTimeout(milliseconds);
+    }
+
+    @Override
+    public int getTimeout() throws IOException {
+        return socket.getSoTimeout();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+}
@@ -14,8 +14,8 @@ public class SqlResult extends AbstractResult {
     private final Map<String, Integer> fieldNamesView = Collections.unmodifiableMap(fieldNames);
     private final int size;
 
-    SqlResult(MessageUnpacker unpacker) {
-        super(unpacker);
+    SqlResult(MessageUnpacker unpacker, byte[] frame, int byteSize) {
+        super(unpacker, frame, 0, byteSize);
         try {
             size = getSize(unpacker);
         } catch (IOException e) {
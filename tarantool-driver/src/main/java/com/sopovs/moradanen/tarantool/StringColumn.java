@@ -0,0 +1,72 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Column of string field. Strings are kept as UTF-8 bytes in one shared array, as the column outlives the response it
+ * is read from, and decoded only when asked for.
+ */
+public final class StringColumn extends Column {
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] lengths = new int[INITIAL_CAPACITY];
+    private byte[] data = new byte[INITIAL_CAPACITY * 16];
+    private int dataSize;
+
+    @Nullable
+    public String get(int row) {
+        if (isNull(row)) {
+            return null;
+        }
+        return new String(data, offsets[row], lengths[row], StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        dataSize = 0;
+    }
+
+    @Override
+    void read(MessageUnpacker unpacker, MessageFormat format) throws IOException {
+        if (format.getValueType() != ValueType.STRING) {
+            throw typeMismatch("string", format.getValueType());
+        }
+        int length = unpacker.unpackRawStringHeader();
+        if (dataSize + length > data.length) {
+            data = Arrays.copyOf(data, grow(data.length, dataSize + length));
+        }
+        unpacker.readPayload(data, dataSize, length);
+        ensureCapacity(size + 1);
+        offsets[size] = dataSize;
+        lengths[size] = length;
+        dataSize += length;
+        size++;
+    }
+
+    @Override
+    int capacity() {
+        return offsets.length;
+    }
+
+    @Override
+    void ensureCapacity(int capacity) {
+        if (capacity > offsets.length) {
+            int newCapacity = grow(offsets.length, capacity);
+            offsets = Arrays.copyOf(offsets, newCapacity);
+            lengths = Arrays.copyOf(lengths, newCapacity);
+        }
+    }
+
+    @Override
+    void appendNull() {
+        super.appendNull();
+        lengths[size - 1] = 0;
+    }
+}
@@ -0,0 +1,30 @@
+package com.sopovs.moradanen.tarantool;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Client that may be shared between threads - every request is sent over the same connection without waiting for
+ * responses to previous ones. Responses are matched with requests by their sync id and completed from a dedicated
+ * reader thread, so dependent stages not using *Async methods also run on that thread and should not block.
+ */
+public interface TarantoolAsyncClient extends Closeable {
+
+    CompletableFuture<Result> execute(Consumer<TarantoolQuery> query);
+
+    CompletableFuture<Integer> executeUpdate(Consumer<TarantoolQuery> query);
+
+    default CompletableFuture<Result> eval(String expression) {
+        return execute(query -> query.eval(expression));
+    }
+
+    CompletableFuture<Void> ping();
+
+    String getVersion();
+
+    boolean isClosed();
+
+    @Override
+    void close();
+}
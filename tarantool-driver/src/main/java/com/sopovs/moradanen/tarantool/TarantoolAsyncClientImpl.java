@@ -0,0 +1,326 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.Util;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.sopovs.moradanen.tarantool.TarantoolClientImpl.*;
+
+public class TarantoolAsyncClientImpl implements TarantoolAsyncClient {
+    static final String CLIENT_CLOSED = "Client is closed";
+    static final String REQUEST_TIMED_OUT = "No response within request timeout";
+    private final String version;
+    private final TarantoolTransport transport;
+    // used only by the reader thread after connect
+    private final byte[] prefix = new byte[FRAME_PREFIX_SIZE];
+    final AtomicInteger syncs = new AtomicInteger();
+    private final AtomicInteger writers = new AtomicInteger();
+    // sync is an unsigned integer in the protocol, so it wraps to zero, by then a request with the same sync is
+    // long answered or timed out
+    private final ThreadLocal<QueryEncoder> encoders = ThreadLocal.withInitial(
+            () -> new QueryEncoder(() -> syncs.incrementAndGet() & Integer.MAX_VALUE));
+    private final ConcurrentMap<Integer, PendingResponse<?>> pending = new ConcurrentHashMap<>();
+    private volatile long requestTimeoutNanos;
+    // some request written since the last flush needs it, guarded by transport
+    private boolean flushRequested;
+    @Nullable
+    private volatile TarantoolException failure;
+
+    public TarantoolAsyncClientImpl(TarantoolConfig config) {
+        this(createTransport(config), config.getUsername(), config.getPassword());
+    }
+
+    public TarantoolAsyncClientImpl(@Nullable String host, int port) {
+        this(new SocketTransport(host, port), null, null);
+    }
+
+    public TarantoolAsyncClientImpl(@Nullable String host, int port, @Nullable String login, @Nullable String password) {
+        this(new SocketTransport(host, port), login, password);
+    }
+
+    public TarantoolAsyncClientImpl(Socket socket, @Nullable String login, @Nullable String password) {
+        this(new SocketTransport(socket), login, password);
+    }
+
+    public TarantoolAsyncClientImpl(TarantoolTransport transport, @Nullable String login, @Nullable String password) {
+        this.transport = transport;
+        try {
+            version = connect(login, password);
+        } catch (IOException e) {
+            close();
+            throw new TarantoolException(e);
+        }
+        Thread reader = new Thread(this::readResponses, "tarantool-async-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private String connect(@Nullable String login, @Nullable String password) throws IOException {
+        byte[] greeting = new byte[GREETING_SIZE];
+        transport.readFully(greeting, 0, GREETING_SIZE);
+        String version = parseGreeting(greeting);
+        byte[] salt = parseSalt(greeting);
+        if (login != null && password != null) {
+            QueryEncoder encoder = encoders.get();
+            encoder.auth(login, password, salt);
+            encoder.finishQuery(transport);
+            transport.flush();
+            MessageUnpacker unpacker = readFrame().unpacker;
+            int sync = unpackHeader(unpacker);
+            if (sync != encoder.getSync()) {
+                throw new TarantoolException("Expected sync = " + encoder.getSync() + " and came " + sync);
+            }
+            unpackAuthResult(unpacker, unpacker.unpackMapHeader());
+        }
+        return version;
+    }
+
+    /**
+     * Requests not answered within the timeout are failed and their late responses are dropped, so that a lost
+     * response does not keep its request pending forever.
+     *
+     * @param timeout 0 means no timeout, the default
+     */
+    public void setRequestTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout can't be negative");
+        }
+        requestTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    @Override
+    public CompletableFuture<Result> execute(Consumer<TarantoolQuery> query) {
+        return send(query, (unpacker, bodySize, frame) -> unpackResult(unpacker, bodySize, frame, frame.length));
+    }
+
+    @Override
+    public CompletableFuture<Integer> executeUpdate(Consumer<TarantoolQuery> query) {
+        return send(query, (unpacker, bodySize, frame) -> unpackUpdateResult(unpacker, bodySize));
+    }
+
+    /**
+     * Sends insert, replace, update, upsert or delete leaving it in the transport buffer until {@link #flush()} or
+     * until other request flushes it.
+     *
+     * @return future of the number of tuples in the response
+     */
+    CompletableFuture<Integer> sendWrite(Consumer<TarantoolQuery> query) {
+        return send(query, false, (unpacker, bodySize, frame) -> {
+            try (Result result = unpackResult(unpacker, bodySize, frame, frame.length)) {
+                return result.getSize();
+            }
+        });
+    }
+
+    void flush() {
+        synchronized (transport) {
+            try {
+                flushRequested = false;
+                transport.flush();
+            } catch (IOException e) {
+                // pending responses are failed by the reader thread
+                close();
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> ping() {
+        QueryEncoder encoder = encoders.get();
+        encoder.ping();
+        return send(encoder, false, true, (unpacker, bodySize, frame) -> {
+            if (bodySize != 0) {
+                throw new TarantoolException(bodySize + " body size came from ping");
+            }
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> send(Consumer<TarantoolQuery> query, ResponseReader<T> reader) {
+        return send(query, true, reader);
+    }
+
+    private <T> CompletableFuture<T> send(Consumer<TarantoolQuery> query, boolean flush, ResponseReader<T> reader) {
+        QueryEncoder encoder = encoders.get();
+        try {
+            query.accept(encoder);
+            if (!encoder.isStarted()) {
+                throw new TarantoolException(EXECUTE_ABSENT_EXCEPTION);
+            }
+        } catch (RuntimeException e) {
+            encoder.clear();
+            throw e;
+        }
+        return send(encoder, true, flush, reader);
+    }
+
+    private <T> CompletableFuture<T> send(QueryEncoder encoder, boolean withArguments, boolean flush,
+                                          ResponseReader<T> reader) {
+        PendingResponse<T> response = new PendingResponse<>(reader);
+        int sync = encoder.getSync();
+        pending.put(sync, response);
+        TarantoolException currentFailure = failure;
+        if (currentFailure != null) {
+            pending.remove(sync);
+            encoder.clear();
+            response.future.completeExceptionally(currentFailure);
+            return response.future;
+        }
+        long timeout = requestTimeoutNanos;
+        if (timeout > 0) {
+            ScheduledFuture<?> timer = Timeouts.EXECUTOR.schedule(() -> {
+                if (pending.remove(sync, response)) {
+                    response.future.completeExceptionally(new TarantoolException(REQUEST_TIMED_OUT));
+                }
+            }, timeout, TimeUnit.NANOSECONDS);
+            response.future.whenComplete((result, e) -> timer.cancel(false));
+        }
+        writers.incrementAndGet();
+        synchronized (transport) {
+            // the last of concurrently sending threads flushes requests of all of them
+            boolean last = writers.decrementAndGet() == 0;
+            try {
+                if (withArguments) {
+                    encoder.finishQueryWithArguments(transport);
+                } else {
+                    encoder.finishQuery(transport);
+                }
+                // a writer that needs flush may be not the last one, so the last one flushes for it
+                flushRequested |= flush;
+                if (last && flushRequested) {
+                    flushRequested = false;
+                    transport.flush();
+                }
+            } catch (IOException e) {
+                encoder.clear();
+                pending.remove(sync);
+                response.future.completeExceptionally(new TarantoolException(e));
+                // connection is in unknown state after partial write
+                close();
+            }
+        }
+        return response.future;
+    }
+
+    private Frame readFrame() throws IOException {
+        int size = readFrameSize(transport, prefix);
+        // every frame gets own array as results built from it are handed over to other threads
+        byte[] frame = new byte[size];
+        transport.readFully(frame, 0, size);
+        return new Frame(MessagePack.newDefaultUnpacker(frame), frame);
+    }
+
+    private static int unpackHeader(MessageUnpacker unpacker) throws IOException {
+        int sync = 0;
+        int headerSize = unpacker.unpackMapHeader();
+        for (int i = 0; i < headerSize; i++) {
+            byte key = unpacker.unpackByte();
+            if (key == Util.KEY_SYNC) {
+                sync = unpacker.unpackInt();
+            } else {
+                unpacker.unpackInt();
+            }
+        }
+        return sync;
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                Frame frame = readFrame();
+                int sync = unpackHeader(frame.unpacker);
+                PendingResponse<?> response = pending.remove(sync);
+                if (response != null) {
+                    response.complete(frame);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failPending(isClosed() ? new TarantoolException(CLIENT_CLOSED) : new TarantoolException(e));
+        }
+    }
+
+    private void failPending(TarantoolException e) {
+        failure = e;
+        for (Integer sync : pending.keySet()) {
+            PendingResponse<?> response = pending.remove(sync);
+            if (response != null) {
+                response.future.completeExceptionally(e);
+            }
+        }
+        close();
+    }
+
+    @Override
+    public String getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return transport.isClosed();
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+
+    private interface ResponseReader<T> {
+        T read(MessageUnpacker unpacker, int bodySize, byte[] frame) throws IOException;
+    }
+
+    private static final class Frame {
+        private final MessageUnpacker unpacker;
+        private final byte[] data;
+
+        Frame(MessageUnpacker unpacker, byte[] data) {
+            this.unpacker = unpacker;
+            this.data = data;
+        }
+    }
+
+    // shared by all clients, it only fails futures of requests that timed out
+    private static final class Timeouts {
+        private static final ScheduledThreadPoolExecutor EXECUTOR = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "tarantool-async-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        static {
+            EXECUTOR.setRemoveOnCancelPolicy(true);
+        }
+    }
+
+    private static final class PendingResponse<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final ResponseReader<T> reader;
+
+        PendingResponse(ResponseReader<T> reader) {
+            this.reader = reader;
+        }
+
+        void complete(Frame frame) {
+            try {
+                future.complete(reader.read(frame.unpacker, frame.unpacker.unpackMapHeader(), frame.data));
+            } catch (IOException e) {
+                future.completeExceptionally(new TarantoolException(e));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+}
@@ -4,7 +4,7 @@ import com.sopovs.moradanen.tarantool.core.*;
 
 import java.io.Closeable;
 
-public interface TarantoolClient extends Closeable {
+public interface TarantoolClient extends TarantoolQuery, Closeable {
 
     Result execute();
 
@@ -17,7 +17,7 @@ public interface TarantoolClient extends Closeable {
         setString(space);
         Result result = execute();
         if (result.getSize() == 0) {
-            throw new TarantoolException("No such space " + space);
+            throw new TarantoolException(Util.noSuchSpace(space));
         }
         if (result.getSize() != 1) {
             throw new TarantoolException("Unexpected result length " + result.getSize());
@@ -26,71 +26,65 @@ public interface TarantoolClient extends Closeable {
         return result.getInt(0);
     }
 
-    void select(int space, int index, int limit, int offset, Iter iterator);
+    default int index(int space, String index) {
+        select(Util.SPACE_VINDEX, Util.INDEX_INDEX_NAME);
+        setInt(space);
+        setString(index);
+        Result result = execute();
+        if (result.getSize() == 0) {
+            throw new TarantoolException(Util.noSuchIndex(space, index));
+        }
+        if (result.getSize() != 1) {
+            throw new TarantoolException("Unexpected result length " + result.getSize());
+        }
+        result.next();
+        return result.getInt(1);
+    }
 
-    default void select(int space, int index, int limit, int offset) {
-        select(space, index, limit, offset, Iter.EQ);
+    default int index(String space, String index) {
+        return index(space(space), index);
     }
 
     default void select(String space, int index, int limit, int offset) {
         select(space(space), index, limit, offset);
     }
 
-    default void select(int space, int index) {
-        select(space, index, Integer.MAX_VALUE, 0);
-    }
-
     default void select(String space, int index) {
         select(space(space), index, Integer.MAX_VALUE, 0);
     }
 
-    default void select(int space, int index, int limit) {
-        select(space, index, limit, 0);
-    }
-
     default void select(String space, int index, int limit) {
         select(space(space), index, limit, 0);
     }
 
-    void selectAll(int space, int limit, int offset);
-
-    default void selectAll(int space) {
-        selectAll(space, Integer.MAX_VALUE, 0);
-    }
-
     default void selectAll(String space) {
         selectAll(space(space), Integer.MAX_VALUE, 0);
     }
 
-    default void selectAll(int space, int limit) {
-        selectAll(space, limit, 0);
-    }
-
     default void selectAll(String space, int limit) {
         selectAll(space(space), limit, 0);
     }
 
-    void eval(String expression);
-
     default Result evalFully(String expression) {
         eval(expression);
         return execute();
     }
 
-    void insert(int space);
+    /**
+     * @return function to be passed to {@link #call(TarantoolFunction)} without encoding its name on every call
+     */
+    default TarantoolFunction prepareCall(String function) {
+        return new TarantoolFunction(function);
+    }
 
     default void insert(String space) {
         insert(space(space));
     }
 
-    void replace(int space);
-
     default void replace(String space) {
         replace(space(space));
     }
 
-    void delete(int space, int index);
-
     default void delete(String space, int index) {
         delete(space(space), index);
     }
@@ -99,40 +93,10 @@ public interface TarantoolClient extends Closeable {
         delete(space(space), 0);
     }
 
-    void update(int space, int index);
-
-    void upsert(int space);
-
-    void change(IntOp op, int field, int arg);
-
-    void change(IntOp op, int field, long arg);
-
-    void change(Op op, int field, @Nullable String arg);
-
-    void change(Op op, int field, byte[] arg);
-
     void ping();
 
-    void setNull();
-
-    void setBoolean(boolean val);
-
-    void setDouble(double val);
-
-    void setFloat(float val);
-
-    void setInt(int val);
-
-    void setLong(long val);
-
-    void setString(@Nullable String val);
-
-    void setBytes(byte[] bytes);
-
     String getVersion();
 
-    void sql(String sqlQuery);
-
     boolean isClosed();
 
     @Override
@@ -140,9 +104,27 @@ public interface TarantoolClient extends Closeable {
 
     int executeUpdate();
 
+    /**
+     * @throws TarantoolBatchException if some of the queries failed, responses to all of them are read by then
+     */
     int[] executeBatchUpdate();
 
     void setNetworkTimeout(int milliseconds);
 
     int getNetworkTimeout();
+
+    /**
+     * Sends schema version with the following requests, so that server rejects them with
+     * {@link TarantoolSchemaException} once schema changed and ids resolved by names may be stale. 0 stops sending it.
+     * Clients that don't track schema ignore it.
+     */
+    default void setSchemaVersion(long schemaVersion) {
+    }
+
+    /**
+     * @return version of schema names are resolved with by {@link #space(String)}, 0 if the client doesn't track it
+     */
+    default long getSchemaVersion() {
+        return 0L;
+    }
 }
@@ -1,22 +1,15 @@
 package com.sopovs.moradanen.tarantool;
 
 import com.sopovs.moradanen.tarantool.core.*;
-import org.msgpack.core.MessageBufferPacker;
 import org.msgpack.core.MessagePack;
 import org.msgpack.core.MessageUnpacker;
-import org.msgpack.core.buffer.MessageBuffer;
+import org.msgpack.core.buffer.ArrayBufferInput;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-import java.util.List;
+import java.util.*;
 
 //TODO finalize equivalent via PhantomReference
 public class TarantoolClientImpl implements TarantoolClient {
@@ -24,31 +17,49 @@ public class TarantoolClientImpl implements TarantoolClient {
     static final String EXECUTE_ABSENT_EXCEPTION = "Trying to execute absent query";
     static final String PRE_ACTION_EXCEPTION = "Execute or add to batch action before starting next one";
     static final String PRE_SET_EXCEPTION = "Need to call one of update/insert/upsert/delete before setting tuple value";
+    static final String KEY_WRITTEN_EXCEPTION = "Key is already set by selectByLong/deleteByLong/updateByLong";
     static final String NOT_CLOSED_RESULT = "Sending next without reading previous";
-    private static final byte INSERT = 1;
-    private static final byte UPSERT_TUPLE = 2;
-    private static final byte UPSERT_OPS = 3;
-    private static final byte EVAL = 4;
-    private static final byte SELECT = 5;
-    private static final byte DELETE = 6;
-    private static final byte UPDATE_KEY = 7;
-    private static final byte UPDATE_TUPLE = 8;
-    private static final byte SQL = 9;
+    static final String PRE_RAW_TUPLE_EXCEPTION = "Raw tuple can only be set right after insert/replace";
+    static final int GREETING_SIZE = 128;
+    static final int FRAME_PREFIX_SIZE = 5;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    // larger frames are read into one-off arrays not to keep them referenced after a single huge select
+    private static final int MAX_RETAINED_FRAME = 1024 * 1024;
+    private static final TarantoolRequestEvent[] NO_PENDING = new TarantoolRequestEvent[0];
     private final String version;
-    private final Socket socket;
-    private final MessageUnpacker unpacker;
-    private final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
-    private final MessageBufferPacker queryPacker = MessagePack.newDefaultBufferPacker();
-    private final DataOutputStream out;
-    private int querySize = 0;
+    private final boolean prepareSupported;
+    private final TarantoolTransport transport;
+    private final byte[] prefix = new byte[FRAME_PREFIX_SIZE];
+    private final ArrayBufferInput frameInput = new ArrayBufferInput(new byte[0]);
+    private final MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(frameInput);
+    private byte[] frame = new byte[8192];
+    // array the last frame is read into, either the retained frame or a one-off one
+    private byte[] received = frame;
+    private int frameSize;
     private int counter;
+    private final QueryEncoder encoder = new QueryEncoder(() -> ++counter);
     @Nullable
     private Result last;
     private int batchSize = 0;
-    private byte currentQuery = 0;
+    @Nullable
+    private TarantoolClientListener listener;
+    // ring of requests sent, but not answered yet, only filled when there is a listener
+    private TarantoolRequestEvent[] pending = NO_PENDING;
+    private int pendingHead;
+    private int pendingCount;
+    private boolean responseRead;
+    private long decodeStart;
+    // ids of statements prepared on server by query text in access order
+    private final LinkedHashMap<String, Long> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+    private TarantoolSchemaCache schemaCache = new TarantoolSchemaCache();
+    // from the last response, 0 until the first one
+    private long schemaId;
+    private int responseCode;
+    private long schemaVersion;
 
     public TarantoolClientImpl(TarantoolConfig config) {
-        this(config.getHost(), config.getPort(), config.getUsername(), config.getPassword());
+        this(createTransport(config), config.getUsername(), config.getPassword());
     }
 
     public TarantoolClientImpl(@Nullable String host) {
@@ -56,7 +67,7 @@ public class TarantoolClientImpl implements TarantoolClient {
     }
 
     public TarantoolClientImpl(@Nullable String host, int port) {
-        this(createSocket(host, port));
+        this(new SocketTransport(host, port));
     }
 
     public TarantoolClientImpl(@Nullable String host, @Nullable String login, @Nullable String password) {
@@ -64,7 +75,7 @@ public class TarantoolClientImpl implements TarantoolClient {
     }
 
     public TarantoolClientImpl(@Nullable String host, int port, @Nullable String login, @Nullable String password) {
-        this(createSocket(host, port), login, password);
+        this(new SocketTransport(host, port), login, password);
     }
 
     public TarantoolClientImpl(Socket socket) {
@@ -72,86 +83,345 @@ public class TarantoolClientImpl implements TarantoolClient {
     }
 
     public TarantoolClientImpl(Socket socket, @Nullable String login, @Nullable String password) {
-        this.socket = socket;
+        this(new SocketTransport(socket), login, password);
+    }
+
+    public TarantoolClientImpl(TarantoolTransport transport) {
+        this(transport, null, null);
+    }
+
+    public TarantoolClientImpl(TarantoolTransport transport, @Nullable String login, @Nullable String password) {
+        this.transport = transport;
         try {
-            unpacker = MessagePack.newDefaultUnpacker(socket.getInputStream());
-            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
             version = connect(login, password);
         } catch (IOException e) {
             throw new TarantoolException(e);
         }
+        prepareSupported = isPrepareSupported(version);
     }
 
-    private static int currentQueryToQueryCode(byte currentQuery) {
-        switch (currentQuery) {
-            case EVAL:
-            case INSERT:
-            case UPDATE_TUPLE:
-            case UPSERT_TUPLE:
-                return Util.KEY_TUPLE;
-            case SELECT:
-            case DELETE:
-            case UPDATE_KEY:
-                return Util.KEY_KEY;
-            case UPSERT_OPS:
-                return Util.KEY_UPSERT_OPS;
-            case SQL:
-                return Util.KEY_SQL_BIND;
-            case 0:
-            default:
-                throw new TarantoolException(EXECUTE_ABSENT_EXCEPTION);
+    static TarantoolTransport createTransport(TarantoolConfig config) {
+        return config.isNio()
+                ? new SocketChannelTransport(config.getHost(), config.getPort())
+                : new SocketTransport(config.getHost(), config.getPort());
+    }
+
+    static int readFrameSize(TarantoolTransport transport, byte[] prefix) throws IOException {
+        transport.readFully(prefix, 0, FRAME_PREFIX_SIZE);
+        if (prefix[0] != MessagePack.Code.UINT32) {
+            throw new TarantoolException("Unexpected frame length prefix " + prefix[0]);
+        }
+        int size = (prefix[1] & 0xff) << 24 | (prefix[2] & 0xff) << 16 | (prefix[3] & 0xff) << 8 | prefix[4] & 0xff;
+        if (size < 0) {
+            throw new TarantoolException("Frame size " + Integer.toUnsignedString(size) + " is too large");
         }
+        return size;
     }
 
-    private static Socket createSocket(@Nullable String host, int port) {
+    /**
+     * @param frame array the unpacker reads the frame of byteSize from, starting at 0
+     */
+    static Result unpackResult(MessageUnpacker unpacker, int bodySize, byte[] frame, int byteSize)
+            throws IOException {
+        if (bodySize == 1) {
+            byte bodyKey = unpacker.unpackByte();
+            if (bodyKey == Util.KEY_DATA) {
+                return new ArrayResult(unpacker, frame, byteSize);
+            } else if (bodyKey == Util.KEY_ERROR) {
+                throw new TarantoolException(unpacker.unpackString());
+            } else {
+                throw new TarantoolException("Unknown body Key " + bodyKey);
+            }
+        } else if (bodySize == 2) {
+            return new SqlResult(unpacker, frame, byteSize);
+        } else {
+            throw new TarantoolException("Body size is " + bodySize);
+        }
+    }
+
+    static int unpackUpdateResult(MessageUnpacker unpacker, int bodySize) throws IOException {
+        if (1 != bodySize) {
+            throw new TarantoolException("Body size is " + bodySize);
+        }
+
+        byte bodyKey = unpacker.unpackByte();
+        if (bodyKey == Util.KEY_ERROR) {
+            throw new TarantoolException(unpacker.unpackString());
+        }
+        if (bodyKey != Util.KEY_SQL_INFO) {
+            throw new TarantoolException("Expected SQL_INFO(" + Util.KEY_SQL_INFO + "), but got " + bodyKey);
+        }
+        int respBodySize = unpacker.unpackMapHeader();
+        if (1 != respBodySize) {
+            throw new TarantoolException("Non-select body size is " + bodySize);
+        }
+        int sqlInfo = unpacker.unpackInt();
+        if (sqlInfo != Util.KEY_SQL_ROW_COUNT) {
+            throw new TarantoolException("Expected KEY_SQL_ROW_COUNT(" + Util.KEY_SQL_ROW_COUNT + "), but got " + sqlInfo);
+        }
+        return unpacker.unpackInt();
+    }
+
+    static void unpackAuthResult(MessageUnpacker unpacker, int bodySize) throws IOException {
+        if (bodySize == 1) {
+            byte bodyKey = unpacker.unpackByte();
+            if (bodyKey == Util.KEY_ERROR) {
+                throw new TarantoolAuthException(unpacker.unpackString());
+            } else {
+                throw new TarantoolException("Unknown body Key " + bodyKey);
+            }
+        }
+        if (bodySize > 1) {
+            throw new TarantoolException("Body size " + bodySize + " for auth");
+        }
+    }
+
+    static String parseGreeting(byte[] bytes) {
+        String greeting = new String(bytes, 0, 64, StandardCharsets.US_ASCII);
+        String[] parts = greeting.split(" ");
+        if (parts.length < 2 || !"Tarantool".equals(parts[0])) {
+            throw new TarantoolException("Unexpected greeting " + greeting);
+        }
+        return parts[1];
+    }
+
+    static byte[] parseSalt(byte[] greeting) {
+        return Arrays.copyOfRange(greeting, 64, 64 + 44);
+    }
+
+    static boolean isPrepareSupported(String version) {
+        String[] parts = version.split("[.-]");
+        try {
+            int major = Integer.parseInt(parts[0]);
+            int minor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return major > 2 || major == 2 && minor >= 3;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return statement id or -1 if server failed to prepare it
+     */
+    static long unpackPrepareResult(MessageUnpacker unpacker, int bodySize) throws IOException {
+        long statementId = -1L;
+        boolean failed = false;
+        for (int i = 0; i < bodySize; i++) {
+            int key = unpacker.unpackInt();
+            if (key == Util.KEY_STMT_ID) {
+                statementId = unpacker.unpackLong();
+            } else {
+                failed |= key == Util.KEY_ERROR;
+                unpacker.skipValue();
+            }
+        }
+        return failed ? -1L : statementId;
+    }
+
+    /**
+     * @return whether server failed to unprepare statement
+     */
+    static boolean unpackUnprepareResult(MessageUnpacker unpacker, int bodySize) throws IOException {
+        boolean failed = false;
+        for (int i = 0; i < bodySize; i++) {
+            failed |= unpacker.unpackInt() == Util.KEY_ERROR;
+            unpacker.skipValue();
+        }
+        return failed;
+    }
+
+    /**
+     * Listener should be set between requests and must not use this client.
+     */
+    public void setListener(@Nullable TarantoolClientListener listener) {
+        if (listener != null && pending.length == 0) {
+            pending = new TarantoolRequestEvent[4];
+            for (int i = 0; i < pending.length; i++) {
+                pending[i] = new TarantoolRequestEvent();
+            }
+        }
+        pendingCount = 0;
+        responseRead = false;
+        this.listener = listener;
+    }
+
+    /**
+     * Sets how many SQL statements passed to {@link #preparedSql(String)} are kept prepared on server, least recently
+     * used ones are unprepared when exceeded. Zero disables preparing and query text is sent every time.
+     */
+    public void setStatementCacheSize(int statementCacheSize) {
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("statementCacheSize can't be negative");
+        }
+        this.statementCacheSize = statementCacheSize;
         try {
-            return new Socket(host, port);
+            while (statements.size() > statementCacheSize) {
+                unprepareEldest();
+            }
         } catch (IOException e) {
-            throw new TarantoolException(e);
+            throw broken(e);
+        } catch (RuntimeException e) {
+            responded(0, true);
+            throw e;
         }
     }
 
-    private static byte[] scramble(String password, byte[] salt) {
-        final MessageDigest sha1;
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    /**
+     * Shares schema loaded by this client with others, e.g. by all clients of a pool.
+     */
+    public void setSchemaCache(TarantoolSchemaCache schemaCache) {
+        this.schemaCache = Objects.requireNonNull(schemaCache);
+    }
+
+    /**
+     * @return cached schema, it is reloaded if any response to this client came with newer schema id
+     */
+    public TarantoolSchema getSchema() {
+        TarantoolSchema schema = schemaCache.getSchema();
+        if (schema == null || schema.getSchemaId() < schemaId) {
+            schema = loadSchema();
+        }
+        return schema;
+    }
+
+    private TarantoolSchema loadSchema() {
+        // schema itself is loaded with any version
+        encoder.setSchemaVersion(0L);
         try {
-            sha1 = MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new TarantoolException(e);
+            while (true) {
+                selectAll(Util.SPACE_VSPACE);
+                Map<Integer, TarantoolSchema.Space> spaces = TarantoolSchema.readSpaces(execute());
+                long spacesSchemaId = schemaId;
+                selectAll(Util.SPACE_VINDEX);
+                Result indexes = execute();
+                if (spacesSchemaId == schemaId) {
+                    TarantoolSchema schema = TarantoolSchema.create(schemaId, spaces, indexes);
+                    schemaCache.update(schema);
+                    return schema;
+                }
+                // schema changed in between
+                indexes.close();
+            }
+        } finally {
+            encoder.setSchemaVersion(schemaVersion);
+        }
+    }
+
+    @Override
+    public void setSchemaVersion(long schemaVersion) {
+        this.schemaVersion = schemaVersion;
+        encoder.setSchemaVersion(schemaVersion);
+    }
+
+    @Override
+    public long getSchemaVersion() {
+        return getSchema().getSchemaId();
+    }
+
+    @Override
+    public int space(String space) {
+        int result = findSpace(space);
+        if (result < 0) {
+            throw new TarantoolException(Util.noSuchSpace(space));
         }
+        return result;
+    }
 
-        byte[] step1 = sha1.digest(password.getBytes(StandardCharsets.UTF_8));
+    @Override
+    public int index(int space, String index) {
+        int result = findIndex(space, index);
+        if (result < 0) {
+            throw new TarantoolException(Util.noSuchIndex(space, index));
+        }
+        return result;
+    }
 
-        sha1.reset();
-        byte[] step2 = sha1.digest(step1);
-        sha1.reset();
-        sha1.update(Base64.getDecoder().decode(salt), 0, 20);
-        sha1.update(step2);
-        byte[] step3 = sha1.digest();
-        for (int i = 0; i < 20; i++) {
-            step1[i] ^= step3[i];
+    /**
+     * @return space id or -1 if there is no such space, unlike {@link #space(String)} throws only on failed requests
+     */
+    int findSpace(String space) {
+        TarantoolSchema.Space result = getSchema().getSpace(space);
+        if (result == null) {
+            // may be just created while no response came with new schema id yet
+            result = loadSchema().getSpace(space);
+        }
+        return result == null ? -1 : result.getId();
+    }
+
+    int findIndex(int space, String index) {
+        TarantoolSchema.Space schemaSpace = getSchema().getSpace(space);
+        if (schemaSpace == null || !schemaSpace.getIndexNames().contains(index)) {
+            // same as for space
+            schemaSpace = loadSchema().getSpace(space);
+        }
+        return schemaSpace == null || !schemaSpace.getIndexNames().contains(index) ? -1
+                : schemaSpace.getIndex(index);
+    }
+
+    private void requestWritten(long start) {
+        if (pendingCount == pending.length) {
+            TarantoolRequestEvent[] grown = new TarantoolRequestEvent[pending.length * 2];
+            for (int i = 0; i < pendingCount; i++) {
+                grown[i] = pending[(pendingHead + i) % pending.length];
+            }
+            for (int i = pendingCount; i < grown.length; i++) {
+                grown[i] = new TarantoolRequestEvent();
+            }
+            pending = grown;
+            pendingHead = 0;
+        }
+        TarantoolRequestEvent event = pending[(pendingHead + pendingCount++) % pending.length];
+        event.code = encoder.getCode();
+        event.space = encoder.getSpace();
+        event.sync = encoder.getSync();
+        event.bytesWritten = FRAME_PREFIX_SIZE + encoder.getFrameSize();
+        event.writeNanos = System.nanoTime() - start;
+    }
+
+    // responses to requests pending on the broken connection will never come, so they are reported as failed
+    private TarantoolException broken(IOException e) {
+        while (pendingCount > 0) {
+            if (!responseRead) {
+                responseRead = true;
+                decodeStart = System.nanoTime();
+            }
+            responded(0, true);
+        }
+        return new TarantoolException(e);
+    }
+
+    private void responded(int rows, boolean failed) {
+        if (!responseRead) {
+            return;
+        }
+        responseRead = false;
+        TarantoolRequestEvent event = pending[pendingHead];
+        event.decodeNanos = System.nanoTime() - decodeStart;
+        event.rows = rows;
+        event.failed = failed;
+        pendingHead = (pendingHead + 1) % pending.length;
+        pendingCount--;
+        TarantoolClientListener listener = this.listener;
+        if (listener != null) {
+            listener.onResponse(event);
         }
-        return step1;
     }
 
     private Result getSingleResult() {
         try {
             int bodySize = flushAndGetResultSize(true);
-            if (bodySize == 1) {
-                byte bodyKey = unpacker.unpackByte();
-                if (bodyKey == Util.KEY_DATA) {
-                    return last = new ArrayResult(unpacker);
-                } else if (bodyKey == Util.KEY_ERROR) {
-                    throw new TarantoolException(unpacker.unpackString());
-                } else {
-                    throw new TarantoolException("Unknown body Key " + bodyKey);
-                }
-            } else if (bodySize == 2) {
-                return last = new SqlResult(unpacker);
-            } else {
-                throw new TarantoolException("Body size is " + bodySize);
-            }
+            Result result = unpackResult(unpacker, bodySize, received, frameSize);
+            responded(result.getSize(), false);
+            return last = result;
         } catch (IOException e) {
-            throw new TarantoolException(e);
+            throw broken(e);
+        } catch (RuntimeException e) {
+            responded(0, true);
+            throw e;
         }
     }
 
@@ -167,10 +437,28 @@ public class TarantoolClientImpl implements TarantoolClient {
     @Override
     public int[] executeBatchUpdate() {
         int[] result = new int[batchSize];
-        for (int i = 0; i < batchSize; i++) {
-            result[i] = getUpdateResult();
+        TarantoolException failure = null;
+        try {
+            for (int i = 0; i < result.length; i++) {
+                try {
+                    result[i] = getUpdateResult();
+                } catch (TarantoolException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw e;
+                    }
+                    // error response to one query, responses to the rest are still read
+                    result[i] = TarantoolBatchException.EXECUTE_FAILED;
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+        } finally {
+            batchSize = 0;
+        }
+        if (failure != null) {
+            throw new TarantoolBatchException(result, failure);
         }
-        batchSize = 0;
         return result;
     }
 
@@ -183,8 +471,8 @@ public class TarantoolClientImpl implements TarantoolClient {
     @Override
     public void setNetworkTimeout(int milliseconds) {
         try {
-            socket.setSoTimeout(milliseconds);
-        } catch (SocketException e) {
+            transport.setTimeout(milliseconds);
+        } catch (IOException e) {
             throw new TarantoolException(e);
         }
     }
@@ -192,47 +480,80 @@ public class TarantoolClientImpl implements TarantoolClient {
     @Override
     public int getNetworkTimeout() {
         try {
-            return socket.getSoTimeout();
-        } catch (SocketException e) {
+            return transport.getTimeout();
+        } catch (IOException e) {
             throw new TarantoolException(e);
         }
     }
 
     private int getUpdateResult() {
         try {
-            int bodySize = flushAndGetResultSize(true);
-            if (1 != bodySize) {
-                throw new TarantoolException("Body size is " + bodySize);
-            }
-
-            byte bodyKey = unpacker.unpackByte();
-            if (bodyKey == Util.KEY_ERROR) {
-                throw new TarantoolException(unpacker.unpackString());
-            }
-            if (bodyKey != Util.KEY_SQL_INFO) {
-                throw new TarantoolException("Expected SQL_INFO(" + Util.KEY_SQL_INFO + "), but got " + bodyKey);
-            }
-            int respBodySize = unpacker.unpackMapHeader();
-            if (1 != respBodySize) {
-                throw new TarantoolException("Non-select body size is " + bodySize);
-            }
-            int sqlInfo = unpacker.unpackInt();
-            if (sqlInfo != Util.KEY_SQL_ROW_COUNT) {
-                throw new TarantoolException("Expected KEY_SQL_ROW_COUNT(" + Util.KEY_SQL_ROW_COUNT + "), but got " + sqlInfo);
-            }
-            return unpacker.unpackInt();
+            int rows = unpackUpdateResult(unpacker, flushAndGetResultSize(true));
+            responded(rows, false);
+            return rows;
         } catch (IOException e) {
-            throw new TarantoolException(e);
+            throw broken(e);
+        } catch (RuntimeException e) {
+            responded(0, true);
+            throw e;
         }
     }
 
     private int flushAndGetResultSize(boolean batch) throws IOException {
-        out.flush();
-
-        // TODO expose byte size to Result?
-        unpacker.unpackInt();
+        if (pendingCount == 0) {
+            transport.flush();
+            readFrame();
+        } else {
+            long start = System.nanoTime();
+            transport.flush();
+            long flushed = System.nanoTime();
+            readFrame();
+            decodeStart = System.nanoTime();
+            TarantoolRequestEvent event = pending[pendingHead];
+            event.writeNanos += flushed - start;
+            event.waitNanos = decodeStart - flushed;
+            event.bytesRead = FRAME_PREFIX_SIZE + frameSize;
+            responseRead = true;
+        }
         unpackHeader(batch);
-        return unpacker.unpackMapHeader();
+        int bodySize = unpacker.unpackMapHeader();
+        if (responseCode == (Util.CODE_ERROR | Util.ER_WRONG_SCHEMA_VERSION)) {
+            // other connections reload schema as well, not only after a response with newer schema id
+            schemaCache.invalidate();
+            throw new TarantoolSchemaException(unpackError(bodySize));
+        }
+        return bodySize;
+    }
+
+    private String unpackError(int bodySize) throws IOException {
+        String error = null;
+        for (int i = 0; i < bodySize; i++) {
+            if (unpacker.unpackInt() == Util.KEY_ERROR) {
+                error = unpacker.unpackString();
+            } else {
+                unpacker.skipValue();
+            }
+        }
+        return error == null ? "Error code " + (responseCode & ~Util.CODE_ERROR) : error;
+    }
+
+    private void readFrame() throws IOException {
+        if (last instanceof AbstractResult) {
+            // strings and binaries of the current row are kept in the frame which is about to be overwritten
+            ((AbstractResult) last).detach();
+        }
+        frameSize = readFrameSize(transport, prefix);
+        byte[] buffer = frame;
+        if (frameSize > buffer.length) {
+            buffer = new byte[Math.max(frameSize, Math.min(buffer.length * 2, MAX_RETAINED_FRAME))];
+            if (buffer.length <= MAX_RETAINED_FRAME) {
+                frame = buffer;
+            }
+        }
+        transport.readFully(buffer, 0, frameSize);
+        received = buffer;
+        frameInput.reset(buffer, 0, frameSize);
+        unpacker.reset(frameInput);
     }
 
     @Override
@@ -242,28 +563,15 @@ public class TarantoolClientImpl implements TarantoolClient {
     }
 
     private void finishQueryWithArguments() {
+        long start = listener != null ? System.nanoTime() : 0L;
         try {
-            writeQuery();
-            finishQuery();
+            encoder.finishQueryWithArguments(transport);
         } catch (IOException e) {
-            throw new TarantoolException(e);
+            throw broken(e);
         }
-    }
-
-    private void writeQuery() throws IOException {
-        packer.packInt(currentQueryToQueryCode(currentQuery));
-        packer.packArrayHeader(querySize);
-        if (querySize > 0) {
-            List<MessageBuffer> bufferList = queryPacker.toBufferList();
-            for (int i = 0; i < bufferList.size(); i++) {
-                MessageBuffer messageBuffer = bufferList.get(i);
-                // See MessageBufferPackerBenchmark in tarantool-benchmarks
-                packer.addPayload(messageBuffer.array(), messageBuffer.arrayOffset(), messageBuffer.size());
-            }
-            queryPacker.clear();
+        if (listener != null) {
+            requestWritten(start);
         }
-        currentQuery = 0;
-        querySize = 0;
     }
 
     @Override
@@ -275,102 +583,56 @@ public class TarantoolClientImpl implements TarantoolClient {
         batchSize = 0;
     }
 
-    @Override
-    public void eval(String expression) {
-        preActionCheck();
-        currentQuery = EVAL;
-        try {
-            writeCode(Util.CODE_EVAL);
-            packer.packMapHeader(2);
-            packer.packInt(Util.KEY_EXPRESSION);
-            packer.packString(expression);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
+    private void checkLastResult() {
+        if (last != null && last.hasNext()) {
+            throw new TarantoolException(NOT_CLOSED_RESULT);
         }
     }
 
     @Override
-    public void select(int space, int index, int limit, int offset, Iter iterator) {
-        selectInternal(6, space, limit, offset, iterator);
-
-        try {
-            packer.packInt(Util.KEY_INDEX);
-            packer.packInt(index);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+    public void eval(String expression) {
+        checkLastResult();
+        encoder.eval(expression);
     }
 
     @Override
-    public void selectAll(int space, int limit, int offset) {
-        selectInternal(5, space, limit, offset, Iter.ALL);
+    public void call(String function) {
+        checkLastResult();
+        encoder.call(function);
     }
 
-    private void selectInternal(int headSize, int space, int limit, int offset, Iter iterator) {
-        preActionCheck();
-        currentQuery = SELECT;
-        try {
-            writeCode(Util.CODE_SELECT);
-            if (offset == 0) {
-                headSize--;
-            }
-            if (iterator == Iter.EQ) {
-                headSize--;
-            }
-
-            packer.packMapHeader(headSize);
-            packer.packInt(Util.KEY_SPACE);
-            packer.packInt(space);
+    @Override
+    public void call(TarantoolFunction function) {
+        checkLastResult();
+        encoder.call(function);
+    }
 
-            if (iterator != Iter.EQ) {
-                packer.packInt(Util.KEY_ITERATOR);
-                packer.packInt(iterator.getValue());
-            }
-            packer.packInt(Util.KEY_LIMIT);
-            packer.packInt(limit);
-            if (offset != 0) {
-                packer.packInt(Util.KEY_OFFSET);
-                packer.packInt(offset);
-            }
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+    @Override
+    public void select(int space, int index, int limit, int offset, Iter iterator) {
+        checkLastResult();
+        encoder.select(space, index, limit, offset, iterator);
     }
 
-    private void finishQuery() throws IOException {
-        packer.flush();
-        List<MessageBuffer> bufferList = packer.toBufferList();
-        writeSize(bufferList);
-        for (int i = 0; i < bufferList.size(); i++) {
-            MessageBuffer messageBuffer = bufferList.get(i);
-            // See MessageBufferPackerBenchmark in tarantool-benchmarks
-            out.write(messageBuffer.array(), messageBuffer.arrayOffset(), messageBuffer.size());
-        }
-        packer.clear();
+    @Override
+    public void selectByLong(int space, int index, long key) {
+        checkLastResult();
+        encoder.selectByLong(space, index, key);
     }
 
-    private void writeCode(int code) throws IOException {
-        if (last != null && last.hasNext()) {
-            throw new TarantoolException(NOT_CLOSED_RESULT);
-        }
-        packer.packMapHeader(2);
-        packer.packInt(Util.KEY_CODE);
-        packer.packInt(code);
-        packer.packInt(Util.KEY_SYNC);
-        packer.packInt(++counter);
+    @Override
+    public void selectByLongs(int space, int index, long key1, long key2) {
+        checkLastResult();
+        encoder.selectByLongs(space, index, key1, key2);
     }
 
-    private void writeSize(List<MessageBuffer> bufferList) throws IOException {
-        out.writeByte(MessagePack.Code.UINT32);
-        int size = 0;
-        for (int i = 0; i < bufferList.size(); i++) {
-            MessageBuffer messageBuffer = bufferList.get(i);
-            size += messageBuffer.size();
-        }
-        out.writeInt(size);
+    @Override
+    public void selectAll(int space, int limit, int offset) {
+        checkLastResult();
+        encoder.selectAll(space, limit, offset);
     }
 
     private void unpackHeader(boolean batch) throws IOException {
+        responseCode = 0;
         int headerSize = unpacker.unpackMapHeader();
         for (int i = 0; i < headerSize; i++) {
             byte key = unpacker.unpackByte();
@@ -383,335 +645,235 @@ public class TarantoolClientImpl implements TarantoolClient {
                 } else if (sync != counter) {
                     throw new TarantoolException("Expected sync = " + counter + " and came " + sync);
                 }
+            } else if (key == Util.KEY_SCHEMA_ID) {
+                schemaId = unpacker.unpackLong();
+            } else if (key == Util.KEY_CODE) {
+                responseCode = unpacker.unpackInt();
             } else {
                 unpacker.unpackInt();
             }
         }
     }
 
-    private String parseGreeting() throws IOException {
-        byte[] bytes = new byte[64];
-        unpacker.readPayload(bytes);
-        String greeting = new String(bytes, StandardCharsets.US_ASCII);
-        String[] parts = greeting.split(" ");
-        if (parts.length < 2 || !"Tarantool".equals(parts[0])) {
-            throw new TarantoolException("Unexpected greeting " + greeting);
-        }
-        return parts[1];
-    }
-
     private String connect(@Nullable String login, @Nullable String password) throws IOException {
-        String version = parseGreeting();
-        final byte[] salt = new byte[44];
-        unpacker.readPayload(salt);
-        unpacker.readPayload(ByteBuffer.allocate(20));// unused
+        byte[] greeting = new byte[GREETING_SIZE];
+        transport.readFully(greeting, 0, GREETING_SIZE);
+        String version = parseGreeting(greeting);
+        byte[] salt = parseSalt(greeting);
         if (login != null && password != null) {
-            writeCode(Util.CODE_AUTH);
-            packer.packMapHeader(2);
-            packer.packInt(Util.KEY_USER_NAME);
-            packer.packString(login);
-            packer.packInt(Util.KEY_TUPLE);
-            packer.packArrayHeader(2);
-            packer.packString("chap-sha1");
-            packer.packBinaryHeader(20);
-            packer.addPayload(scramble(password, salt));
-            finishQuery();
-            int bodySize = flushAndGetResultSize(false);
-            if (bodySize == 1) {
-                byte bodyKey = unpacker.unpackByte();
-                if (bodyKey == Util.KEY_ERROR) {
-                    throw new TarantoolAuthException(unpacker.unpackString());
-                } else {
-                    throw new TarantoolException("Unknown body Key " + bodyKey);
-                }
-            }
-            if (bodySize > 1) {
-                throw new TarantoolException("Body size " + bodySize + " for auth");
-            }
+            encoder.auth(login, password, salt);
+            encoder.finishQuery(transport);
+            unpackAuthResult(unpacker, flushAndGetResultSize(false));
         }
         return version;
     }
 
     @Override
     public boolean isClosed() {
-        return socket.isClosed();
+        return transport.isClosed();
     }
 
     @Override
     public void close() {
-        try {
-            socket.close();
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        transport.close();
     }
 
     @Override
     public void insert(int space) {
-        insertOrReplace(Util.CODE_INSERT, space);
+        checkLastResult();
+        encoder.insert(space);
     }
 
     @Override
     public void replace(int space) {
-        insertOrReplace(Util.CODE_REPLACE, space);
-    }
-
-    private void insertOrReplace(int code, int space) {
-        preActionCheck();
-        currentQuery = INSERT;
-        try {
-            writeCode(code);
-            packer.packMapHeader(2);
-            packer.packInt(Util.KEY_SPACE);
-            packer.packInt(space);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        checkLastResult();
+        encoder.replace(space);
     }
 
-    private void preActionCheck() {
-        if (currentQuery != 0) {
-            throw new TarantoolException(PRE_ACTION_EXCEPTION);
-        }
+    @Override
+    public void delete(int space, int index) {
+        checkLastResult();
+        encoder.delete(space, index);
     }
 
     @Override
-    public void delete(int space, int index) {
-        preActionCheck();
-        currentQuery = DELETE;
-        try {
-            writeCode(Util.CODE_DELETE);
-            packer.packMapHeader(3);
-            packer.packInt(Util.KEY_SPACE);
-            packer.packInt(space);
-            packer.packInt(Util.KEY_INDEX);
-            packer.packInt(index);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+    public void deleteByLong(int space, int index, long key) {
+        checkLastResult();
+        encoder.deleteByLong(space, index, key);
     }
 
     @Override
     public void ping() {
+        checkLastResult();
         try {
-            writeCode(Util.CODE_PING);
-            finishQuery();
+            long start = listener != null ? System.nanoTime() : 0L;
+            encoder.ping();
+            encoder.finishQuery(transport);
+            if (listener != null) {
+                requestWritten(start);
+            }
 
             int bodySize = flushAndGetResultSize(false);
+            responded(0, bodySize != 0);
             if (bodySize != 0) {
                 throw new TarantoolException(bodySize + " body size came from ping");
             }
         } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
-    }
-
-    private void preSetCheck() {
-        if (currentQuery == 0) {
-            throw new TarantoolException(PRE_SET_EXCEPTION);
+            throw broken(e);
+        } catch (RuntimeException e) {
+            // e.g. response with unexpected sync
+            responded(0, true);
+            throw e;
         }
     }
 
     @Override
     public void setNull() {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packNil();
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.setNull();
     }
 
     @Override
     public void setBytes(byte[] bytes) {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packBinaryHeader(bytes.length);
-            queryPacker.writePayload(bytes);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.setBytes(bytes);
+    }
+
+    @Override
+    public void setRawTuple(ByteBuffer tuple) {
+        encoder.setRawTuple(tuple);
     }
 
     @Override
     public void setLong(long val) {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packLong(val);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.setLong(val);
     }
 
     @Override
     public void setBoolean(boolean val) {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packBoolean(val);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.setBoolean(val);
     }
 
     @Override
     public void setDouble(double val) {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packDouble(val);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
-
+        encoder.setDouble(val);
     }
 
     @Override
     public void setFloat(float val) {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packFloat(val);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.setFloat(val);
     }
 
     @Override
     public void setInt(int val) {
-        preSetCheck();
-        try {
-            querySize++;
-            queryPacker.packInt(val);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
-
+        encoder.setInt(val);
     }
 
     @Override
     public void setString(@Nullable String val) {
-        preSetCheck();
-        try {
-            querySize++;
-            if (val == null) {
-                queryPacker.packNil();
-            } else {
-                queryPacker.packString(val);
-            }
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.setString(val);
     }
 
     @Override
     public void update(int space, int index) {
-        preActionCheck();
-        currentQuery = UPDATE_KEY;
-        try {
-            writeCode(Util.CODE_UPDATE);
-            packer.packMapHeader(4);
-            packer.packInt(Util.KEY_SPACE);
-            packer.packInt(space);
-            packer.packInt(Util.KEY_INDEX);
-            packer.packInt(index);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        checkLastResult();
+        encoder.update(space, index);
     }
 
     @Override
-    public void upsert(int space) {
-        preActionCheck();
-        currentQuery = UPSERT_TUPLE;
-        try {
-            writeCode(Util.CODE_UPSERT);
-            packer.packMapHeader(3);
-            packer.packInt(Util.KEY_SPACE);
-            packer.packInt(space);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+    public void updateByLong(int space, int index, long key) {
+        checkLastResult();
+        encoder.updateByLong(space, index, key);
     }
 
-    private void preChange(String op, int field) throws IOException {
-        if (currentQuery == UPDATE_KEY) {
-            writeQuery();
-            currentQuery = UPDATE_TUPLE;
-        } else if (currentQuery == UPSERT_TUPLE) {
-            writeQuery();
-            currentQuery = UPSERT_OPS;
-        } else if (currentQuery != UPDATE_TUPLE && currentQuery != UPSERT_OPS) {
-            throw new TarantoolException(PRE_CHANGE_EXCEPTION);
-        }
-        querySize++;
-        queryPacker.packArrayHeader(3);
-        queryPacker.packString(op);
-        queryPacker.packInt(field);
+    @Override
+    public void upsert(int space) {
+        checkLastResult();
+        encoder.upsert(space);
     }
 
     @Override
     public void change(IntOp op, int field, int arg) {
-        try {
-            preChange(op.getVal(), field);
-            queryPacker.packInt(arg);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.change(op, field, arg);
     }
 
     @Override
     public void change(IntOp op, int field, long arg) {
-        try {
-            preChange(op.getVal(), field);
-            queryPacker.packLong(arg);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.change(op, field, arg);
     }
 
     @Override
     public void change(Op op, int field, @Nullable String arg) {
-        try {
-            preChange(op.getVal(), field);
-            if (arg == null) {
-                queryPacker.packNil();
-            } else {
-                queryPacker.packString(arg);
-            }
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.change(op, field, arg);
     }
 
     @Override
     public void change(Op op, int field, byte[] bytes) {
-        try {
-            preChange(op.getVal(), field);
-            queryPacker.packBinaryHeader(bytes.length);
-            queryPacker.writePayload(bytes);
-        } catch (IOException e) {
-            throw new TarantoolException(e);
-        }
+        encoder.change(op, field, bytes);
     }
 
     @Override
     public void sql(String sqlQuery) {
-        preActionCheck();
-        currentQuery = SQL;
+        checkLastResult();
+        encoder.sql(sqlQuery);
+    }
+
+    @Override
+    public void preparedSql(String sqlQuery) {
+        checkLastResult();
+        Long statementId = statements.get(sqlQuery);
+        // preparing needs a round trip, so it is not done while batch responses are not read yet
+        if (statementId == null && prepareSupported && statementCacheSize > 0 && batchSize == 0) {
+            statementId = prepare(sqlQuery);
+        }
+        if (statementId == null) {
+            encoder.sql(sqlQuery);
+        } else {
+            encoder.sqlPrepared(statementId);
+        }
+    }
 
+    @Nullable
+    private Long prepare(String sqlQuery) {
         try {
-            writeCode(Util.CODE_EXECUTE);
-            packer.packMapHeader(2);
-            packer.packInt(Util.KEY_SQL_TEXT);
-            packer.packString(sqlQuery);
+            if (statements.size() >= statementCacheSize) {
+                unprepareEldest();
+            }
+            long start = listener != null ? System.nanoTime() : 0L;
+            encoder.prepare(sqlQuery);
+            int bodySize = writeAndGetResultSize(start);
+            long statementId = unpackPrepareResult(unpacker, bodySize);
+            responded(0, statementId < 0);
+            if (statementId < 0) {
+                // query is sent as text then and server reports the error if it is not a transient one
+                return null;
+            }
+            Long result = statementId;
+            statements.put(sqlQuery, result);
+            return result;
         } catch (IOException e) {
-            throw new TarantoolException(e);
+            throw broken(e);
+        } catch (RuntimeException e) {
+            responded(0, true);
+            throw e;
         }
+    }
+
+    private void unprepareEldest() throws IOException {
+        Iterator<Long> eldest = statements.values().iterator();
+        long statementId = eldest.next();
+        eldest.remove();
+        long start = listener != null ? System.nanoTime() : 0L;
+        encoder.unprepare(statementId);
+        int bodySize = writeAndGetResultSize(start);
+        // statement may be already gone, that is not an error worth throwing
+        responded(0, unpackUnprepareResult(unpacker, bodySize));
+    }
 
+    private int writeAndGetResultSize(long start) throws IOException {
+        encoder.finishQuery(transport);
+        if (listener != null) {
+            requestWritten(start);
+        }
+        return flushAndGetResultSize(false);
     }
 
     @Override
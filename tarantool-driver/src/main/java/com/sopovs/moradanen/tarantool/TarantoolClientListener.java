@@ -0,0 +1,13 @@
+package com.sopovs.moradanen.tarantool;
+
+/**
+ * Notified by {@link TarantoolClientImpl} on the calling thread once response to a request is read. Event is reused
+ * for further requests and should not be retained after the call.
+ *
+ * @see TarantoolClientImpl#setListener(TarantoolClientListener)
+ */
+@FunctionalInterface
+public interface TarantoolClientListener {
+
+    void onResponse(TarantoolRequestEvent event);
+}
@@ -0,0 +1,343 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client source over instances of a replica set, each with own {@link TarantoolPooledClientSource}. Roles of instances
+ * are discovered with {@code box.info.ro} on creation and then periodically in background: {@link #getClient()}
+ * returns client of the writable instance, while {@link #getReadClient()} returns client of one of read-only replicas,
+ * so that reads do not load the master. Replica is chosen from two random ones by fewer connections in use, which
+ * follows the one answering faster without keeping latency statistics.
+ * <p>
+ * Roles are probed over own short-lived connections with a timeout, not over the pools. When the master can't be
+ * connected or is unknown the call fails at once and roles are discovered again in background, at most one discovery
+ * at a time, so that a promoted replica is used after failover. Instances that can't be connected are not used until
+ * the next discovery. Pool of an instance is created by the first discovery that reaches it, so that the source starts
+ * while some instances are down.
+ */
+public class TarantoolClusterClientSource implements TarantoolClientSource {
+    static final String NO_MASTER = "No writable instance";
+    static final String NO_INSTANCE = "No available instance";
+    static final String RO_EXPRESSION = "return {box.info.ro}";
+    static final int DEFAULT_PROBE_TIMEOUT = 1000;
+    private final Instance[] instances;
+    private final TarantoolPoolConfig poolConfig;
+    private final int probeTimeout;
+    private final ScheduledExecutorService discovery;
+    private final AtomicBoolean discoveryScheduled = new AtomicBoolean();
+    // serializes discoveries in background with refresh()
+    private final Object discoveryLock = new Object();
+    private volatile Roles roles = new Roles(null, new Instance[0]);
+    private volatile boolean closed;
+
+    /**
+     * @param instances       connection settings of every instance of the replica set
+     * @param poolConfig      settings of the pool of connections to each instance
+     * @param refreshInterval milliseconds between discoveries of roles in background, 0 means only on failures and
+     *                        {@link #refresh()}
+     */
+    public TarantoolClusterClientSource(List<TarantoolConfig> instances, TarantoolPoolConfig poolConfig,
+                                        long refreshInterval) {
+        this(instances, poolConfig, refreshInterval, DEFAULT_PROBE_TIMEOUT);
+    }
+
+    /**
+     * @param instances       connection settings of every instance of the replica set
+     * @param poolConfig      settings of the pool of connections to each instance
+     * @param refreshInterval milliseconds between discoveries of roles in background, 0 means only on failures and
+     *                        {@link #refresh()}
+     * @param probeTimeout    milliseconds to connect an instance and to wait for its role before it is considered
+     *                        unavailable
+     */
+    public TarantoolClusterClientSource(List<TarantoolConfig> instances, TarantoolPoolConfig poolConfig,
+                                        long refreshInterval, int probeTimeout) {
+        if (instances.isEmpty()) {
+            throw new IllegalArgumentException("instances can't be empty");
+        }
+        if (refreshInterval < 0) {
+            throw new IllegalArgumentException("refreshInterval can't be negative");
+        }
+        if (probeTimeout <= 0) {
+            throw new IllegalArgumentException("probeTimeout should be positive");
+        }
+        this.poolConfig = poolConfig;
+        this.probeTimeout = probeTimeout;
+        this.instances = new Instance[instances.size()];
+        for (int i = 0; i < this.instances.length; i++) {
+            this.instances[i] = new Instance(instances.get(i));
+        }
+        discover();
+        discovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tarantool-cluster-discovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (refreshInterval > 0) {
+            discovery.scheduleWithFixedDelay(this::scheduleDiscovery, refreshInterval, refreshInterval,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public TarantoolClusterClientSource(List<TarantoolConfig> instances, int poolSize) {
+        this(instances, new TarantoolPoolConfig(poolSize), 1000L);
+    }
+
+    /**
+     * @return client of the writable instance
+     */
+    @Override
+    public TarantoolClient getClient() {
+        checkClosed();
+        Instance master = roles.master;
+        if (master == null) {
+            scheduleDiscovery();
+            throw new TarantoolException(NO_MASTER);
+        }
+        try {
+            return master.pool.getClient();
+        } catch (TarantoolException e) {
+            scheduleDiscovery();
+            throw e;
+        }
+    }
+
+    /**
+     * @return client of a read-only replica or of the master if there are no available replicas
+     */
+    public TarantoolClient getReadClient() {
+        checkClosed();
+        Instance instance = chooseReadInstance(roles);
+        if (instance == null) {
+            scheduleDiscovery();
+            throw new TarantoolException(NO_INSTANCE);
+        }
+        try {
+            return instance.pool.getClient();
+        } catch (TarantoolException e) {
+            scheduleDiscovery();
+            throw e;
+        }
+    }
+
+    /**
+     * @return source of {@link #getReadClient()}, for example to build {@link TarantoolTemplate} used only for reads,
+     * closing it does nothing
+     */
+    public TarantoolClientSource getReadSource() {
+        return new TarantoolClientSource() {
+            @Override
+            public TarantoolClient getClient() {
+                return getReadClient();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Nullable
+    private static Instance chooseReadInstance(Roles roles) {
+        Instance[] replicas = roles.replicas;
+        if (replicas.length == 0) {
+            return roles.master;
+        }
+        if (replicas.length == 1) {
+            return replicas[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(replicas.length);
+        int second = random.nextInt(replicas.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        return replicas[second].pool.getActiveConnections() < replicas[first].pool.getActiveConnections()
+                ? replicas[second] : replicas[first];
+    }
+
+    /**
+     * Discovers roles of instances now, for example after the master failed with an established connection.
+     */
+    public void refresh() {
+        discover();
+    }
+
+    // callers keep using the last known roles while the discovery runs
+    private void scheduleDiscovery() {
+        if (closed || !discoveryScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            discovery.execute(() -> {
+                discoveryScheduled.set(false);
+                discover();
+            });
+        } catch (RejectedExecutionException e) {
+            // closed concurrently
+            discoveryScheduled.set(false);
+        }
+    }
+
+    private void discover() {
+        synchronized (discoveryLock) {
+            if (closed) {
+                return;
+            }
+            Instance master = null;
+            List<Instance> replicas = new ArrayList<>(instances.length);
+            for (Instance instance : instances) {
+                Boolean readOnly = readOnly(instance.config);
+                if (readOnly == null || !createPool(instance)) {
+                    continue;
+                }
+                if (readOnly) {
+                    replicas.add(instance);
+                } else if (master == null) {
+                    master = instance;
+                }
+            }
+            roles = new Roles(master, replicas.toArray(new Instance[0]));
+        }
+    }
+
+    private boolean createPool(Instance instance) {
+        if (instance.pool == null) {
+            try {
+                instance.pool = new TarantoolPooledClientSource(instance.config, poolConfig);
+            } catch (TarantoolException e) {
+                // e.g. prefill failed after the probe, pool is created again by the next discovery
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private Boolean readOnly(TarantoolConfig config) {
+        Socket socket = new Socket();
+        TarantoolTransport transport;
+        try {
+            InetSocketAddress address = config.getHost() == null
+                    ? new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getPort())
+                    : new InetSocketAddress(config.getHost(), config.getPort());
+            socket.connect(address, probeTimeout);
+            socket.setSoTimeout(probeTimeout);
+            transport = new SocketTransport(socket);
+        } catch (IOException | TarantoolException e) {
+            closeQuietly(socket);
+            return null;
+        }
+        try (TarantoolClient client = new TarantoolClientImpl(transport, config.getUsername(), config.getPassword());
+             Result result = client.evalFully(RO_EXPRESSION)) {
+            if (!result.next()) {
+                throw new TarantoolException("No result of " + RO_EXPRESSION);
+            }
+            return result.getBoolean(0);
+        } catch (TarantoolException e) {
+            return null;
+        } finally {
+            closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing to do with a probe connection that failed anyway
+        }
+    }
+
+    /**
+     * @return config of the writable instance as of the last discovery, null if there is none
+     */
+    @Nullable
+    public TarantoolConfig getMaster() {
+        Instance master = roles.master;
+        return master == null ? null : master.config;
+    }
+
+    /**
+     * @return configs of read-only instances as of the last discovery
+     */
+    public List<TarantoolConfig> getReplicas() {
+        Instance[] replicas = roles.replicas;
+        List<TarantoolConfig> result = new ArrayList<>(replicas.length);
+        for (Instance replica : replicas) {
+            result.add(replica.config);
+        }
+        return result;
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            throw new TarantoolException(TarantoolPooledClientSource.POOL_CLOSED);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (discoveryLock) {
+            closed = true;
+        }
+        discovery.shutdown();
+        closePools();
+    }
+
+    private void closePools() {
+        TarantoolException closeException = null;
+        for (Instance instance : instances) {
+            if (instance.pool == null) {
+                continue;
+            }
+            try {
+                instance.pool.close();
+            } catch (TarantoolException e) {
+                if (closeException == null) {
+                    closeException = e;
+                } else {
+                    closeException.addSuppressed(e);
+                }
+            }
+        }
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+
+    private static final class Instance {
+        private final TarantoolConfig config;
+        // set once under discoveryLock and published with roles, null until the instance is reached
+        private TarantoolPooledClientSource pool;
+
+        Instance(TarantoolConfig config) {
+            this.config = config;
+        }
+    }
+
+    // roles of instances as of one discovery
+    private static final class Roles {
+        @Nullable
+        private final Instance master;
+        private final Instance[] replicas;
+
+        Roles(@Nullable Instance master, Instance[] replicas) {
+            this.master = master;
+            this.replicas = replicas;
+        }
+    }
+}
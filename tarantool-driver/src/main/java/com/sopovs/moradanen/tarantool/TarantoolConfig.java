@@ -11,12 +11,22 @@ public class TarantoolConfig {
     @Nullable
     // TODO char[] ?
     private final String password;
+    private final boolean nio;
 
     public TarantoolConfig(@Nullable String host, int port, @Nullable String username, @Nullable String password) {
+        this(host, port, username, password, false);
+    }
+
+    /**
+     * @param nio use {@link SocketChannelTransport} instead of plain socket streams
+     */
+    public TarantoolConfig(@Nullable String host, int port, @Nullable String username, @Nullable String password,
+                           boolean nio) {
         this.host = host;
         this.port = port;
         this.username = username;
         this.password = password;
+        this.nio = nio;
     }
 
     @Nullable
@@ -37,4 +47,8 @@ public class TarantoolConfig {
     String getPassword() {
         return password;
     }
+
+    public boolean isNio() {
+        return nio;
+    }
 }
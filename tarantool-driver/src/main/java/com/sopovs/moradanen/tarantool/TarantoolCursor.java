@@ -0,0 +1,342 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Iter;
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.Util;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads all tuples of a space in the order of a tree index page by page, every next page is selected with
+ * {@link Iter#GT} from the key of the last tuple of the previous one. Client is taken from the source only to select
+ * a page and is given back before the page is read, so that a long scan neither holds a connection nor keeps the
+ * whole space in memory. Optionally the next page is selected in background with the given executor while the current
+ * one is read. With {@link TarantoolAsyncClient} the next page is always requested on the same connection as soon as
+ * the current one is taken, so that its round trip overlaps with reading the current page.
+ * <p>
+ * Index should be unique, otherwise tuples with the same key as the last tuple of a page would be skipped, so
+ * uniqueness of a secondary index is checked in {@code _vindex} with the first page.
+ * <p>
+ * Not thread-safe, rows are read with getters the same way as from {@link Result}.
+ *
+ * @see TarantoolTemplate#cursor(int, int)
+ */
+public final class TarantoolCursor implements Closeable {
+    private static final int[] PRIMARY_KEY = {0};
+    private static final Value UNIQUE = ValueFactory.newString("unique");
+    private final int space;
+    private final int index;
+    private final int[] keyFields;
+    private final int pageSize;
+    private final boolean prefetch;
+    // selects page after the given key or the first one for null, set by public constructors as it refers to this
+    private Function<byte[], CompletableFuture<Page>> pages;
+    @Nullable
+    private Page page;
+    @Nullable
+    private CompletableFuture<Page> nextPage;
+    private boolean closed;
+
+    /**
+     * Cursor over a space by its primary index with key in the first field.
+     */
+    public TarantoolCursor(TarantoolClientSource source, int space, int pageSize) {
+        this(source, space, 0, PRIMARY_KEY, pageSize, null);
+    }
+
+    /**
+     * @param index            unique tree index, the first page fails for a non-unique one
+     * @param keyFields        zero based numbers of fields that make up the index key in the order of its parts
+     * @param pageSize         number of tuples selected at once
+     * @param prefetchExecutor executor to select the next page with while the current one is read, null to select
+     *                         pages only when they are needed
+     */
+    public TarantoolCursor(TarantoolClientSource source, int space, int index, int[] keyFields, int pageSize,
+                           @Nullable Executor prefetchExecutor) {
+        this(space, index, keyFields, pageSize, prefetchExecutor != null);
+        this.pages = prefetchExecutor == null
+                ? after -> CompletableFuture.completedFuture(selectPage(source, after))
+                : after -> CompletableFuture.supplyAsync(() -> selectPage(source, after), prefetchExecutor);
+    }
+
+    /**
+     * Cursor reading pages with pipelined requests of the given client, pages are copied on its reader thread.
+     *
+     * @param index     unique tree index, the first page fails for a non-unique one
+     * @param keyFields zero based numbers of fields that make up the index key in the order of its parts
+     * @param pageSize  number of tuples selected at once
+     */
+    public TarantoolCursor(TarantoolAsyncClient client, int space, int index, int[] keyFields, int pageSize) {
+        this(space, index, keyFields, pageSize, true);
+        this.pages = after -> {
+            if (after != null || index == 0) {
+                return client.execute(query -> select(query, after)).thenApply(this::copy);
+            }
+            // index is checked with the request pipelined before the first page, without a round trip of its own
+            CompletableFuture<Void> unique = client.execute(this::selectIndex).thenAccept(this::checkUnique);
+            return client.execute(query -> select(query, null)).thenApply(this::copy)
+                    .thenCombine(unique, (page, ignored) -> page);
+        };
+    }
+
+    private TarantoolCursor(int space, int index, int[] keyFields, int pageSize, boolean prefetch) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize should be positive");
+        }
+        if (keyFields.length == 0) {
+            throw new IllegalArgumentException("keyFields can't be empty");
+        }
+        this.space = space;
+        this.index = index;
+        this.keyFields = keyFields.clone();
+        this.pageSize = pageSize;
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * Moves to the next tuple selecting next page when the current one is read.
+     *
+     * @return false if there are no more tuples in the space
+     */
+    public boolean next() {
+        if (closed) {
+            throw new TarantoolException("Cursor is closed");
+        }
+        Page current = page;
+        if (current == null) {
+            current = page = select(null);
+        }
+        while (!current.result.next()) {
+            if (current.lastKey == null) {
+                return false;
+            }
+            current = page = select(current.lastKey);
+        }
+        return true;
+    }
+
+    private Page select(@Nullable byte[] after) {
+        CompletableFuture<Page> prefetched = nextPage;
+        nextPage = null;
+        Page selected = join(prefetched == null ? pages.apply(after) : prefetched);
+        byte[] lastKey = selected.lastKey;
+        if (prefetch && lastKey != null) {
+            nextPage = pages.apply(lastKey);
+        }
+        return selected;
+    }
+
+    private static Page join(CompletableFuture<Page> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof TarantoolException) {
+                throw (TarantoolException) e.getCause();
+            }
+            throw new TarantoolException(e.getCause());
+        }
+    }
+
+    private void select(TarantoolQuery query, @Nullable byte[] after) {
+        // one tuple more than the page tells if there is a next page without selecting an empty one after the last
+        int limit = pageSize == Integer.MAX_VALUE ? pageSize : pageSize + 1;
+        if (after == null) {
+            query.select(space, index, limit, 0, Iter.ALL);
+        } else {
+            query.select(space, index, limit, 0, Iter.GT);
+            QueryEncoder.setValues(query, after);
+        }
+    }
+
+    private void selectIndex(TarantoolQuery query) {
+        query.select(Util.SPACE_VINDEX, 0, 1, 0, Iter.EQ);
+        query.setInt(space);
+        query.setInt(index);
+    }
+
+    private void checkUnique(Result indexes) {
+        try (Result ignored = indexes) {
+            AbstractResult result = (AbstractResult) indexes;
+            if (!result.next()) {
+                throw new TarantoolException("No index " + index + " in space " + space);
+            }
+            Value options = result.currentSize() > 4 ? result.getValue(4) : null;
+            Value unique = options != null && options.isMapValue() ? options.asMapValue().map().get(UNIQUE) : null;
+            if (unique != null && unique.isBooleanValue() && !unique.asBooleanValue().getBoolean()) {
+                throw new TarantoolException("Cursor needs unique index, but index " + index + " in space " + space
+                        + " is not unique");
+            }
+        }
+    }
+
+    private Page selectPage(TarantoolClientSource source, @Nullable byte[] after) {
+        try (TarantoolClient client = source.getClient()) {
+            if (after == null && index != 0) {
+                selectIndex(client);
+                checkUnique(client.execute());
+            }
+            select(client, after);
+            // the page is copied out of the client frame, so that client is given back before the page is read
+            return copy(client.execute());
+        }
+    }
+
+    private Page copy(Result result) {
+        try (MessageBufferPacker tuples = MessagePack.newDefaultBufferPacker()) {
+            int size = Math.min(result.getSize(), pageSize);
+            tuples.packArrayHeader(size);
+            byte[] tuple = null;
+            // tuples are copied as they are without decoding them
+            for (int i = 0; i < size && result.next(); i++) {
+                ByteBuffer raw = result.rawTuple();
+                tuple = new byte[raw.remaining()];
+                raw.get(tuple);
+                tuples.writePayload(tuple);
+            }
+            byte[] lastKey = result.getSize() > pageSize ? key(tuple) : null;
+            result.close();
+            byte[] data = tuples.toByteArray();
+            return new Page(new ArrayResult(MessagePack.newDefaultUnpacker(data), data, data.length), lastKey);
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    private byte[] key(byte[] tuple) throws IOException {
+        try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(tuple)) {
+            int fields = unpacker.unpackArrayHeader();
+            int[] offsets = new int[fields + 1];
+            for (int i = 0; i < fields; i++) {
+                offsets[i] = (int) unpacker.getTotalReadBytes();
+                unpacker.skipValue();
+            }
+            offsets[fields] = (int) unpacker.getTotalReadBytes();
+            ByteArrayOutputStream key = new ByteArrayOutputStream();
+            for (int field : keyFields) {
+                if (field >= fields) {
+                    throw new TarantoolException("Tuple has no key field " + field);
+                }
+                key.write(tuple, offsets[field], offsets[field + 1] - offsets[field]);
+            }
+            return key.toByteArray();
+        }
+    }
+
+    private Result current() {
+        Page current = page;
+        if (current == null) {
+            throw new TarantoolException("next() was not called on cursor");
+        }
+        return current.result;
+    }
+
+    public boolean isNull(int index) {
+        return current().isNull(index);
+    }
+
+    public boolean getBoolean(int index) {
+        return current().getBoolean(index);
+    }
+
+    public double getDouble(int index) {
+        return current().getDouble(index);
+    }
+
+    public float getFloat(int index) {
+        return current().getFloat(index);
+    }
+
+    public long getLong(int index) {
+        return current().getLong(index);
+    }
+
+    public int getInt(int index) {
+        return current().getInt(index);
+    }
+
+    @Nullable
+    public String getString(int index) {
+        return current().getString(index);
+    }
+
+    public byte[] getBytes(int index) {
+        return current().getBytes(index);
+    }
+
+    public ByteBuffer getByteBuffer(int index) {
+        return current().getByteBuffer(index);
+    }
+
+    public int currentSize() {
+        return current().currentSize();
+    }
+
+    /**
+     * @return lazily populated stream of mapped tuples, closing it closes the cursor
+     */
+    public <T> Stream<T> stream(TarantoolTemplate.ResultRowMapper<T> mapper) {
+        Iterator<T> iterator = new Iterator<T>() {
+            private boolean moved;
+            private boolean hasNext;
+
+            @Override
+            public boolean hasNext() {
+                if (!moved) {
+                    hasNext = TarantoolCursor.this.next();
+                    moved = true;
+                }
+                return hasNext;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                moved = false;
+                return mapper.map(current());
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        // page being prefetched gives its client back by itself and is dropped
+        closed = true;
+        page = null;
+        nextPage = null;
+    }
+
+    private static final class Page {
+        private final Result result;
+        // key to select the next page after, null for the last page
+        @Nullable
+        private final byte[] lastKey;
+
+        Page(Result result, @Nullable byte[] lastKey) {
+            this.result = result;
+            this.lastKey = lastKey;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.Util;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+
+import java.io.IOException;
+
+/**
+ * Stored function to be called with {@link TarantoolQuery#call(TarantoolFunction)}. Function name is encoded once on
+ * creation, so only arguments are encoded per call. Instances are immutable and may be shared between clients and
+ * threads.
+ *
+ * @see TarantoolClient#prepareCall(String)
+ */
+public final class TarantoolFunction {
+    private final String name;
+    // KEY_FUNCTION and the name packed as a part of request body map
+    private final byte[] encoded;
+
+    public TarantoolFunction(String name) {
+        this.name = name;
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            packer.packInt(Util.KEY_FUNCTION);
+            packer.packString(name);
+            encoded = packer.toByteArray();
+        } catch (IOException e) {
+            throw new TarantoolException(e);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    byte[] getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public String toString() {
+        return "TarantoolFunction{" + name + '}';
+    }
+}
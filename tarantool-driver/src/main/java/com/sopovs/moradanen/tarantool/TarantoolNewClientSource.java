@@ -4,6 +4,7 @@ public class TarantoolNewClientSource implements TarantoolClientSource {
 
     private final String host;
     private final int port;
+    private final TarantoolSchemaCache schemaCache = new TarantoolSchemaCache();
 
     public TarantoolNewClientSource(String host, int port) {
         this.host = host;
@@ -12,7 +13,9 @@ public class TarantoolNewClientSource implements TarantoolClientSource {
 
     @Override
     public TarantoolClient getClient() {
-        return new TarantoolClientImpl(host, port);
+        TarantoolClientImpl client = new TarantoolClientImpl(host, port);
+        client.setSchemaCache(schemaCache);
+        return client;
     }
 
     @Override
@@ -0,0 +1,123 @@
+package com.sopovs.moradanen.tarantool;
+
+import java.util.Objects;
+
+public class TarantoolPoolConfig {
+    private final int size;
+    private long acquireTimeout;
+    private int minIdle;
+    private long maxIdleTime;
+    private long maxLifetime;
+    private long validationInterval;
+    private long maintenanceInterval = 1000L;
+    private TarantoolPoolMetrics metrics = TarantoolPoolMetrics.NO_OP;
+
+    /**
+     * @param size maximum number of connections in the pool
+     */
+    public TarantoolPoolConfig(int size) {
+        this.size = checkNotNegative(size, "size");
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    /**
+     * @param acquireTimeout milliseconds to wait for a free connection in {@link TarantoolPooledClientSource#getClient()},
+     *                       0 means waiting indefinitely
+     */
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = checkNotNegative(acquireTimeout, "acquireTimeout");
+    }
+
+    public int getMinIdle() {
+        return minIdle;
+    }
+
+    /**
+     * @param minIdle number of connections opened on pool creation and kept open when idle, capped by size
+     */
+    public void setMinIdle(int minIdle) {
+        this.minIdle = checkNotNegative(minIdle, "minIdle");
+    }
+
+    public long getMaxIdleTime() {
+        return maxIdleTime;
+    }
+
+    /**
+     * @param maxIdleTime milliseconds after which unused connections above minIdle are closed, 0 means never
+     */
+    public void setMaxIdleTime(long maxIdleTime) {
+        this.maxIdleTime = checkNotNegative(maxIdleTime, "maxIdleTime");
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * @param maxLifetime milliseconds after which connection is closed once it is not used, 0 means never
+     */
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = checkNotNegative(maxLifetime, "maxLifetime");
+    }
+
+    public long getValidationInterval() {
+        return validationInterval;
+    }
+
+    /**
+     * @param validationInterval milliseconds of connection being unused after which it is checked with ping,
+     *                           0 means never
+     */
+    public void setValidationInterval(long validationInterval) {
+        this.validationInterval = checkNotNegative(validationInterval, "validationInterval");
+    }
+
+    public long getMaintenanceInterval() {
+        return maintenanceInterval;
+    }
+
+    /**
+     * @param maintenanceInterval milliseconds between runs of background task evicting, validating and opening idle
+     *                            connections
+     */
+    public void setMaintenanceInterval(long maintenanceInterval) {
+        if (maintenanceInterval <= 0) {
+            throw new IllegalArgumentException("maintenanceInterval should be positive");
+        }
+        this.maintenanceInterval = maintenanceInterval;
+    }
+
+    public TarantoolPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(TarantoolPoolMetrics metrics) {
+        this.metrics = Objects.requireNonNull(metrics);
+    }
+
+    boolean isMaintained() {
+        return minIdle > 0 || maxIdleTime > 0 || maxLifetime > 0 || validationInterval > 0;
+    }
+
+    private static long checkNotNegative(long value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " can't be negative");
+        }
+        return value;
+    }
+
+    private static int checkNotNegative(int value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " can't be negative");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,37 @@
+package com.sopovs.moradanen.tarantool;
+
+/**
+ * Receives events of {@link TarantoolPooledClientSource}. Methods are called on the hot path of borrowing threads
+ * and should be cheap and thread-safe. Connection counts are not pushed, but can be read from the pool given to
+ * {@link #register(TarantoolPooledClientSource)}.
+ */
+public interface TarantoolPoolMetrics {
+
+    TarantoolPoolMetrics NO_OP = new TarantoolPoolMetrics() {
+    };
+
+    /**
+     * Called once the pool is created.
+     */
+    default void register(TarantoolPooledClientSource pool) {
+    }
+
+    /**
+     * @param nanos time spent in {@link TarantoolPooledClientSource#getClient()} including waiting for a free
+     *              connection and opening a new one
+     */
+    default void acquired(long nanos) {
+    }
+
+    default void acquireTimedOut() {
+    }
+
+    default void creationFailed() {
+    }
+
+    /**
+     * Connection was closed after an exception instead of being returned to the pool.
+     */
+    default void discarded() {
+    }
+}
@@ -2,29 +2,79 @@ package com.sopovs.moradanen.tarantool;
 
 import com.sopovs.moradanen.tarantool.core.*;
 
-import java.util.ArrayDeque;
-import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
-//TODO lazy clients creation and closing clients that are stale for too long
 public class TarantoolPooledClientSource implements TarantoolClientSource {
 
     static final String CONNECTION_CLOSED = "Connection already closed";
     static final String POOL_CLOSED = "Pool is closed";
-
-    private boolean poolClosed = false;
-    private final ArrayDeque<TarantoolClient> pool;
+    static final String ACQUIRE_TIMEOUT = "Timed out waiting for a free connection";
+
+    private volatile boolean poolClosed = false;
+    // one permit per connection that may be handed out, fair to serve waiters in order
+    private final Semaphore permits;
+    // most recently released clients first, may contain stale entries of clients borrowed in another way
+    private final ConcurrentLinkedDeque<PooledClient> idle = new ConcurrentLinkedDeque<>();
+    private final ThreadLocal<PooledClient> lastReleased = new ThreadLocal<>();
+    private final AtomicInteger currentSize = new AtomicInteger();
     private final int size;
-    private int currentSize;
+    private final long acquireTimeout;
+    private final int minIdle;
+    // in nanoseconds, 0 means disabled
+    private final long maxIdleTime;
+    private final long maxLifetime;
+    private final long validationInterval;
     private final TarantoolConfig config;
     private final Function<TarantoolConfig, TarantoolClient> clientFactory;
+    private final TarantoolPoolMetrics metrics;
+    private final TarantoolSchemaCache schemaCache = new TarantoolSchemaCache();
+    private final boolean timed;
+    @Nullable
+    private final ScheduledExecutorService maintenance;
 
     public TarantoolPooledClientSource(TarantoolConfig config, Function<TarantoolConfig, TarantoolClient> clientFactory,
-                                       int size) {
+                                       TarantoolPoolConfig poolConfig) {
         this.config = config;
         this.clientFactory = clientFactory;
-        this.size = size;
-        this.pool = new ArrayDeque<>(size);
+        this.size = poolConfig.getSize();
+        this.acquireTimeout = poolConfig.getAcquireTimeout();
+        this.minIdle = Math.min(poolConfig.getMinIdle(), size);
+        this.maxIdleTime = TimeUnit.MILLISECONDS.toNanos(poolConfig.getMaxIdleTime());
+        this.maxLifetime = TimeUnit.MILLISECONDS.toNanos(poolConfig.getMaxLifetime());
+        this.validationInterval = TimeUnit.MILLISECONDS.toNanos(poolConfig.getValidationInterval());
+        this.permits = new Semaphore(size, true);
+        this.metrics = poolConfig.getMetrics();
+        this.timed = metrics != TarantoolPoolMetrics.NO_OP;
+        prefill();
+        if (poolConfig.isMaintained()) {
+            maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "tarantool-pool-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = poolConfig.getMaintenanceInterval();
+            maintenance.scheduleWithFixedDelay(this::maintain, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            maintenance = null;
+        }
+        metrics.register(this);
+    }
+
+    public TarantoolPooledClientSource(TarantoolConfig config, Function<TarantoolConfig, TarantoolClient> clientFactory,
+                                       int size) {
+        this(config, clientFactory, new TarantoolPoolConfig(size));
+    }
+
+    public TarantoolPooledClientSource(TarantoolConfig config, TarantoolPoolConfig poolConfig) {
+        this(config, TarantoolClientImpl::new, poolConfig);
     }
 
     public TarantoolPooledClientSource(TarantoolConfig config, int size) {
@@ -42,57 +92,317 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
 
     @Override
     public TarantoolClient getClient() {
-        synchronized (pool) {
-            while (!poolClosed) {
-                TarantoolClient client = pool.pollFirst();
-                if (client != null) {
-                    return new TarantoolClientProxy(client);
+        if (poolClosed) {
+            throw new TarantoolException(POOL_CLOSED);
+        }
+        long start = timed ? System.nanoTime() : 0L;
+        acquirePermit();
+        if (poolClosed) {
+            // let the next waiter find out that pool is closed as well
+            permits.release();
+            throw new TarantoolException(POOL_CLOSED);
+        }
+        try {
+            PooledClient client = borrow();
+            if (timed) {
+                metrics.acquired(System.nanoTime() - start);
+            }
+            return new TarantoolClientProxy(client);
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void acquirePermit() {
+        try {
+            if (acquireTimeout == 0L) {
+                permits.acquire();
+            } else if (!permits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+                metrics.acquireTimedOut();
+                throw new TarantoolException(ACQUIRE_TIMEOUT + " for " + acquireTimeout + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TarantoolException("Interrupted while waiting for a free connection");
+        }
+    }
+
+    private PooledClient borrow() {
+        PooledClient client = lastReleased.get();
+        if (client != null && client.tryBorrow()) {
+            // usually is on top as it was just released by this thread
+            idle.removeFirstOccurrence(client);
+            return client;
+        }
+        while (true) {
+            client = idle.pollFirst();
+            if (client != null) {
+                if (client.tryBorrow()) {
+                    return client;
                 }
-                if (currentSize < size) {
-                    currentSize++;
+                // stale entry of a client already borrowed by its last thread
+                continue;
+            }
+            int current = currentSize.get();
+            if (current < size) {
+                if (currentSize.compareAndSet(current, current + 1)) {
                     try {
-                        return new TarantoolClientProxy(clientFactory.apply(config));
-                    } catch (TarantoolException creationException) {
-                        currentSize--;
+                        return new PooledClient(newClient());
+                    } catch (RuntimeException creationException) {
+                        currentSize.decrementAndGet();
+                        metrics.creationFailed();
                         throw creationException;
                     }
                 }
-                try {
-                    pool.wait();
-                } catch (InterruptedException e) {
-                    throw new TarantoolException("Interrupted while waiting for a free connection");
+            } else {
+                // permit guarantees that some client is being returned right now
+                Thread.yield();
+            }
+        }
+    }
+
+    private void prefill() {
+        try {
+            for (int i = 0; i < minIdle; i++) {
+                PooledClient client = new PooledClient(createClient());
+                currentSize.incrementAndGet();
+                client.giveBack();
+                idle.addLast(client);
+            }
+        } catch (RuntimeException e) {
+            try {
+                closeIdle();
+            } catch (TarantoolException closeException) {
+                e.addSuppressed(closeException);
+            }
+            throw e;
+        }
+    }
+
+    private void maintain() {
+        try {
+            long now = System.nanoTime();
+            for (PooledClient client : idle) {
+                if (poolClosed) {
+                    return;
+                }
+                if (!isExpired(client, now) && !isIdleTooLong(client, now) && !needsValidation(client, now)) {
+                    continue;
+                }
+                // claim a permit so that borrowers wait on semaphore rather than spin while it is checked
+                if (!permits.tryAcquire()) {
+                    // every connection is in use, nothing to maintain
+                    return;
+                }
+                if (!client.tryBorrow()) {
+                    permits.release();
+                    continue;
                 }
+                idle.removeFirstOccurrence(client);
+                maintain(client, now);
+            }
+            fillMinIdle();
+        } catch (RuntimeException e) {
+            // must not cancel further runs, problems are seen by borrowers anyway
+        }
+    }
+
+    private void maintain(PooledClient client, long now) {
+        // claimed client is not counted as idle anymore
+        boolean evict = isExpired(client, now)
+                || maxIdleTime != 0L && now - client.lastUsed > maxIdleTime && idleCount() >= minIdle;
+        if (!evict && needsValidation(client, now)) {
+            try {
+                client.client.ping();
+                client.lastValidated = System.nanoTime();
+            } catch (TarantoolException e) {
+                evict = true;
             }
         }
-        throw new TarantoolException(POOL_CLOSED);
+        if (evict) {
+            try {
+                client.client.close();
+            } catch (TarantoolException e) {
+                // already broken
+            } finally {
+                discard(client);
+            }
+        } else {
+            client.giveBack();
+            // keeps its place among least recently used
+            idle.addLast(client);
+            if (poolClosed) {
+                closeIdle();
+            }
+            permits.release();
+        }
+    }
+
+    private void fillMinIdle() {
+        while (!poolClosed && idleCount() < minIdle && currentSize.get() < size) {
+            // opened before taking size, so that borrowers never wait for it
+            TarantoolClient client = createClient();
+            if (!reserveSize()) {
+                client.close();
+                return;
+            }
+            PooledClient pooledClient = new PooledClient(client);
+            pooledClient.giveBack();
+            idle.addLast(pooledClient);
+            if (poolClosed) {
+                closeIdle();
+            }
+        }
+    }
+
+    private TarantoolClient createClient() {
+        try {
+            return newClient();
+        } catch (RuntimeException e) {
+            metrics.creationFailed();
+            throw e;
+        }
+    }
+
+    private TarantoolClient newClient() {
+        TarantoolClient client = clientFactory.apply(config);
+        if (client instanceof TarantoolClientImpl) {
+            ((TarantoolClientImpl) client).setSchemaCache(schemaCache);
+        }
+        return client;
+    }
+
+    private boolean reserveSize() {
+        while (true) {
+            int current = currentSize.get();
+            if (current >= size) {
+                return false;
+            }
+            if (currentSize.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private int idleCount() {
+        return currentSize.get() - (size - permits.availablePermits());
+    }
+
+    public int getTotalConnections() {
+        return currentSize.get();
+    }
+
+    /**
+     * Approximate as connections being opened or checked in background are counted as active.
+     */
+    public int getActiveConnections() {
+        return Math.max(0, Math.min(size - permits.availablePermits(), currentSize.get()));
+    }
+
+    public int getIdleConnections() {
+        return Math.max(0, Math.min(idleCount(), currentSize.get()));
+    }
+
+    public int getPendingThreads() {
+        return permits.getQueueLength();
+    }
+
+    private boolean isExpired(PooledClient client, long now) {
+        return maxLifetime != 0L && now - client.createdAt > maxLifetime;
+    }
+
+    private boolean isIdleTooLong(PooledClient client, long now) {
+        return maxIdleTime != 0L && now - client.lastUsed > maxIdleTime && idleCount() > minIdle;
+    }
+
+    private boolean needsValidation(PooledClient client, long now) {
+        return validationInterval != 0L && now - client.lastValidated > validationInterval;
+    }
+
+    private void release(PooledClient client) {
+        long now = System.nanoTime();
+        if (isExpired(client, now)) {
+            try {
+                client.client.close();
+            } finally {
+                discard(client);
+            }
+            return;
+        }
+        client.lastUsed = now;
+        client.lastValidated = now;
+        client.giveBack();
+        lastReleased.set(client);
+        idle.addFirst(client);
+        if (poolClosed) {
+            closeIdle();
+        }
+        permits.release();
+    }
+
+    private void discard(PooledClient client) {
+        // stays borrowed forever, so that its stale entries are never handed out again
+        currentSize.decrementAndGet();
+        permits.release();
     }
 
     @Override
     public void close() {
-        synchronized (pool) {
-            poolClosed = true;
-            TarantoolException poolCloseException = null;
-            for (Iterator<TarantoolClient> iterator = pool.iterator(); iterator.hasNext(); ) {
-                TarantoolClient client = iterator.next();
-                try {
-                    client.close();
-                } catch (TarantoolException e) {
-                    if (poolCloseException == null) {
-                        poolCloseException = new TarantoolException("Problem closing pooled client(s)");
-                    }
-                    poolCloseException.addSuppressed(e);
-                }
-                iterator.remove();
+        poolClosed = true;
+        if (maintenance != null) {
+            maintenance.shutdown();
+        }
+        // waiters pass it on to each other after finding pool closed
+        permits.release();
+        closeIdle();
+    }
+
+    private void closeIdle() {
+        TarantoolException poolCloseException = null;
+        PooledClient client;
+        while ((client = idle.pollFirst()) != null) {
+            if (!client.tryBorrow()) {
+                continue;
             }
-            pool.notifyAll();
-            if (poolCloseException != null) {
-                throw poolCloseException;
+            currentSize.decrementAndGet();
+            try {
+                client.client.close();
+            } catch (TarantoolException e) {
+                if (poolCloseException == null) {
+                    poolCloseException = new TarantoolException("Problem closing pooled client(s)");
+                }
+                poolCloseException.addSuppressed(e);
             }
         }
+        if (poolCloseException != null) {
+            throw poolCloseException;
+        }
+    }
 
+    private static final class PooledClient {
+        private final TarantoolClient client;
+        private final AtomicBoolean borrowed = new AtomicBoolean(true);
+        private final long createdAt = System.nanoTime();
+        private volatile long lastUsed = createdAt;
+        // successful requests prove connection to be alive as well as ping
+        private volatile long lastValidated = createdAt;
+
+        PooledClient(TarantoolClient client) {
+            this.client = client;
+        }
+
+        boolean tryBorrow() {
+            return !borrowed.get() && borrowed.compareAndSet(false, true);
+        }
+
+        void giveBack() {
+            borrowed.set(false);
+        }
     }
 
     private final class TarantoolClientProxy implements TarantoolClient {
+        private final PooledClient pooledClient;
         private final TarantoolClient client;
         private boolean closed = false;
         @Nullable
@@ -105,31 +415,27 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
 
         @Override
         public void close() {
-            synchronized (pool) {
-                if (closed) {
-                    return;
-                }
-                closed = true;
-                if (poolClosed) {
-                    client.close();
-                } else {
-                    if (lastResult != null && lastResult.hasNext()) {
-                        lastResult.close();
-                        lastResult = null;
-                    }
-                    pool.add(client);
-                    pool.notify();
-                }
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (lastResult != null && lastResult.hasNext()) {
+                lastResult.close();
             }
+            lastResult = null;
+            // the next borrower doesn't expect its requests to be checked against schema version
+            client.setSchemaVersion(0L);
+            release(pooledClient);
         }
 
         private TarantoolException closeOnException(TarantoolException e) {
-            synchronized (pool) {
-                closed = true;
-                assert currentSize > 0;
-                currentSize--;
-                pool.notify();
+            if (e instanceof TarantoolSchemaException || e instanceof TarantoolBatchException) {
+                // error responses are read by then, so the connection is still usable
+                return e;
             }
+            closed = true;
+            discard(pooledClient);
+            metrics.discarded();
             try {
                 client.close();
             } catch (TarantoolException closeException) {
@@ -138,8 +444,9 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             return e;
         }
 
-        TarantoolClientProxy(TarantoolClient client) {
-            this.client = client;
+        TarantoolClientProxy(PooledClient pooledClient) {
+            this.pooledClient = pooledClient;
+            this.client = pooledClient.client;
         }
 
         @Override
@@ -192,6 +499,26 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             }
         }
 
+        @Override
+        public void selectByLong(int space, int index, long key) {
+            checkClosed();
+            try {
+                client.selectByLong(space, index, key);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
+        @Override
+        public void selectByLongs(int space, int index, long key1, long key2) {
+            checkClosed();
+            try {
+                client.selectByLongs(space, index, key1, key2);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         @Override
         public void selectAll(int space, int limit, int offset) {
             checkClosed();
@@ -212,6 +539,63 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             }
         }
 
+        @Override
+        public int space(String space) {
+            if (!(client instanceof TarantoolClientImpl)) {
+                return TarantoolClient.super.space(space);
+            }
+            checkClosed();
+            int result;
+            try {
+                result = ((TarantoolClientImpl) client).findSpace(space);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+            // absent space is not a reason to discard the connection
+            if (result < 0) {
+                throw new TarantoolException(Util.noSuchSpace(space));
+            }
+            return result;
+        }
+
+        @Override
+        public int index(int space, String index) {
+            if (!(client instanceof TarantoolClientImpl)) {
+                return TarantoolClient.super.index(space, index);
+            }
+            checkClosed();
+            int result;
+            try {
+                result = ((TarantoolClientImpl) client).findIndex(space, index);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+            if (result < 0) {
+                throw new TarantoolException(Util.noSuchIndex(space, index));
+            }
+            return result;
+        }
+
+        @Override
+        public void call(String function) {
+            checkClosed();
+            try {
+                client.call(function);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
+        @Override
+        public void call(TarantoolFunction function) {
+            checkClosed();
+            try {
+                client.call(function);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         @Override
         public void insert(int space) {
             checkClosed();
@@ -242,6 +626,16 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             }
         }
 
+        @Override
+        public void deleteByLong(int space, int index, long key) {
+            checkClosed();
+            try {
+                client.deleteByLong(space, index, key);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         @Override
         public void update(int space, int index) {
             checkClosed();
@@ -252,6 +646,16 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             }
         }
 
+        @Override
+        public void updateByLong(int space, int index, long key) {
+            checkClosed();
+            try {
+                client.updateByLong(space, index, key);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         @Override
         public void upsert(int space) {
             checkClosed();
@@ -314,6 +718,16 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             }
         }
 
+        @Override
+        public void preparedSql(String sqlQuery) {
+            checkClosed();
+            try {
+                client.preparedSql(sqlQuery);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         @Override
         public int executeUpdate() {
             checkClosed();
@@ -376,6 +790,7 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
 
         @Override
         public void setDouble(double val) {
+            checkClosed();
             try {
                 client.setDouble(val);
             } catch (TarantoolException e) {
@@ -413,6 +828,16 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             }
         }
 
+        @Override
+        public void setRawTuple(ByteBuffer tuple) {
+            checkClosed();
+            try {
+                client.setRawTuple(tuple);
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         @Override
         public String getVersion() {
             checkClosed();
@@ -431,6 +856,22 @@ public class TarantoolPooledClientSource implements TarantoolClientSource {
             return client.getNetworkTimeout();
         }
 
+        @Override
+        public void setSchemaVersion(long schemaVersion) {
+            checkClosed();
+            client.setSchemaVersion(schemaVersion);
+        }
+
+        @Override
+        public long getSchemaVersion() {
+            checkClosed();
+            try {
+                return client.getSchemaVersion();
+            } catch (TarantoolException e) {
+                throw closeOnException(e);
+            }
+        }
+
         private void checkClosed() {
             if (closed) {
                 throw new TarantoolException(CONNECTION_CLOSED);
@@ -0,0 +1,127 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.IntOp;
+import com.sopovs.moradanen.tarantool.core.Iter;
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.Op;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Request building part of the client API - start an action (select/insert/update...) and then set its key or tuple
+ * values one by one.
+ */
+public interface TarantoolQuery {
+
+    void select(int space, int index, int limit, int offset, Iter iterator);
+
+    default void select(int space, int index, int limit, int offset) {
+        select(space, index, limit, offset, Iter.EQ);
+    }
+
+    default void select(int space, int index) {
+        select(space, index, Integer.MAX_VALUE, 0);
+    }
+
+    default void select(int space, int index, int limit) {
+        select(space, index, limit, 0);
+    }
+
+    /**
+     * Same as {@link #select(int, int)} followed by {@link #setLong(long)}, but may encode the whole request at once.
+     * No key values may be set after it.
+     */
+    default void selectByLong(int space, int index, long key) {
+        select(space, index);
+        setLong(key);
+    }
+
+    default void selectByLongs(int space, int index, long key1, long key2) {
+        select(space, index);
+        setLong(key1);
+        setLong(key2);
+    }
+
+    void selectAll(int space, int limit, int offset);
+
+    default void selectAll(int space) {
+        selectAll(space, Integer.MAX_VALUE, 0);
+    }
+
+    default void selectAll(int space, int limit) {
+        selectAll(space, limit, 0);
+    }
+
+    void eval(String expression);
+
+    /**
+     * Calls stored function by name, its arguments are set the same way as tuple values. Requires Tarantool 1.7.2+.
+     */
+    void call(String function);
+
+    void call(TarantoolFunction function);
+
+    void insert(int space);
+
+    void replace(int space);
+
+    void delete(int space, int index);
+
+    void update(int space, int index);
+
+    default void deleteByLong(int space, int index, long key) {
+        delete(space, index);
+        setLong(key);
+    }
+
+    /**
+     * Same as {@link #update(int, int)} followed by {@link #setLong(long)}, operations are added with change after it.
+     */
+    default void updateByLong(int space, int index, long key) {
+        update(space, index);
+        setLong(key);
+    }
+
+    void upsert(int space);
+
+    void change(IntOp op, int field, int arg);
+
+    void change(IntOp op, int field, long arg);
+
+    void change(Op op, int field, @Nullable String arg);
+
+    void change(Op op, int field, byte[] arg);
+
+    void setNull();
+
+    void setBoolean(boolean val);
+
+    void setDouble(double val);
+
+    void setFloat(float val);
+
+    void setInt(int val);
+
+    void setLong(long val);
+
+    void setString(@Nullable String val);
+
+    void setBytes(byte[] bytes);
+
+    /**
+     * Sets all the values of insert/replace tuple at once from msgpack encoded array, for example from
+     * {@link Result#rawTuple()}. Fields are copied into the request as they are without decoding them, so they should
+     * be valid msgpack. Position of the buffer is not changed.
+     */
+    void setRawTuple(ByteBuffer tuple);
+
+    void sql(String sqlQuery);
+
+    /**
+     * Same as {@link #sql(String)} for a query executed many times. Client may prepare it on server once and then
+     * execute by statement id, otherwise query text is sent every time.
+     */
+    default void preparedSql(String sqlQuery) {
+        sql(sqlQuery);
+    }
+}
@@ -0,0 +1,89 @@
+package com.sopovs.moradanen.tarantool;
+
+/**
+ * Single request to Tarantool and its response as seen by {@link TarantoolClientListener}.
+ */
+public final class TarantoolRequestEvent {
+    int code;
+    int space;
+    int sync;
+    int bytesWritten;
+    int bytesRead;
+    int rows;
+    long writeNanos;
+    long waitNanos;
+    long decodeNanos;
+    boolean failed;
+
+    TarantoolRequestEvent() {
+    }
+
+    /**
+     * @return request code, one of {@code Util.CODE_*}
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return space id or -1 if request is not for a single space
+     */
+    public int getSpace() {
+        return space;
+    }
+
+    public int getSync() {
+        return sync;
+    }
+
+    /**
+     * @return request frame size including length prefix
+     */
+    public int getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * @return response frame size including length prefix
+     */
+    public int getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return rows in the result for selects and calls, affected rows for updates
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return time spent writing request to transport and flushing it
+     */
+    public long getWriteNanos() {
+        return writeNanos;
+    }
+
+    /**
+     * @return time from the end of writing until whole response is read, that is network round trip and
+     * server execution time
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * @return time spent parsing response before returning it, tuples in results are decoded while being iterated
+     * and are not accounted
+     */
+    public long getDecodeNanos() {
+        return decodeNanos;
+    }
+
+    /**
+     * @return whether server responded with an error
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+}
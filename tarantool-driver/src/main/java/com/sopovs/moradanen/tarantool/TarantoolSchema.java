@@ -0,0 +1,150 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.util.*;
+
+/**
+ * Snapshot of spaces, their indexes and field formats as seen in {@code _vspace} and {@code _vindex} by the user
+ * of a connection at some schema version.
+ *
+ * @see TarantoolClientImpl#getSchema()
+ */
+public final class TarantoolSchema {
+    private static final Value NAME = ValueFactory.newString("name");
+    private static final Value TYPE = ValueFactory.newString("type");
+
+    private final long schemaId;
+    private final Map<String, Space> spacesByName;
+    private final Map<Integer, Space> spacesById;
+
+    private TarantoolSchema(long schemaId, Map<String, Space> spacesByName, Map<Integer, Space> spacesById) {
+        this.schemaId = schemaId;
+        this.spacesByName = spacesByName;
+        this.spacesById = spacesById;
+    }
+
+    /**
+     * Reads and closes result of {@code _vspace} select.
+     */
+    static Map<Integer, Space> readSpaces(Result spaces) {
+        Map<Integer, Space> spacesById = new HashMap<>();
+        try (Result ignored = spaces) {
+            AbstractResult result = (AbstractResult) spaces;
+            while (result.next()) {
+                List<String> fieldNames = new ArrayList<>();
+                List<String> fieldTypes = new ArrayList<>();
+                Value format = result.currentSize() > 6 ? result.getValue(6) : null;
+                if (format != null && format.isArrayValue()) {
+                    for (Value field : format.asArrayValue()) {
+                        Map<Value, Value> fieldMap = field.asMapValue().map();
+                        fieldNames.add(asString(fieldMap.get(NAME)));
+                        fieldTypes.add(asString(fieldMap.get(TYPE)));
+                    }
+                }
+                Space space = new Space(result.getInt(0), Objects.requireNonNull(result.getString(2)),
+                        fieldNames, fieldTypes);
+                spacesById.put(space.id, space);
+            }
+        }
+        return spacesById;
+    }
+
+    /**
+     * Reads and closes result of {@code _vindex} select.
+     */
+    static TarantoolSchema create(long schemaId, Map<Integer, Space> spacesById, Result indexes) {
+        try (Result ignored = indexes) {
+            while (indexes.next()) {
+                Space space = spacesById.get(indexes.getInt(0));
+                if (space != null) {
+                    space.indexes.put(Objects.requireNonNull(indexes.getString(2)), indexes.getInt(1));
+                }
+            }
+        }
+        Map<String, Space> spacesByName = new HashMap<>();
+        for (Space space : spacesById.values()) {
+            spacesByName.put(space.name, space);
+        }
+        return new TarantoolSchema(schemaId, spacesByName, spacesById);
+    }
+
+    @Nullable
+    private static String asString(@Nullable Value value) {
+        return value != null && value.isStringValue() ? value.asStringValue().asString() : null;
+    }
+
+    public long getSchemaId() {
+        return schemaId;
+    }
+
+    @Nullable
+    public Space getSpace(String name) {
+        return spacesByName.get(name);
+    }
+
+    @Nullable
+    public Space getSpace(int id) {
+        return spacesById.get(id);
+    }
+
+    public Collection<Space> getSpaces() {
+        return Collections.unmodifiableCollection(spacesById.values());
+    }
+
+    public static final class Space {
+        private final int id;
+        private final String name;
+        private final List<String> fieldNames;
+        private final List<String> fieldTypes;
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        Space(int id, String name, List<String> fieldNames, List<String> fieldTypes) {
+            this.id = id;
+            this.name = name;
+            this.fieldNames = Collections.unmodifiableList(fieldNames);
+            this.fieldTypes = Collections.unmodifiableList(fieldTypes);
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return names of fields in space format, empty if space has no format
+         */
+        public List<String> getFieldNames() {
+            return fieldNames;
+        }
+
+        public List<String> getFieldTypes() {
+            return fieldTypes;
+        }
+
+        /**
+         * @return zero based number of the field or -1 if there is no such field in space format
+         */
+        public int getField(String name) {
+            return fieldNames.indexOf(name);
+        }
+
+        public int getIndex(String name) {
+            Integer index = indexes.get(name);
+            if (index == null) {
+                throw new TarantoolException("No such index " + name + " in space " + this.name);
+            }
+            return index;
+        }
+
+        public Set<String> getIndexNames() {
+            return Collections.unmodifiableSet(indexes.keySet());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+
+/**
+ * Holder of the latest {@link TarantoolSchema} shared by connections to the same server, so that it is loaded once
+ * per schema change instead of once per connection. Connections reload it when a response comes with newer schema
+ * id than the cached one.
+ *
+ * @see TarantoolClientImpl#setSchemaCache(TarantoolSchemaCache)
+ */
+public final class TarantoolSchemaCache {
+    @Nullable
+    private volatile TarantoolSchema schema;
+
+    @Nullable
+    public TarantoolSchema getSchema() {
+        return schema;
+    }
+
+    public void invalidate() {
+        schema = null;
+    }
+
+    void update(TarantoolSchema loaded) {
+        synchronized (this) {
+            TarantoolSchema current = schema;
+            if (current == null || current.getSchemaId() <= loaded.getSchemaId()) {
+                schema = loaded;
+            }
+        }
+    }
+}
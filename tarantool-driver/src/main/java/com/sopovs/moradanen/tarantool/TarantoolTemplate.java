@@ -1,7 +1,14 @@
 package com.sopovs.moradanen.tarantool;
 
+import com.sopovs.moradanen.tarantool.core.Nullable;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class TarantoolTemplate {
 
@@ -34,6 +41,39 @@ public class TarantoolTemplate {
         return selectAll(space, new RowMapperResultExtractor<>(mapper));
     }
 
+    /**
+     * Same as {@link #selectAndMapAll(int, ResultRowMapper)}, but rows are decoded and mapped in parallel in the pool,
+     * so the mapper should be thread safe.
+     *
+     * @see Result#spliterator(ResultRowMapper)
+     */
+    public <T> List<T> selectAndMapAll(int space, ResultRowMapper<T> mapper, ForkJoinPool pool) {
+        return selectAll(space, new RowMapperResultExtractor<>(mapper, pool));
+    }
+
+    /**
+     * @return cursor over the whole space by primary index with key in the first field
+     */
+    public TarantoolCursor cursor(int space, int pageSize) {
+        return new TarantoolCursor(clientSource, space, pageSize);
+    }
+
+    /**
+     * @param index     unique tree index, the first page fails for a non-unique one
+     * @param keyFields zero based numbers of fields that make up the index key in the order of its parts
+     */
+    public TarantoolCursor cursor(int space, int index, int[] keyFields, int pageSize) {
+        return new TarantoolCursor(clientSource, space, index, keyFields, pageSize, null);
+    }
+
+    /**
+     * Same as {@link #selectAndMapAll(int, ResultRowMapper)} for spaces that should not be selected at once, the
+     * returned stream should be closed if it is not read to the end.
+     */
+    public <T> Stream<T> streamAll(int space, int pageSize, ResultRowMapper<T> mapper) {
+        return cursor(space, pageSize).stream(mapper);
+    }
+
     public interface ResultExtractor<T> {
         T extract(Result result);
     }
@@ -44,13 +84,27 @@ public class TarantoolTemplate {
 
     public static class RowMapperResultExtractor<T> implements ResultExtractor<List<T>> {
         private final ResultRowMapper<T> mapper;
+        @Nullable
+        private final ForkJoinPool pool;
 
         public RowMapperResultExtractor(ResultRowMapper<T> mapper) {
+            this(mapper, null);
+        }
+
+        /**
+         * @param pool pool to decode and map rows in parallel in, null to map them on the calling thread
+         */
+        public RowMapperResultExtractor(ResultRowMapper<T> mapper, @Nullable ForkJoinPool pool) {
             this.mapper = mapper;
+            this.pool = pool;
         }
 
         @Override
         public List<T> extract(Result result) {
+            if (pool != null) {
+                Spliterator<T> rows = result.spliterator(mapper);
+                return pool.submit(() -> StreamSupport.stream(rows, true).collect(Collectors.toList())).join();
+            }
             List<T> list = new ArrayList<>(result.getSize());
             while (result.hasNext()) {
                 result.next();
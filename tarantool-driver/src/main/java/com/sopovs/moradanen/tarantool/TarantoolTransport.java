@@ -0,0 +1,34 @@
+package com.sopovs.moradanen.tarantool;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Connection to a single Tarantool instance. Responses are read as raw bytes and parsed by clients from memory,
+ * requests are written as whole frames and sent on {@link #flush()}. One thread may read while another one writes,
+ * but neither reading nor writing is thread-safe by itself.
+ */
+public interface TarantoolTransport extends Closeable {
+
+    /**
+     * Blocks until exactly {@code length} bytes are read, buffering whatever else is available for the next call.
+     */
+    void readFully(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Writes the first {@code length} bytes of frame that already starts with IPROTO length prefix, may keep them
+     * buffered until {@link #flush()}.
+     */
+    void writeFrame(byte[] frame, int length) throws IOException;
+
+    void flush() throws IOException;
+
+    void setTimeout(int milliseconds) throws IOException;
+
+    int getTimeout() throws IOException;
+
+    boolean isClosed();
+
+    @Override
+    void close();
+}
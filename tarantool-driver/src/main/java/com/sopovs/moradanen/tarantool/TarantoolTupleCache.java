@@ -0,0 +1,178 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Iter;
+import com.sopovs.moradanen.tarantool.core.Nullable;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded cache of select results used by {@link CachingTarantoolClientSource}. Results are kept as msgpack encoded
+ * arrays of tuples, so the limit is the number of bytes they take rather than the number of entries, and the least
+ * recently used ones are evicted when it is exceeded. Entries expire after the given time since they were loaded.
+ * Instances are thread-safe and may be shared between client sources.
+ */
+public final class TarantoolTupleCache {
+    // approximate size of entry objects and map node not counting the arrays
+    private static final int ENTRY_OVERHEAD = 96;
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private long bytes;
+    // incremented on every invalidation, so that results loaded before it are not put after it
+    private long invalidations;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param maxBytes maximum total size of cached results, larger ones are not cached at all
+     * @param ttl      time after which cached result is loaded again, 0 means never
+     * @param ttlUnit  unit of ttl
+     */
+    public TarantoolTupleCache(long maxBytes, long ttl, TimeUnit ttlUnit) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes should be positive");
+        }
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl can't be negative");
+        }
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttlUnit.toNanos(ttl);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Drops cached results of selects from the given space. Results being loaded concurrently are not cached.
+     */
+    public synchronized void invalidate(int space) {
+        invalidations++;
+        for (Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, Entry> entry = it.next();
+            if (entry.getKey().space == space) {
+                bytes -= entry.getValue().bytes;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        invalidations++;
+        entries.clear();
+        bytes = 0;
+    }
+
+    @Nullable
+    synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry != null && ttlNanos != 0 && System.nanoTime() - entry.loaded >= ttlNanos) {
+            entries.remove(key);
+            bytes -= entry.bytes;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /**
+     * @param invalidations value of {@link #getInvalidations()} before the result was selected
+     */
+    synchronized void put(Key key, Entry entry, long invalidations) {
+        if (invalidations != this.invalidations || entry.bytes > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entry.bytes;
+        for (Iterator<Entry> it = entries.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+            bytes -= it.next().bytes;
+            it.remove();
+        }
+    }
+
+    static final class Key {
+        private final int space;
+        private final int index;
+        private final Iter iterator;
+        private final int limit;
+        private final int offset;
+        private final byte[] key;
+        private final int hash;
+
+        Key(int space, int index, Iter iterator, int limit, int offset, byte[] key) {
+            this.space = space;
+            this.index = index;
+            this.iterator = iterator;
+            this.limit = limit;
+            this.offset = offset;
+            this.key = key;
+            int hash = space;
+            hash = 31 * hash + index;
+            hash = 31 * hash + iterator.hashCode();
+            hash = 31 * hash + limit;
+            hash = 31 * hash + offset;
+            this.hash = 31 * hash + Arrays.hashCode(key);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return space == other.space && index == other.index && iterator == other.iterator
+                    && limit == other.limit && offset == other.offset && Arrays.equals(key, other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static final class Entry {
+        // array of tuples as it comes in response body
+        final byte[] data;
+        final long loaded = System.nanoTime();
+        final int bytes;
+
+        Entry(Key key, byte[] data) {
+            this.data = data;
+            this.bytes = ENTRY_OVERHEAD + key.key.length + data.length;
+        }
+    }
+}
@@ -1,17 +1,31 @@
 package com.sopovs.moradanen.tarantool;
 
 import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
 import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
 import org.msgpack.core.MessagePack;
 
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class AbstractResultTest {
 
 
     @Test
     void testNextNotCalled() {
-        AbstractResult result = new AbstractResult(MessagePack.newDefaultUnpacker(new byte[0])) {
+        AbstractResult result = new AbstractResult(MessagePack.newDefaultUnpacker(new byte[0]), new byte[0], 0, 0) {
             @Override
             public int getSize() {
                 return 0;
@@ -28,6 +42,240 @@ class AbstractResultTest {
         assertThrows(TarantoolException.class, () -> result.getLong(0));
         assertThrows(TarantoolException.class, () -> result.getFloat(0));
         assertThrows(TarantoolException.class, () -> result.getDouble(0));
+        assertThrows(TarantoolException.class, result::rawTuple);
+    }
+
+    private static Result result(int rows) throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(rows);
+        for (int i = 0; i < rows; i++) {
+            if (i % 10 == 9) {
+                // shorter tuple
+                packer.packArrayHeader(1);
+                packer.packInt(i);
+                continue;
+            }
+            packer.packArrayHeader(4);
+            packer.packInt(i);
+            packer.packString("Foo" + i);
+            packer.packArrayHeader(1);
+            packer.packInt(i);
+            if (i % 10 == 5) {
+                packer.packNil();
+            } else if (i % 2 == 0) {
+                packer.packDouble(i / 2D);
+            } else {
+                packer.packInt(i / 2);
+            }
+        }
+        byte[] data = packer.toByteArray();
+        return new ArrayResult(MessagePack.newDefaultUnpacker(data), data, data.length);
+    }
+
+    private static byte[] packRow(Result result) throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        ((AbstractResult) result).packCurrent(packer);
+        return packer.toByteArray();
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void testRawTuple() throws IOException {
+        Result result = result(20);
+        while (result.next()) {
+            ByteBuffer tuple = result.rawTuple();
+            assertTrue(tuple.isReadOnly());
+            assertEquals(0, tuple.position());
+            assertArrayEquals(packRow(result), toArray(tuple));
+        }
+
+        Result parallel = result(2000);
+        List<byte[]> tuples = StreamSupport.stream(parallel.spliterator(row -> toArray(row.rawTuple())), true)
+                .collect(Collectors.toList());
+        Result sequential = result(2000);
+        for (byte[] tuple : tuples) {
+            assertTrue(sequential.next());
+            assertArrayEquals(toArray(sequential.rawTuple()), tuple);
+        }
+    }
+
+    @Test
+    void testRawTupleCopy() {
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolClient client = new TarantoolClientImpl("localhost", stub.getPort())) {
+            int source = stub.createSpace("source");
+            int target = stub.createSpace("target");
+            for (int i = 0; i < 10; i++) {
+                client.insert(source);
+                client.setInt(i);
+                client.setString("Foo" + i);
+                client.addBatch();
+            }
+            client.executeBatch();
+
+            client.selectAll(source);
+            List<ByteBuffer> tuples = new ArrayList<>();
+            try (Result result = client.execute()) {
+                while (result.next()) {
+                    tuples.add(result.rawTuple());
+                }
+            }
+            // tuples are valid until the next request
+            for (ByteBuffer tuple : tuples) {
+                client.replace(target);
+                client.setRawTuple(tuple);
+                client.addBatch();
+            }
+            client.executeBatch();
+
+            client.selectAll(target);
+            try (Result result = client.execute()) {
+                for (int i = 0; i < 10; i++) {
+                    assertTrue(result.next());
+                    assertEquals(i, result.getInt(0));
+                    assertEquals("Foo" + i, result.getString(1));
+                }
+                assertFalse(result.next());
+            }
+        }
+    }
+
+    @Test
+    void testReadColumns() throws IOException {
+        Result result = result(100);
+        assertTrue(result.next());
+        assertEquals(0, result.getInt(0));
+
+        LongColumn ids = new LongColumn();
+        StringColumn names = new StringColumn();
+        DoubleColumn numbers = new DoubleColumn();
+        assertEquals(99, result.readColumns(new int[]{3, 0, 1}, numbers, ids, names));
+        assertFalse(result.hasNext());
+        assertThrows(TarantoolException.class, () -> result.getInt(0));
+
+        assertEquals(99, ids.size());
+        assertEquals(99, names.size());
+        assertEquals(99, numbers.size());
+        long[] idArray = ids.toArray();
+        for (int row = 0; row < 99; row++) {
+            int i = row + 1;
+            assertEquals(i, ids.get(row));
+            assertEquals(i, idArray[row]);
+            assertFalse(ids.isNull(row));
+            if (i % 10 == 9) {
+                assertTrue(names.isNull(row));
+                assertNull(names.get(row));
+                assertTrue(numbers.isNull(row));
+            } else {
+                assertEquals("Foo" + i, names.get(row));
+                if (i % 10 == 5) {
+                    assertTrue(numbers.isNull(row));
+                    assertTrue(Double.isNaN(numbers.get(row)));
+                } else {
+                    assertFalse(numbers.isNull(row));
+                    assertEquals(i % 2 == 0 ? i / 2D : i / 2, numbers.get(row));
+                }
+            }
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> ids.get(99));
+
+        ids.clear();
+        names.clear();
+        assertEquals(3, result(3).readColumns(new int[]{0, 1}, ids, names));
+        assertEquals(3, ids.size());
+        assertEquals("Foo2", names.get(2));
+        assertFalse(names.isNull(2));
+    }
+
+    @Test
+    void testReadColumnsReusedAfterNull() throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        int rows = Column.INITIAL_CAPACITY * 3;
+        packer.packArrayHeader(rows);
+        packer.packArrayHeader(1).packNil();
+        for (int i = 1; i < rows; i++) {
+            packer.packArrayHeader(1).packInt(i);
+        }
+        byte[] data = packer.toByteArray();
+
+        LongColumn ids = new LongColumn();
+        assertEquals(rows, new ArrayResult(MessagePack.newDefaultUnpacker(data), data, data.length)
+                .readColumns(new int[]{0}, ids));
+        assertTrue(ids.isNull(0));
+        assertFalse(ids.isNull(rows - 1));
+
+        ids.clear();
+        assertEquals(3, result(3).readColumns(new int[]{0}, ids));
+        assertEquals(3, ids.size());
+        assertFalse(ids.isNull(0));
+        assertEquals(2, ids.get(2));
+    }
+
+    @Test
+    void testReadColumnsTypeMismatch() throws IOException {
+        assertEquals("Expected integer, but got string", assertThrows(TarantoolException.class,
+                () -> result(2).readColumns(new int[]{1}, new LongColumn())).getMessage());
+        assertEquals("Expected float, but got array", assertThrows(TarantoolException.class,
+                () -> result(2).readColumns(new int[]{2}, new DoubleColumn())).getMessage());
+        assertEquals("Expected string, but got integer", assertThrows(TarantoolException.class,
+                () -> result(2).readColumns(new int[]{0}, new StringColumn())).getMessage());
+    }
+
+    @Test
+    void testReadColumnsArguments() throws IOException {
+        Result result = result(2);
+        assertThrows(IllegalArgumentException.class, () -> result.readColumns(new int[]{0}));
+        assertThrows(IllegalArgumentException.class, () -> result.readColumns(new int[]{-1}, new LongColumn()));
+        assertThrows(IllegalArgumentException.class,
+                () -> result.readColumns(new int[]{0, 0}, new LongColumn(), new LongColumn()));
+        assertEquals(2, result.readColumns(new int[0]));
+    }
+
+    @Test
+    void testSpliterator() throws IOException {
+        Result result = result(10_000);
+        assertTrue(result.next());
+        Spliterator<String> rows = result.spliterator(row -> row.getInt(0) + (row.currentSize() == 1 ? "" : row.getString(1)));
+        assertFalse(result.hasNext());
+        assertThrows(TarantoolException.class, () -> result.getInt(0));
+        assertEquals(9999, rows.estimateSize());
+
+        List<String> expected = IntStream.range(1, 10_000)
+                .mapToObj(i -> i + (i % 10 == 9 ? "" : "Foo" + i))
+                .collect(Collectors.toList());
+        assertEquals(expected, StreamSupport.stream(rows, true).collect(Collectors.toList()));
     }
 
-}
\ No newline at end of file
+    @Test
+    void testSpliteratorSmall() throws IOException {
+        Spliterator<Integer> rows = result(RowSpliterator.MIN_SPLIT_ROWS).spliterator(row -> row.getInt(0));
+        assertNull(rows.trySplit());
+        assertEquals(RowSpliterator.MIN_SPLIT_ROWS * (RowSpliterator.MIN_SPLIT_ROWS - 1) / 2,
+                StreamSupport.stream(rows, true).mapToInt(Integer::intValue).sum());
+        assertEquals(0, result(0).spliterator(row -> row.getInt(0)).estimateSize());
+    }
+
+    @Test
+    void testParallelRowMapper() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Set<Thread> threads = ConcurrentHashMap.newKeySet();
+            List<Integer> ids = new TarantoolTemplate.RowMapperResultExtractor<>(row -> {
+                threads.add(Thread.currentThread());
+                return row.getInt(0);
+            }, pool).extract(result(10_000));
+            assertEquals(IntStream.range(0, 10_000).boxed().collect(Collectors.toList()), ids);
+            assertFalse(threads.contains(Thread.currentThread()));
+
+            assertThrows(TarantoolException.class, () -> new TarantoolTemplate.RowMapperResultExtractor<>(
+                    row -> row.getString(0), pool).extract(result(10_000)));
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
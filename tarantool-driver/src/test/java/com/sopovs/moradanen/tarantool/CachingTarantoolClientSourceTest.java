@@ -0,0 +1,109 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingTarantoolClientSourceTest {
+
+    private final TarantoolStubServer stub = new TarantoolStubServer();
+    private final int cached = stub.createSpace("cached");
+    private final int notCached = stub.createSpace("notcached");
+    private final TarantoolTupleCache cache = new TarantoolTupleCache(1024 * 1024, 0, TimeUnit.SECONDS);
+    private final CachingTarantoolClientSource source = new CachingTarantoolClientSource(
+            new TarantoolNewClientSource("localhost", stub.getPort()), cache, cached);
+
+    @AfterEach
+    void tearDown() {
+        source.close();
+        stub.close();
+    }
+
+    @Test
+    void testSelect() {
+        stub.insert(cached, 1, "foo", 4.2D, true, null, new byte[]{1, 2});
+        stub.insert(notCached, 1, "bar");
+        try (TarantoolClient client = source.getClient()) {
+            ByteBuffer sent = null;
+            for (int i = 0; i < 3; i++) {
+                client.select(cached, 0);
+                client.setInt(1);
+                Result result = client.execute();
+                assertEquals(1, result.getSize());
+                assertTrue(result.next());
+                assertEquals(1, result.getInt(0));
+                assertEquals("foo", result.getString(1));
+                assertEquals(4.2D, result.getDouble(2));
+                assertTrue(result.getBoolean(3));
+                assertTrue(result.isNull(4));
+                assertArrayEquals(new byte[]{1, 2}, result.getBytes(5));
+                // cached tuple is exactly what the server sent
+                ByteBuffer raw = result.rawTuple();
+                if (sent == null) {
+                    sent = ByteBuffer.allocate(raw.remaining()).put(raw);
+                    sent.flip();
+                } else {
+                    assertEquals(sent, raw);
+                }
+                assertFalse(result.next());
+            }
+            int requests = stub.getRequestCount();
+            client.selectByLong(cached, 0, 1L);
+            assertEquals(1, client.execute().getSize());
+            assertEquals(requests, stub.getRequestCount());
+
+            client.select(notCached, 0);
+            client.setInt(1);
+            Result result = client.execute();
+            result.next();
+            assertEquals("bar", result.getString(1));
+            assertEquals(requests + 1, stub.getRequestCount());
+        }
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(3, cache.getHitCount());
+    }
+
+    @Test
+    void testWriteInvalidates() {
+        try (TarantoolClient client = source.getClient()) {
+            client.selectAll(cached);
+            assertEquals(0, client.execute().getSize());
+
+            client.insert(cached);
+            client.setInt(1);
+            client.setString("foo");
+            client.execute().close();
+            assertEquals(0, cache.getSize());
+
+            client.selectAll(cached);
+            assertEquals(1, client.execute().getSize());
+
+            client.deleteByLong(cached, 0, 1L);
+            client.execute().close();
+            client.selectAll(cached);
+            assertEquals(0, client.execute().getSize());
+        }
+    }
+
+    @Test
+    void testInvalidate() {
+        try (TarantoolClient client = source.getClient()) {
+            client.selectAll(cached);
+            assertEquals(0, client.execute().getSize());
+
+            stub.insert(cached, 1, "foo");
+            client.selectAll(cached);
+            assertEquals(0, client.execute().getSize());
+
+            cache.invalidate(cached);
+            client.selectAll(cached);
+            assertEquals(1, client.execute().getSize());
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CoalescingTarantoolWriterTest {
+
+    private final TarantoolStubServer stub = new TarantoolStubServer();
+    private final int space = stub.createSpace("javatest");
+    private final TarantoolConfig config = new TarantoolConfig("localhost", stub.getPort(), null, null);
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+    }
+
+    private CompletableFuture<Integer> insert(CoalescingTarantoolWriter writer, int id) {
+        return writer.write(query -> {
+            query.insert(space);
+            query.setInt(id);
+            query.setString("FooBar" + id);
+        });
+    }
+
+    @Test
+    void testConcurrentWrites() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (CoalescingTarantoolWriter writer = new CoalescingTarantoolWriter(config, 16, 100,
+                TimeUnit.MICROSECONDS, 64)) {
+            List<CompletableFuture<CompletableFuture<Integer>>> writes = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                int id = i;
+                writes.add(CompletableFuture.supplyAsync(() -> insert(writer, id), executor));
+            }
+            for (CompletableFuture<CompletableFuture<Integer>> write : writes) {
+                assertEquals(1, write.get().get().intValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1000, stub.size(space));
+    }
+
+    @Test
+    void testFailedWrite() {
+        try (CoalescingTarantoolWriter writer = new CoalescingTarantoolWriter(config, 16, 1,
+                TimeUnit.MILLISECONDS, 64)) {
+            CompletableFuture<Integer> first = insert(writer, 1);
+            CompletableFuture<Integer> duplicate = insert(writer, 1);
+            CompletableFuture<Integer> second = insert(writer, 2);
+            assertEquals(1, first.join().intValue());
+            CompletionException e = assertThrows(CompletionException.class, duplicate::join);
+            assertTrue(e.getCause() instanceof TarantoolException);
+            assertEquals(1, second.join().intValue());
+        }
+        assertEquals(2, stub.size(space));
+    }
+
+    @Test
+    void testSentOnClose() throws InterruptedException {
+        CoalescingTarantoolWriter writer = new CoalescingTarantoolWriter(config, 4, 1, TimeUnit.HOURS, 64);
+        List<CompletableFuture<Integer>> writes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            writes.add(insert(writer, i));
+        }
+        Thread.sleep(100);
+        // fewer writes than maxBatchSize are not flushed before maxDelay
+        assertFalse(writes.get(0).isDone());
+        writer.close();
+        for (CompletableFuture<Integer> write : writes) {
+            assertEquals(1, write.join().intValue());
+        }
+        assertEquals(3, stub.size(space));
+        assertTrue(writer.isClosed());
+
+        CompletionException e = assertThrows(CompletionException.class, () -> insert(writer, 3).join());
+        assertEquals(CoalescingTarantoolWriter.WRITER_CLOSED, e.getCause().getMessage());
+    }
+
+    @Test
+    void testCloseTimeout() {
+        stub.withLatency(10, TimeUnit.SECONDS);
+        CoalescingTarantoolWriter writer = new CoalescingTarantoolWriter(config, 16, 0, TimeUnit.MILLISECONDS, 64);
+        CompletableFuture<Integer> write = insert(writer, 1);
+        long start = System.nanoTime();
+        writer.close(100, TimeUnit.MILLISECONDS);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        CompletionException e = assertThrows(CompletionException.class, write::join);
+        assertEquals(CoalescingTarantoolWriter.CLOSE_TIMED_OUT, e.getCause().getMessage());
+        assertTrue(writer.isClosed());
+    }
+
+    @Test
+    void testFlushedByBatchSize() {
+        try (CoalescingTarantoolWriter writer = new CoalescingTarantoolWriter(config, 2, 1, TimeUnit.HOURS, 64)) {
+            CompletableFuture<Integer> first = insert(writer, 1);
+            CompletableFuture<Integer> second = insert(writer, 2);
+            assertEquals(1, first.join().intValue());
+            assertEquals(1, second.join().intValue());
+        }
+    }
+
+    @Test
+    void testWrongArguments() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new CoalescingTarantoolWriter(config, 0, 1, TimeUnit.MILLISECONDS, 64));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CoalescingTarantoolWriter(config, 1, -1, TimeUnit.MILLISECONDS, 64));
+        assertThrows(IllegalArgumentException.class,
+                () -> new CoalescingTarantoolWriter(config, 1, 1, TimeUnit.MILLISECONDS, 0));
+    }
+}
@@ -0,0 +1,124 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyTupleTest {
+
+    @Test
+    void testTypes() throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(9);
+        packer.packNil();
+        packer.packBoolean(true);
+        packer.packInt(42);
+        packer.packLong(Long.MIN_VALUE);
+        packer.packDouble(4.2D);
+        packer.packString("Foo");
+        packer.packBinaryHeader(2);
+        packer.writePayload(new byte[]{1, 2});
+        packer.packArrayHeader(1);
+        packer.packInt(1);
+        packer.packBigInteger(BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE));
+
+        byte[] frame = packer.toByteArray();
+        LazyTuple tuple = new LazyTuple();
+        assertFalse(tuple.isRead());
+        tuple.read(MessagePack.newDefaultUnpacker(frame), frame, 0);
+
+        assertTrue(tuple.isRead());
+        assertEquals(9, tuple.size());
+        assertTrue(tuple.isNull(0));
+        assertNull(tuple.getString(0));
+        assertTrue(tuple.getBoolean(1));
+        assertEquals(42, tuple.getInt(2));
+        assertEquals(42L, tuple.getLong(2));
+        assertEquals(Long.MIN_VALUE, tuple.getLong(3));
+        assertEquals(4.2D, tuple.getDouble(4));
+        assertEquals("Foo", tuple.getString(5));
+        assertArrayEquals(new byte[]{1, 2}, tuple.getBytes(6));
+        assertEquals(ByteBuffer.wrap(new byte[]{1, 2}), tuple.getByteBuffer(6));
+        assertFalse(tuple.isNull(7));
+
+        assertEquals("Expected integer, but got null",
+                assertThrows(TarantoolException.class, () -> tuple.getInt(0)).getMessage());
+        assertEquals("Expected float, but got integer",
+                assertThrows(TarantoolException.class, () -> tuple.getDouble(2)).getMessage());
+        assertEquals("Expected string, but got array",
+                assertThrows(TarantoolException.class, () -> tuple.getString(7)).getMessage());
+        assertEquals("Expected binary, but got string",
+                assertThrows(TarantoolException.class, () -> tuple.getBytes(5)).getMessage());
+        assertThrows(TarantoolException.class, () -> tuple.getInt(3));
+        assertThrows(TarantoolException.class, () -> tuple.getLong(8));
+        assertThrows(IndexOutOfBoundsException.class, () -> tuple.isNull(9));
+    }
+
+    @Test
+    void testPayloadsInFrame() throws IOException {
+        String[] strings = {"", "Foo", repeat('a', 40), repeat('b', 300), repeat('c', 70000)};
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        // payloads are kept as offsets into the frame past this prefix
+        packer.packString("prefix");
+        int frameOffset = packer.toByteArray().length;
+        packer.packArrayHeader(strings.length * 2);
+        for (String string : strings) {
+            packer.packString(string);
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            packer.packBinaryHeader(bytes.length);
+            packer.writePayload(bytes);
+        }
+        byte[] frame = packer.toByteArray();
+
+        LazyTuple tuple = new LazyTuple();
+        tuple.read(MessagePack.newDefaultUnpacker(frame, frameOffset, frame.length - frameOffset), frame,
+                frameOffset);
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals(strings[i], tuple.getString(i * 2));
+            assertArrayEquals(strings[i].getBytes(StandardCharsets.UTF_8), tuple.getBytes(i * 2 + 1));
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    void testReuse() throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packArrayHeader(2);
+        packer.packString("Foo");
+        packer.packString("Bar");
+        packer.packArrayHeader(12);
+        for (int i = 0; i < 12; i++) {
+            packer.packString(new String(new char[100]).replace('\0', (char) ('a' + i)));
+        }
+        packer.packArrayHeader(1);
+        packer.packInt(1);
+        byte[] frame = packer.toByteArray();
+        MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(frame);
+
+        LazyTuple tuple = new LazyTuple();
+        tuple.read(unpacker, frame, 0);
+        assertEquals("Bar", tuple.getString(1));
+        tuple.read(unpacker, frame, 0);
+        assertEquals(12, tuple.size());
+        assertEquals('l', tuple.getString(11).charAt(99));
+        tuple.read(unpacker, frame, 0);
+        assertEquals(1, tuple.size());
+        assertEquals(1, tuple.getInt(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> tuple.getString(1));
+    }
+}
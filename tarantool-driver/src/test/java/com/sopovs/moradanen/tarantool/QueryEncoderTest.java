@@ -0,0 +1,241 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.IntOp;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.Util;
+import org.junit.jupiter.api.Test;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ArrayValue;
+import org.msgpack.value.MapValue;
+import org.msgpack.value.Value;
+import org.msgpack.value.ValueFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryEncoderTest {
+
+    private final FrameCapture transport = new FrameCapture();
+    private final QueryEncoder encoder = new QueryEncoder(() -> 42);
+
+    @Test
+    void testUpdate() throws IOException {
+        encoder.update(512, 0);
+        encoder.setInt(1);
+        encoder.change(IntOp.PLUS, 1, 2);
+        encoder.change(IntOp.MINUS, 2, 3L);
+        encoder.finishQueryWithArguments(transport);
+
+        MapValue body = transport.readBody(Util.CODE_UPDATE);
+        assertEquals(ValueFactory.newInteger(512), get(body, Util.KEY_SPACE));
+        assertEquals(ValueFactory.newArray(ValueFactory.newInteger(1)), get(body, Util.KEY_KEY));
+        assertEquals(ValueFactory.newArray(
+                ValueFactory.newArray(ValueFactory.newString("+"), ValueFactory.newInteger(1),
+                        ValueFactory.newInteger(2)),
+                ValueFactory.newArray(ValueFactory.newString("-"), ValueFactory.newInteger(2),
+                        ValueFactory.newInteger(3))),
+                get(body, Util.KEY_TUPLE));
+        assertTrue(transport.isFullyRead());
+    }
+
+    @Test
+    void testSelectAllAndPing() throws IOException {
+        encoder.selectAll(512);
+        encoder.finishQueryWithArguments(transport);
+        encoder.ping();
+        encoder.finishQuery(transport);
+
+        assertEquals(ValueFactory.emptyArray(), get(transport.readBody(Util.CODE_SELECT), Util.KEY_KEY));
+        transport.readHeader(Util.CODE_PING);
+        assertTrue(transport.isFullyRead());
+    }
+
+    @Test
+    void testLargeTuple() throws IOException {
+        char[] chars = new char[100_000];
+        Arrays.fill(chars, 'a');
+        String large = new String(chars);
+
+        for (int i = 0; i < 2; i++) {
+            encoder.insert(512);
+            for (int j = 0; j < 30; j++) {
+                encoder.setString(large);
+                encoder.setInt(j);
+            }
+            encoder.finishQueryWithArguments(transport);
+        }
+
+        for (int i = 0; i < 2; i++) {
+            ArrayValue tuple = get(transport.readBody(Util.CODE_INSERT), Util.KEY_TUPLE).asArrayValue();
+            assertEquals(60, tuple.size());
+            assertEquals(large, tuple.get(58).asStringValue().asString());
+            assertEquals(ValueFactory.newInteger(29), tuple.get(59));
+        }
+        assertTrue(transport.isFullyRead());
+        // header, body up to the tuple with its array32 header, then str32 and fixint pairs
+        assertEquals(5 + 11 + 30 * (5 + 100_000 + 1), encoder.getFrameSize());
+    }
+
+    @Test
+    void testRawTuple() throws IOException {
+        MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+        packer.packInt(-1);
+        packer.packArrayHeader(3);
+        packer.packInt(1);
+        packer.packString("Foo");
+        packer.packArrayHeader(1);
+        packer.packNil();
+        byte[] packed = packer.toByteArray();
+        ByteBuffer heap = ByteBuffer.wrap(packed);
+        heap.position(1);
+        ByteBuffer direct = ByteBuffer.allocateDirect(packed.length - 1);
+        direct.put(packed, 1, packed.length - 1).flip();
+
+        for (ByteBuffer tuple : Arrays.asList(heap, direct, heap.asReadOnlyBuffer())) {
+            encoder.replace(512);
+            encoder.setRawTuple(tuple);
+            encoder.finishQueryWithArguments(transport);
+        }
+        // array16 header
+        ByteBuffer wide = ByteBuffer.allocate(3 + 20);
+        wide.put(MessagePack.Code.ARRAY16).putShort((short) 20);
+        for (int i = 0; i < 20; i++) {
+            wide.put((byte) i);
+        }
+        wide.flip();
+        encoder.insert(512);
+        encoder.setRawTuple(wide);
+        encoder.finishQueryWithArguments(transport);
+
+        ArrayValue expected = ValueFactory.newArray(ValueFactory.newInteger(1), ValueFactory.newString("Foo"),
+                ValueFactory.newArray(ValueFactory.newNil()));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected, get(transport.readBody(Util.CODE_REPLACE), Util.KEY_TUPLE));
+        }
+        ArrayValue wideTuple = get(transport.readBody(Util.CODE_INSERT), Util.KEY_TUPLE).asArrayValue();
+        assertEquals(20, wideTuple.size());
+        assertEquals(ValueFactory.newInteger(19), wideTuple.get(19));
+        assertTrue(transport.isFullyRead());
+        assertEquals(1, heap.position());
+        assertEquals(0, wide.position());
+    }
+
+    @Test
+    void testRawTupleErrors() {
+        ByteBuffer tuple = ByteBuffer.wrap(new byte[]{(byte) 0x91, 1});
+        assertEquals(TarantoolClientImpl.PRE_RAW_TUPLE_EXCEPTION,
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(tuple)).getMessage());
+
+        encoder.insert(512);
+        encoder.setInt(1);
+        assertEquals(TarantoolClientImpl.PRE_RAW_TUPLE_EXCEPTION,
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(tuple)).getMessage());
+        encoder.clear();
+
+        encoder.select(512, 0);
+        assertEquals(TarantoolClientImpl.PRE_RAW_TUPLE_EXCEPTION,
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(tuple)).getMessage());
+        encoder.clear();
+
+        encoder.insert(512);
+        assertEquals("Expected array, but got map", assertThrows(TarantoolException.class,
+                () -> encoder.setRawTuple(ByteBuffer.wrap(new byte[]{(byte) 0x80}))).getMessage());
+        assertEquals("Raw tuple is empty", assertThrows(TarantoolException.class,
+                () -> encoder.setRawTuple(ByteBuffer.allocate(0))).getMessage());
+    }
+
+    @Test
+    void testTruncatedRawTuple() throws IOException {
+        encoder.insert(512);
+        assertEquals("Raw tuple is truncated: array header takes 3 bytes, but got 2",
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(
+                        ByteBuffer.wrap(new byte[]{MessagePack.Code.ARRAY16, 0}))).getMessage());
+        assertEquals("Raw tuple is truncated: array header takes 5 bytes, but got 1",
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(
+                        ByteBuffer.wrap(new byte[]{MessagePack.Code.ARRAY32}))).getMessage());
+        assertEquals("Raw tuple is truncated: array of 1 fields, but got 0 bytes after the header",
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(
+                        ByteBuffer.wrap(new byte[]{(byte) 0x91}))).getMessage());
+        assertEquals("Raw tuple is truncated: array of 20 fields, but got 2 bytes after the header",
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(
+                        ByteBuffer.wrap(new byte[]{MessagePack.Code.ARRAY16, 0, 20, 1, 2}))).getMessage());
+        assertEquals("Raw tuple is truncated: array of 4294967295 fields, but got 1 bytes after the header",
+                assertThrows(TarantoolException.class, () -> encoder.setRawTuple(ByteBuffer.wrap(new byte[]{
+                        MessagePack.Code.ARRAY32, -1, -1, -1, -1, 1}))).getMessage());
+
+        // empty tuple has nothing after the header
+        encoder.setRawTuple(ByteBuffer.wrap(new byte[]{(byte) 0x90}));
+        encoder.finishQueryWithArguments(transport);
+        assertEquals(ValueFactory.emptyArray(), get(transport.readBody(Util.CODE_INSERT), Util.KEY_TUPLE));
+        assertTrue(transport.isFullyRead());
+    }
+
+    private static Value get(MapValue map, int key) {
+        Value value = map.map().get(ValueFactory.newInteger(key));
+        assertNotNull(value);
+        return value;
+    }
+
+    private static final class FrameCapture implements TarantoolTransport {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private MessageUnpacker unpacker;
+
+        @Override
+        public void writeFrame(byte[] frame, int length) {
+            out.write(frame, 0, length);
+        }
+
+        void readHeader(int code) throws IOException {
+            if (unpacker == null) {
+                unpacker = MessagePack.newDefaultUnpacker(out.toByteArray());
+            }
+            assertEquals(MessagePack.Code.UINT32, unpacker.readPayload(1)[0]);
+            unpacker.readPayload(4);
+            MapValue header = unpacker.unpackValue().asMapValue();
+            assertEquals(ValueFactory.newInteger(code), get(header, Util.KEY_CODE));
+            assertEquals(ValueFactory.newInteger(42), get(header, Util.KEY_SYNC));
+        }
+
+        MapValue readBody(int code) throws IOException {
+            readHeader(code);
+            return unpacker.unpackValue().asMapValue();
+        }
+
+        boolean isFullyRead() throws IOException {
+            return !unpacker.hasNext();
+        }
+
+        @Override
+        public void readFully(byte[] buffer, int offset, int length) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void setTimeout(int milliseconds) {
+        }
+
+        @Override
+        public int getTimeout() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
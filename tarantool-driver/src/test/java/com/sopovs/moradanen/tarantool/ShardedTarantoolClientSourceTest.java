@@ -0,0 +1,176 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.sopovs.moradanen.tarantool.ShardedTarantoolClientSource.BUCKETS_EXPRESSION;
+import static com.sopovs.moradanen.tarantool.ShardedTarantoolClientSource.CALL_EXPRESSION;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedTarantoolClientSourceTest {
+
+    private final TarantoolStubServer storage1 = new TarantoolStubServer()
+            .withEvalResult(BUCKETS_EXPRESSION, 1, 2, 3, 4, 5)
+            .withCallResult("get", "storage1")
+            .withEvalResult(CALL_EXPRESSION, true, "storage1");
+    private final TarantoolStubServer storage2 = new TarantoolStubServer()
+            .withEvalResult(BUCKETS_EXPRESSION, 6, 7, 8, 9)
+            .withCallResult("get", "storage2")
+            .withEvalResult(CALL_EXPRESSION, true, "storage2");
+
+    @AfterEach
+    void tearDown() {
+        storage1.close();
+        storage2.close();
+    }
+
+    private ShardedTarantoolClientSource source() {
+        return new ShardedTarantoolClientSource(Arrays.asList(
+                new TarantoolConfig("localhost", storage1.getPort(), null, null),
+                new TarantoolConfig("localhost", storage2.getPort(), null, null)),
+                10, new TarantoolPoolConfig(2), 0);
+    }
+
+    private static String get(ShardedTarantoolClientSource source, int bucketId) {
+        return source.execute(bucketId, query -> query.call("get"), result -> {
+            assertTrue(result.next());
+            return result.getString(0);
+        });
+    }
+
+    private static String call(ShardedTarantoolClientSource source, int bucketId) {
+        return source.call(bucketId, false, "get", query -> query.setInt(42), result -> result.getString(1));
+    }
+
+    private static Map<String, Object> error(String type, int code, String name) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("type", type);
+        error.put("code", code);
+        error.put("name", name);
+        error.put("bucket_id", 3);
+        error.put("message", name + " failed");
+        return error;
+    }
+
+    @Test
+    void testLuaString() {
+        assertEquals("42", ShardedTarantoolClientSource.toLuaString(42));
+        assertEquals("-42", ShardedTarantoolClientSource.toLuaString(-42L));
+        assertEquals("foo", ShardedTarantoolClientSource.toLuaString("foo"));
+        assertEquals("true", ShardedTarantoolClientSource.toLuaString(true));
+        assertEquals("99999999999999", ShardedTarantoolClientSource.toLuaString(99_999_999_999_999L));
+        assertEquals("1e+14", ShardedTarantoolClientSource.toLuaString(100_000_000_000_000L));
+        assertEquals("1.2345678901234e+14", ShardedTarantoolClientSource.toLuaString(123_456_789_012_345L));
+        assertEquals("-9.007199254741e+15", ShardedTarantoolClientSource.toLuaString(-(1L << 53)));
+        assertEquals("9007199254740993ULL", ShardedTarantoolClientSource.toLuaString((1L << 53) + 1));
+        assertEquals("-9007199254740993LL", ShardedTarantoolClientSource.toLuaString(-(1L << 53) - 1));
+        assertThrows(IllegalArgumentException.class, () -> ShardedTarantoolClientSource.toLuaString(1.5));
+    }
+
+    @Test
+    void testBucketId() {
+        // crc32c without final inversion as digest.crc32, modulo bucket count plus one
+        assertEquals(121, ShardedTarantoolClientSource.bucketIdStrcrc32(3000, "abc"));
+        assertEquals(121, ShardedTarantoolClientSource.bucketIdStrcrc32(3000, "a", "bc"));
+        assertEquals(477, ShardedTarantoolClientSource.bucketIdStrcrc32(3000, 1));
+        assertEquals(477, ShardedTarantoolClientSource.bucketIdStrcrc32(3000, "1"));
+    }
+
+    @Test
+    void testRouting() {
+        try (ShardedTarantoolClientSource source = source()) {
+            assertEquals("storage1", get(source, 1));
+            assertEquals("storage1", get(source, 5));
+            assertEquals("storage2", get(source, 6));
+            assertEquals("storage2", get(source, 9));
+            try (TarantoolClient client = source.getClient(7)) {
+                client.call("get");
+                Result result = client.execute();
+                assertTrue(result.next());
+                assertEquals("storage2", result.getString(0));
+            }
+        }
+    }
+
+    @Test
+    void testCall() {
+        try (ShardedTarantoolClientSource source = source()) {
+            assertEquals("storage1", call(source, 3));
+            assertEquals("[3,\"read\",\"get\",42]", storage1.getLastArguments().toJson());
+            assertEquals("storage2", call(source, 7));
+            source.call(7, true, "put", query -> {
+                query.setInt(42);
+                query.setString("value");
+            }, result -> null);
+            assertEquals("[7,\"write\",\"put\",42,\"value\"]", storage2.getLastArguments().toJson());
+        }
+    }
+
+    @Test
+    void testWrongBucket() {
+        try (ShardedTarantoolClientSource source = source()) {
+            assertEquals("storage1", call(source, 3));
+            int accepted = storage1.getAcceptedCount();
+
+            // bucket 3 moved to the second storage while the map is not refreshed yet
+            storage1.withEvalResult(BUCKETS_EXPRESSION, 1, 2, 4, 5)
+                    .withEvalResult(CALL_EXPRESSION, null, error("ShardingError", 1, "WRONG_BUCKET"));
+            storage2.withEvalResult(BUCKETS_EXPRESSION, 3, 6, 7, 8, 9);
+            assertEquals("storage2", call(source, 3));
+            assertEquals("storage2", call(source, 3));
+
+            // error returned as data doesn't discard the connection
+            assertEquals("storage1", get(source, 1));
+            assertEquals(accepted, storage1.getAcceptedCount());
+        }
+    }
+
+    @Test
+    void testOtherErrorNotRerouted() {
+        try (ShardedTarantoolClientSource source = source()) {
+            storage2.withEvalResult(BUCKETS_EXPRESSION, 3, 6, 7, 8, 9);
+            // box error with the same code as WRONG_BUCKET
+            storage1.withEvalResult(CALL_EXPRESSION, false, error("ClientError", 1, "ILLEGAL_PARAMS"));
+            TarantoolException e = assertThrows(TarantoolException.class, () -> call(source, 3));
+            assertEquals("ILLEGAL_PARAMS failed", e.getMessage());
+
+            storage1.withEvalResult(CALL_EXPRESSION, null, error("ShardingError", 2, "NON_MASTER"));
+            e = assertThrows(TarantoolException.class, () -> call(source, 3));
+            assertEquals("NON_MASTER failed", e.getMessage());
+
+            storage1.withEvalResult(CALL_EXPRESSION, null, "Something failed");
+            e = assertThrows(TarantoolException.class, () -> call(source, 3));
+            assertEquals("Something failed", e.getMessage());
+        }
+    }
+
+    @Test
+    void testExecuteNotRerouted() {
+        try (ShardedTarantoolClientSource source = source()) {
+            // plain requests are not checked by storage, so they follow the map as is
+            storage1.withEvalResult(BUCKETS_EXPRESSION, 1, 2, 4, 5);
+            storage2.withEvalResult(BUCKETS_EXPRESSION, 3, 6, 7, 8, 9);
+            assertEquals("storage1", get(source, 3));
+            source.refresh();
+            assertEquals("storage2", get(source, 3));
+        }
+    }
+
+    @Test
+    void testUnknownBucket() {
+        try (ShardedTarantoolClientSource source = source()) {
+            assertThrows(TarantoolException.class, () -> source.getClient(10));
+            storage2.withEvalResult(BUCKETS_EXPRESSION, 6, 7, 8, 9, 10);
+            assertEquals("storage2", get(source, 10));
+
+            assertThrows(IllegalArgumentException.class, () -> source.getClient(0));
+            assertThrows(IllegalArgumentException.class, () -> source.getClient(11));
+        }
+    }
+}
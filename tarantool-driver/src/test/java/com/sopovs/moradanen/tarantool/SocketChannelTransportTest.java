@@ -0,0 +1,92 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.Util;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static com.sopovs.moradanen.tarantool.TarantoolClientImplTest.createTestSpace;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SocketChannelTransportTest {
+
+    @Test
+    void testPing() {
+        try (TarantoolClient client = new TarantoolClientImpl(new SocketChannelTransport("localhost", 3301))) {
+            client.ping();
+        }
+    }
+
+    @Test
+    void testConfig() {
+        try (TarantoolClient client = new TarantoolClientImpl(
+                new TarantoolConfig("localhost", 3301, "admin", "javapass", true))) {
+            client.selectAll(Util.SPACE_VSPACE, 3);
+            Result result = client.execute();
+            assertEquals(3, result.getSize());
+        }
+    }
+
+    @Test
+    void testLargeTuple() throws Exception {
+        try (TarantoolClient client = new TarantoolClientImpl(
+                new SocketChannelTransport("localhost", 3301), "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("box.space.javatest:drop()")) {
+            createTestSpace(client);
+            int space = client.space("javatest");
+            char[] chars = new char[100_000];
+            Arrays.fill(chars, 'a');
+            String large = new String(chars);
+
+            client.insert(space);
+            client.setInt(1);
+            client.setString(large);
+            client.execute().close();
+
+            client.select(space, 0);
+            client.setInt(1);
+            Result result = client.execute();
+            result.next();
+            assertEquals(large, result.getString(1));
+        }
+    }
+
+    @Test
+    void testInsertBatch() throws Exception {
+        try (TarantoolClient client = new TarantoolClientImpl(
+                new SocketChannelTransport("localhost", 3301), "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("box.space.javatest:drop()")) {
+            createTestSpace(client);
+            int space = client.space("javatest");
+            for (int i = 0; i < 1000; i++) {
+                client.insert(space);
+                client.setInt(i);
+                client.setString("Foo" + i);
+                client.addBatch();
+            }
+            client.executeBatch();
+
+            client.selectAll(space);
+            assertEquals(1000, client.execute().getSize());
+        }
+    }
+
+    @Test
+    void testAsyncClient() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl(
+                new SocketChannelTransport("localhost", 3301), "admin", "javapass")) {
+            client.ping().join();
+            assertTrue(client.execute(query -> query.selectAll(Util.SPACE_VSPACE)).join().getSize() > 0);
+        }
+    }
+
+    @Test
+    void testClosed() {
+        TarantoolClient client = new TarantoolClientImpl(new SocketChannelTransport("localhost", 3301));
+        assertFalse(client.isClosed());
+        client.close();
+        assertTrue(client.isClosed());
+        assertThrows(TarantoolException.class, client::ping);
+    }
+}
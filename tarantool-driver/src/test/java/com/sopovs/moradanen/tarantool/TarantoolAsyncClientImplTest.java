@@ -0,0 +1,246 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Nullable;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.Util;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.sopovs.moradanen.tarantool.TarantoolClientImpl.EXECUTE_ABSENT_EXCEPTION;
+import static com.sopovs.moradanen.tarantool.TarantoolClientImpl.PRE_ACTION_EXCEPTION;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarantoolAsyncClientImplTest {
+
+    @Test
+    void testPing() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301)) {
+            client.ping().join();
+        }
+    }
+
+    @Test
+    void testSelect() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301, "admin", "javapass")) {
+            Result result = client.execute(query -> {
+                query.select(Util.SPACE_VSPACE, Util.INDEX_SPACE_NAME);
+                query.setString("_vspace");
+            }).join();
+            assertEquals(1, result.getSize());
+            result.next();
+            assertEquals(Util.SPACE_VSPACE, result.getInt(0));
+        }
+    }
+
+    @Test
+    void testManyInFlight() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301, "admin", "javapass")) {
+            int total = client.execute(query -> query.selectAll(Util.SPACE_VSPACE)).join().getSize();
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (int i = 1; i <= 100; i++) {
+                int limit = i;
+                futures.add(client.execute(query -> query.selectAll(Util.SPACE_VSPACE, limit)));
+            }
+            for (int i = 1; i <= 100; i++) {
+                assertEquals(Math.min(i, total), futures.get(i - 1).join().getSize());
+            }
+        }
+    }
+
+    @Test
+    void testRequestTimeout() {
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolAsyncClientImpl client = new TarantoolAsyncClientImpl("localhost", stub.getPort())) {
+            int space = stub.createSpace("javatest");
+            stub.withLatency(500, TimeUnit.MILLISECONDS);
+            client.setRequestTimeout(50, TimeUnit.MILLISECONDS);
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> client.execute(query -> query.selectAll(space)).join());
+            assertEquals(TarantoolAsyncClientImpl.REQUEST_TIMED_OUT, e.getCause().getMessage());
+
+            // late response of the timed out request is dropped
+            stub.withLatency(0, TimeUnit.MILLISECONDS);
+            client.setRequestTimeout(0, TimeUnit.MILLISECONDS);
+            assertEquals(0, client.execute(query -> query.selectAll(space)).join().getSize());
+        }
+    }
+
+    @Test
+    void testSyncWraps() {
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolAsyncClientImpl client = new TarantoolAsyncClientImpl("localhost", stub.getPort())) {
+            int space = stub.createSpace("javatest");
+            client.syncs.set(Integer.MAX_VALUE - 1);
+            for (int i = 0; i < 3; i++) {
+                assertEquals(0, client.execute(query -> query.selectAll(space)).join().getSize());
+            }
+            assertTrue(client.syncs.get() < 0);
+        }
+    }
+
+    @Test
+    void testError() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301, "admin", "javapass")) {
+            CompletionException exception = assertThrows(CompletionException.class,
+                    () -> client.eval("error('foobar')").join());
+            assertTrue(exception.getCause() instanceof TarantoolException);
+            assertTrue(exception.getCause().getMessage().contains("foobar"));
+            client.ping().join();
+        }
+    }
+
+    @Test
+    void testAbsentQuery() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301)) {
+            TarantoolException exception = assertThrows(TarantoolException.class, () -> client.execute(query -> {
+            }));
+            assertEquals(EXECUTE_ABSENT_EXCEPTION, exception.getMessage());
+            client.ping().join();
+        }
+    }
+
+    @Test
+    void testDoubleAction() {
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301)) {
+            TarantoolException exception = assertThrows(TarantoolException.class, () -> client.execute(query -> {
+                query.selectAll(Util.SPACE_VSPACE);
+                query.selectAll(Util.SPACE_VSPACE);
+            }));
+            assertEquals(PRE_ACTION_EXCEPTION, exception.getMessage());
+            assertTrue(client.execute(query -> query.selectAll(Util.SPACE_VSPACE)).join().getSize() > 0);
+        }
+    }
+
+    @Test
+    void testClosed() {
+        TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", 3301);
+        assertFalse(client.isClosed());
+        client.close();
+        assertTrue(client.isClosed());
+        assertThrows(CompletionException.class, () -> client.ping().join());
+    }
+
+    @Test
+    void testFlushNotDroppedWhenNonFlushingWriterIsLast() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             BlockingTransport transport = new BlockingTransport(new SocketTransport("localhost", stub.getPort()));
+             TarantoolAsyncClientImpl client = new TarantoolAsyncClientImpl(transport, null, null)) {
+            int space = stub.createSpace("javatest");
+            CountDownLatch writing = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            transport.block(writing, release);
+            // the first write holds the transport while execute and another write queue behind it
+            Future<CompletableFuture<Integer>> first = executor.submit(() -> insert(client, space, 1));
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            Future<CompletableFuture<Integer>> second = submitBlocked(executor, () -> insert(client, space, 2));
+            Future<CompletableFuture<Result>> execute = submitBlocked(executor,
+                    () -> client.execute(query -> query.selectAll(space)));
+            release.countDown();
+            try (Result result = execute.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS)) {
+                assertTrue(result.getSize() <= 2);
+            }
+            client.flush();
+            assertEquals(1, first.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS).intValue());
+            assertEquals(1, second.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS).intValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static CompletableFuture<Integer> insert(TarantoolAsyncClientImpl client, int space, int id) {
+        return client.sendWrite(query -> {
+            query.insert(space);
+            query.setInt(id);
+        });
+    }
+
+    private static <T> Future<T> submitBlocked(ExecutorService executor, Callable<T> task) throws InterruptedException {
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        Future<T> result = executor.submit(() -> {
+            thread.set(Thread.currentThread());
+            return task.call();
+        });
+        while (thread.get() == null || thread.get().getState() != Thread.State.BLOCKED) {
+            Thread.sleep(1);
+        }
+        return result;
+    }
+
+    private static final class BlockingTransport implements TarantoolTransport {
+        private final TarantoolTransport delegate;
+        @Nullable
+        private volatile CountDownLatch writing;
+        @Nullable
+        private volatile CountDownLatch release;
+
+        BlockingTransport(TarantoolTransport delegate) {
+            this.delegate = delegate;
+        }
+
+        // blocks the next written frame until released
+        void block(CountDownLatch writing, CountDownLatch release) {
+            this.release = release;
+            this.writing = writing;
+        }
+
+        @Override
+        public void readFully(byte[] buffer, int offset, int length) throws IOException {
+            delegate.readFully(buffer, offset, length);
+        }
+
+        @Override
+        public void writeFrame(byte[] frame, int length) throws IOException {
+            CountDownLatch currentWriting = writing;
+            if (currentWriting != null) {
+                writing = null;
+                currentWriting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+            delegate.writeFrame(frame, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void setTimeout(int milliseconds) throws IOException {
+            delegate.setTimeout(milliseconds);
+        }
+
+        @Override
+        public int getTimeout() throws IOException {
+            return delegate.getTimeout();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return delegate.isClosed();
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
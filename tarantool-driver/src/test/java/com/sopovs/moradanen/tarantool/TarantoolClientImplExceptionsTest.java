@@ -190,6 +190,30 @@ class TarantoolClientImplExceptionsTest {
         });
     }
 
+    @Test
+    void testChangeAfterSelectByLong() {
+        testException(PRE_CHANGE_EXCEPTION, c -> {
+            c.selectByLong(42, 1, 1L);
+            c.change(IntOp.AND, 1, 1);
+        });
+    }
+
+    @Test
+    void testSetAfterSelectByLong() {
+        testException(KEY_WRITTEN_EXCEPTION, c -> {
+            c.selectByLong(42, 1, 1L);
+            c.setLong(2L);
+        });
+    }
+
+    @Test
+    void testSetAfterDeleteByLong() {
+        testException(KEY_WRITTEN_EXCEPTION, c -> {
+            c.deleteByLong(42, 1, 1L);
+            c.setInt(2);
+        });
+    }
+
     @Test
     void testExecuteWithoutAction() {
         testException(EXECUTE_ABSENT_EXCEPTION, TarantoolClient::execute);
@@ -205,6 +229,11 @@ class TarantoolClientImplExceptionsTest {
         testPreActionCheck(c -> c.select(42, 1));
     }
 
+    @Test
+    void testDoubleSelectByLongWithoutExecute() {
+        testPreActionCheck(c -> c.selectByLong(42, 1, 1L));
+    }
+
     @Test
     void testDoubleInsertWithoutExecute() {
         testPreActionCheck(c -> c.insert(42));
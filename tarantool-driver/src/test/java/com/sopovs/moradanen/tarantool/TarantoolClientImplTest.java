@@ -3,9 +3,15 @@ package com.sopovs.moradanen.tarantool;
 import com.sopovs.moradanen.tarantool.core.IntOp;
 import com.sopovs.moradanen.tarantool.core.Op;
 import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.core.TarantoolSchemaException;
 import com.sopovs.moradanen.tarantool.core.Util;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static com.sopovs.moradanen.tarantool.TarantoolClientImpl.NOT_CLOSED_RESULT;
@@ -69,6 +75,100 @@ class TarantoolClientImplTest {
         }
     }
 
+    @Test
+    void testByteSize() {
+        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
+            client.selectAll(Util.SPACE_VSPACE, 1);
+            Result one = client.execute();
+            one.close();
+            client.selectAll(Util.SPACE_VSPACE, 3);
+            Result three = client.execute();
+            three.close();
+            assertTrue(one.getByteSize() > 0);
+            assertTrue(three.getByteSize() > one.getByteSize());
+        }
+    }
+
+    @Test
+    void testListener() {
+        List<String> events = new ArrayList<>();
+        try (TarantoolClientImpl client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
+            client.setListener(event -> {
+                assertTrue(event.getBytesWritten() > TarantoolClientImpl.FRAME_PREFIX_SIZE);
+                assertTrue(event.getBytesRead() > TarantoolClientImpl.FRAME_PREFIX_SIZE);
+                assertTrue(event.getWriteNanos() > 0);
+                assertTrue(event.getWaitNanos() > 0);
+                assertTrue(event.getDecodeNanos() > 0);
+                events.add(event.getCode() + ":" + event.getSpace() + ":" + event.getRows() + ":" + event.isFailed());
+            });
+            client.ping();
+            client.selectAll(Util.SPACE_VSPACE, 3);
+            client.execute().close();
+            client.eval("error('Test')");
+            assertThrows(TarantoolException.class, client::execute);
+            client.selectAll(Util.SPACE_VSPACE, 1);
+            client.addBatch();
+            client.selectAll(Util.SPACE_VSPACE, 2);
+            client.addBatch();
+            client.executeBatch();
+            client.setListener(null);
+            client.ping();
+        }
+        assertEquals(Arrays.asList(
+                Util.CODE_PING + ":-1:0:false",
+                Util.CODE_SELECT + ":" + Util.SPACE_VSPACE + ":3:false",
+                Util.CODE_EVAL + ":-1:0:true",
+                Util.CODE_SELECT + ":" + Util.SPACE_VSPACE + ":1:false",
+                Util.CODE_SELECT + ":" + Util.SPACE_VSPACE + ":2:false"), events);
+    }
+
+    @Test
+    void testCurrentRowReadableAfterNextRequest() {
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolClientImpl client = new TarantoolClientImpl("localhost", stub.getPort())) {
+            int space = stub.createSpace("javatest");
+            stub.insert(space, 1, "Foo", new byte[]{1});
+            stub.insert(space, 2, "BarBar", new byte[]{2, 2});
+            client.select(space, 0, 1, 0);
+            client.setInt(1);
+            Result first = client.execute();
+            assertTrue(first.next());
+
+            // the frame of the first response is reused for this one
+            client.select(space, 0, 1, 0);
+            client.setInt(2);
+            Result second = client.execute();
+            assertTrue(second.next());
+            assertEquals("BarBar", second.getString(1));
+            assertEquals("Foo", first.getString(1));
+            assertArrayEquals(new byte[]{1}, first.getBytes(2));
+        }
+    }
+
+    @Test
+    void testListenerOnBrokenConnection() {
+        List<String> events = new ArrayList<>();
+        int space;
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolClientImpl client = new TarantoolClientImpl("localhost", stub.getPort())) {
+            space = stub.createSpace("javatest");
+            client.setListener(event -> events.add(event.getCode() + ":" + event.getSpace() + ":" + event.isFailed()));
+            client.ping();
+            stub.withLatency(1, TimeUnit.SECONDS);
+            client.setNetworkTimeout(50);
+            client.selectAll(space);
+            client.addBatch();
+            client.selectAll(space);
+            client.addBatch();
+            // no response comes to any of the requests pending on the timed out connection
+            assertThrows(TarantoolException.class, client::executeBatch);
+        }
+        assertEquals(Arrays.asList(
+                Util.CODE_PING + ":-1:false",
+                Util.CODE_SELECT + ":" + space + ":true",
+                Util.CODE_SELECT + ":" + space + ":true"), events);
+    }
+
     @Test
     void testSelectClosingNotReadResult() {
         try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
@@ -97,6 +197,59 @@ class TarantoolClientImplTest {
         }
     }
 
+    @Test
+    void testSchema() throws Exception {
+        try (TarantoolClientImpl client = new TarantoolClientImpl("localhost", "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("box.space.javatest:drop()").close()) {
+            assertEquals(Util.INDEX_SPACE_NAME, client.index(Util.SPACE_VSPACE, "name"));
+            long schemaId = client.getSchema().getSchemaId();
+
+            client.evalFully("box.schema.space.create('javatest', {format = {{'id', 'unsigned'}, {'value', 'string'}}})")
+                    .close();
+            client.evalFully("box.space.javatest:create_index('primary', {parts = {1, 'unsigned'}})").close();
+            client.evalFully("box.space.javatest:create_index('byValue', {parts = {2, 'string'}})").close();
+            int space = client.space("javatest");
+            assertEquals(1, client.index("javatest", "byValue"));
+            TarantoolSchema.Space schemaSpace = client.getSchema().getSpace(space);
+            assertNotNull(schemaSpace);
+            assertEquals(Arrays.asList("id", "value"), schemaSpace.getFieldNames());
+            assertEquals(Arrays.asList("unsigned", "string"), schemaSpace.getFieldTypes());
+            assertEquals(1, schemaSpace.getField("value"));
+            assertTrue(client.getSchema().getSchemaId() > schemaId);
+
+            client.evalFully("box.space.javatest:drop()").close();
+            client.evalFully("box.schema.space.create('javatest', {id = " + (space + 1) + "})").close();
+            client.evalFully("box.space.javatest:create_index('primary', {parts = {1, 'unsigned'}})").close();
+            assertEquals(space + 1, client.space("javatest"));
+            assertThrows(TarantoolException.class, () -> client.index("javatest", "byValue"));
+        }
+    }
+
+    @Test
+    void testSchemaVersion() {
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolClientImpl client = new TarantoolClientImpl("localhost", stub.getPort())) {
+            stub.createSpace("javatest");
+            int space = client.space("javatest");
+            long schemaVersion = client.getSchemaVersion();
+            client.setSchemaVersion(schemaVersion);
+            client.selectAll(space);
+            client.execute().close();
+
+            stub.dropSpace(space);
+            int recreated = stub.createSpace("javatest");
+            client.selectAll(space);
+            assertThrows(TarantoolSchemaException.class, client::execute);
+
+            // schema is reloaded with any version
+            assertEquals(recreated, client.space("javatest"));
+            assertTrue(client.getSchemaVersion() > schemaVersion);
+            client.setSchemaVersion(client.getSchemaVersion());
+            client.selectAll(recreated);
+            client.execute().close();
+        }
+    }
+
     @Test
     void testEval() {
         try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
@@ -106,6 +259,38 @@ class TarantoolClientImplTest {
         }
     }
 
+    @Test
+    void testCall() throws Exception {
+        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("javatest_echo = nil").close()) {
+            client.evalFully("function javatest_echo(...) return {...} end").close();
+
+            client.call("javatest_echo");
+            client.setInt(42);
+            client.setString("Foo");
+            Result result = client.execute();
+            assertEquals(1, result.getSize());
+            result.next();
+            assertEquals(42, result.getInt(0));
+            assertEquals("Foo", result.getString(1));
+
+            TarantoolFunction echo = client.prepareCall("javatest_echo");
+            for (int i = 0; i < 3; i++) {
+                client.call(echo);
+                client.setInt(i);
+                client.addBatch();
+            }
+            client.call(echo);
+            client.setInt(3);
+            result = client.execute();
+            result.next();
+            assertEquals(3, result.getInt(0));
+
+            client.call("javatest_absent");
+            assertThrows(TarantoolException.class, client::execute);
+        }
+    }
+
     @Test
     void testInsert() throws Exception {
         try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
@@ -147,6 +332,54 @@ class TarantoolClientImplTest {
         }
     }
 
+    @Test
+    void testDeleteByLong() throws Exception {
+        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("box.space.javatest:drop()")) {
+            insertInternal(client);
+            int space = client.space("javatest");
+            client.deleteByLong(space, 0, 1L);
+            Result delete = client.execute();
+            assertEquals(1, delete.getSize());
+            delete.close();
+
+            client.selectByLong(space, 0, 1L);
+            Result select = client.execute();
+            assertEquals(0, select.getSize());
+        }
+    }
+
+    @Test
+    void testSelectByLongs() throws Exception {
+        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("box.space.javatest:drop()")) {
+
+            client.evalFully("box.schema.space.create('javatest')");
+            client.evalFully(
+                    "box.space.javatest:create_index('primary', {type = 'tree', parts = {1, 'num', 2, 'num'}})");
+            int space = client.space("javatest");
+            for (int i = 0; i < 3; i++) {
+                client.insert(space);
+                client.setInt(1);
+                client.setInt(i);
+                client.addBatch();
+            }
+            client.executeBatch();
+
+            client.selectByLongs(space, 0, 1L, 2L);
+            Result select = client.execute();
+            assertEquals(1, select.getSize());
+            select.next();
+            assertEquals(1, select.getInt(0));
+            assertEquals(2, select.getInt(1));
+            select.close();
+
+            client.selectByLong(space, 0, 1L);
+            Result partial = client.execute();
+            assertEquals(3, partial.getSize());
+        }
+    }
+
     @Test
     void testDeleteComposite() throws Exception {
         try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
@@ -260,6 +493,22 @@ class TarantoolClientImplTest {
         }
     }
 
+    @Test
+    void testUpdateByLong() throws Exception {
+        try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
+             AutoCloseable ignored = () -> client.evalFully("box.space.javatest:drop()")) {
+            insertInternal(client);
+            client.updateByLong(client.space("javatest"), 0, 1L);
+            client.change(IntOp.PLUS, 1, 1);
+            client.change(IntOp.PLUS, 1, 2);
+            Result update = client.execute();
+            assertEquals(1, update.getSize());
+            update.close();
+
+            testValue(client, 3);
+        }
+    }
+
     @Test
     void testUpdateLong() throws Exception {
         try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass");
@@ -470,6 +719,51 @@ class TarantoolClientImplTest {
         });
     }
 
+    @Test
+    void testPreparedSql() {
+        sqlTest(client -> {
+            for (int i = 0; i < 3; i++) {
+                client.preparedSql("INSERT INTO TABLE1 VALUES(?,?)");
+                client.setInt(i);
+                client.setString("A" + i);
+                assertEquals(1L, client.executeUpdate());
+            }
+            for (int i = 3; i < 6; i++) {
+                client.preparedSql("INSERT INTO TABLE1 VALUES(?,?)");
+                client.setInt(i);
+                client.setString("A" + i);
+                client.addBatch();
+            }
+            assertArrayEquals(new int[]{1, 1, 1}, client.executeBatchUpdate());
+
+            ((TarantoolClientImpl) client).setStatementCacheSize(1);
+            for (int i = 0; i < 6; i++) {
+                client.preparedSql("SELECT COLUMN2 FROM TABLE1 WHERE COLUMN1 = ?");
+                client.setInt(i);
+                Result result = client.execute();
+                assertTrue(result.next());
+                assertEquals("A" + i, result.getString(0));
+                assertFalse(result.next());
+
+                client.preparedSql("SELECT COUNT(*) FROM TABLE1");
+                result = client.execute();
+                assertTrue(result.next());
+                assertEquals(6, result.getInt(0));
+            }
+            ((TarantoolClientImpl) client).setStatementCacheSize(0);
+        });
+    }
+
+    @Test
+    void testIsPrepareSupported() {
+        assertFalse(TarantoolClientImpl.isPrepareSupported("1.10.3-5-g3b38a1d"));
+        assertFalse(TarantoolClientImpl.isPrepareSupported("2.2.1"));
+        assertTrue(TarantoolClientImpl.isPrepareSupported("2.3.1-0-g5a1a220"));
+        assertTrue(TarantoolClientImpl.isPrepareSupported("2.10.0"));
+        assertTrue(TarantoolClientImpl.isPrepareSupported("3.0.0"));
+        assertFalse(TarantoolClientImpl.isPrepareSupported("unknown"));
+    }
+
     @Test
     void testIsClosed() {
         try (TarantoolClient client = new TarantoolClientImpl("localhost", "admin", "javapass")) {
@@ -0,0 +1,193 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarantoolClusterClientSourceTest {
+
+    private final TarantoolStubServer master = stub(false);
+    private final TarantoolStubServer replica1 = stub(true);
+    private final TarantoolStubServer replica2 = stub(true);
+
+    private static TarantoolStubServer stub(boolean readOnly) {
+        TarantoolStubServer stub = new TarantoolStubServer()
+                .withEvalResult(TarantoolClusterClientSource.RO_EXPRESSION, readOnly);
+        stub.createSpace("javatest");
+        return stub;
+    }
+
+    @AfterEach
+    void tearDown() {
+        master.close();
+        replica1.close();
+        replica2.close();
+    }
+
+    private static TarantoolConfig config(TarantoolStubServer stub) {
+        return new TarantoolConfig("localhost", stub.getPort(), null, null);
+    }
+
+    private static List<TarantoolConfig> configs(TarantoolStubServer... stubs) {
+        return Arrays.stream(stubs).map(TarantoolClusterClientSourceTest::config).collect(Collectors.toList());
+    }
+
+    private static void selectAll(TarantoolClient client) {
+        try (TarantoolClient ignored = client) {
+            client.selectAll(512);
+            client.execute().close();
+        }
+    }
+
+    @Test
+    void testRoles() {
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                configs(replica1, master, replica2), new TarantoolPoolConfig(2), 0)) {
+            assertEquals(master.getPort(), source.getMaster().getPort());
+            assertEquals(2, source.getReplicas().size());
+
+            int masterRequests = master.getRequestCount();
+            for (int i = 0; i < 100; i++) {
+                selectAll(source.getReadClient());
+            }
+            assertEquals(masterRequests, master.getRequestCount());
+
+            selectAll(source.getClient());
+            assertEquals(masterRequests + 1, master.getRequestCount());
+        }
+    }
+
+    @Test
+    void testReadsSpread() {
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                configs(master, replica1, replica2), new TarantoolPoolConfig(4), 0)) {
+            try (TarantoolClient ignored = source.getReadClient()) {
+                int requests1 = replica1.getRequestCount();
+                int requests2 = replica2.getRequestCount();
+                for (int i = 0; i < 10; i++) {
+                    selectAll(source.getReadClient());
+                }
+                // replica with a client in use is not chosen
+                int selected1 = replica1.getRequestCount() - requests1;
+                int selected2 = replica2.getRequestCount() - requests2;
+                assertEquals(10, selected1 + selected2);
+                assertEquals(0, selected1 * selected2);
+            }
+        }
+    }
+
+    @Test
+    void testReadsFromMasterWithoutReplicas() {
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                Collections.singletonList(config(master)), 1)) {
+            int requests = master.getRequestCount();
+            selectAll(source.getReadClient());
+            assertEquals(requests + 1, master.getRequestCount());
+        }
+    }
+
+    @Test
+    void testFailover() throws Exception {
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                configs(master, replica1), new TarantoolPoolConfig(1), 0)) {
+            master.close();
+            replica1.withEvalResult(TarantoolClusterClientSource.RO_EXPRESSION, false);
+            // connection to the failed master is discarded after the error
+            assertThrows(TarantoolException.class, () -> selectAll(source.getClient()));
+
+            // master can't be connected, so the call fails at once and roles are discovered again in background
+            assertThrows(TarantoolException.class, source::getClient);
+            awaitMaster(source, replica1);
+            int requests = replica1.getRequestCount();
+            selectAll(source.getClient());
+            assertTrue(source.getReplicas().isEmpty());
+            assertEquals(requests + 1, replica1.getRequestCount());
+        }
+    }
+
+    private static void awaitMaster(TarantoolClusterClientSource source, TarantoolStubServer master)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (source.getMaster() == null || source.getMaster().getPort() != master.getPort()) {
+            assertTrue(System.nanoTime() < deadline, "Master was not discovered");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void testUnresponsiveInstance() throws Exception {
+        // accepts connections but never sends greeting
+        try (ServerSocket unresponsive = new ServerSocket(0)) {
+            List<TarantoolConfig> configs = configs(master, replica1);
+            configs.add(new TarantoolConfig("localhost", unresponsive.getLocalPort(), null, null));
+            long start = System.nanoTime();
+            try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                    configs, new TarantoolPoolConfig(1), 0, 100)) {
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+                assertEquals(master.getPort(), source.getMaster().getPort());
+                assertEquals(1, source.getReplicas().size());
+            }
+        }
+    }
+
+    @Test
+    void testInstanceDownOnStart() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        List<TarantoolConfig> configs = configs(master);
+        configs.add(new TarantoolConfig("localhost", port, null, null));
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(2);
+        poolConfig.setMinIdle(1);
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(configs, poolConfig, 0)) {
+            assertEquals(master.getPort(), source.getMaster().getPort());
+            assertTrue(source.getReplicas().isEmpty());
+            selectAll(source.getClient());
+
+            try (TarantoolStubServer late = new TarantoolStubServer(port)
+                    .withEvalResult(TarantoolClusterClientSource.RO_EXPRESSION, true)) {
+                late.createSpace("javatest");
+                source.refresh();
+                assertEquals(Collections.singletonList(port),
+                        source.getReplicas().stream().map(TarantoolConfig::getPort).collect(Collectors.toList()));
+                int requests = late.getRequestCount();
+                selectAll(source.getReadClient());
+                assertEquals(requests + 1, late.getRequestCount());
+            }
+        }
+    }
+
+    @Test
+    void testNoMasterDiscoveredInBackground() throws Exception {
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                configs(replica1), new TarantoolPoolConfig(1), 0)) {
+            replica1.withEvalResult(TarantoolClusterClientSource.RO_EXPRESSION, false);
+            TarantoolException e = assertThrows(TarantoolException.class, source::getClient);
+            assertEquals(TarantoolClusterClientSource.NO_MASTER, e.getMessage());
+            awaitMaster(source, replica1);
+            selectAll(source.getClient());
+        }
+    }
+
+    @Test
+    void testNoMaster() {
+        try (TarantoolClusterClientSource source = new TarantoolClusterClientSource(
+                configs(replica1), new TarantoolPoolConfig(1), 0)) {
+            assertNull(source.getMaster());
+            TarantoolException e = assertThrows(TarantoolException.class, source::getClient);
+            assertEquals(TarantoolClusterClientSource.NO_MASTER, e.getMessage());
+            selectAll(source.getReadClient());
+        }
+    }
+}
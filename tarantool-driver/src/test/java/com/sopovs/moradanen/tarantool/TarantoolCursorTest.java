@@ -0,0 +1,166 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarantoolCursorTest {
+
+    private final TarantoolStubServer stub = new TarantoolStubServer();
+    private final int space = stub.createSpace("javatest");
+    private final TarantoolClientSource source = new TarantoolNewClientSource("localhost", stub.getPort());
+    private final TarantoolTemplate template = new TarantoolTemplate(source);
+
+    @AfterEach
+    void tearDown() {
+        source.close();
+        stub.close();
+    }
+
+    private void insert(int size) {
+        for (int i = 0; i < size; i++) {
+            stub.insert(space, i, "FooBar" + i);
+        }
+    }
+
+    @Test
+    void testCursor() {
+        insert(25);
+        int requests = stub.getRequestCount();
+        try (TarantoolCursor cursor = template.cursor(space, 10)) {
+            for (int i = 0; i < 25; i++) {
+                assertTrue(cursor.next());
+                assertEquals(2, cursor.currentSize());
+                assertEquals(i, cursor.getInt(0));
+                assertEquals("FooBar" + i, cursor.getString(1));
+            }
+            assertFalse(cursor.next());
+            assertFalse(cursor.next());
+        }
+        // one select per page
+        assertEquals(requests + 3, stub.getRequestCount());
+    }
+
+    @Test
+    void testPageSizeMultiple() {
+        insert(20);
+        int requests = stub.getRequestCount();
+        try (Stream<Integer> stream = template.streamAll(space, 10, result -> result.getInt(0))) {
+            assertEquals(IntStream.range(0, 20).boxed().collect(Collectors.toList()),
+                    stream.collect(Collectors.toList()));
+        }
+        // no empty page is selected after the last full one
+        assertEquals(requests + 2, stub.getRequestCount());
+    }
+
+    @Test
+    void testEmpty() {
+        try (TarantoolCursor cursor = template.cursor(space, 10)) {
+            assertFalse(cursor.next());
+        }
+    }
+
+    @Test
+    void testPrefetch() {
+        insert(1000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (TarantoolCursor cursor = new TarantoolCursor(source, space, 0, new int[]{0}, 7, executor)) {
+            List<String> values = cursor.stream(result -> result.getString(1)).collect(Collectors.toList());
+            assertEquals(1000, values.size());
+            assertEquals("FooBar999", values.get(999));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testAsync() {
+        insert(1000);
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", stub.getPort())) {
+            int requests = stub.getRequestCount();
+            try (TarantoolCursor cursor = new TarantoolCursor(client, space, 0, new int[]{0}, 10)) {
+                for (int i = 0; i < 1000; i++) {
+                    assertTrue(cursor.next());
+                    assertEquals(i, cursor.getInt(0));
+                    assertEquals("FooBar" + i, cursor.getString(1));
+                }
+                assertFalse(cursor.next());
+            }
+            // no empty page is selected after the last full one
+            assertEquals(requests + 100, stub.getRequestCount());
+        }
+    }
+
+    @Test
+    void testAsyncClosedBeforeRead() {
+        insert(100);
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", stub.getPort())) {
+            try (TarantoolCursor cursor = new TarantoolCursor(client, space, 0, new int[]{0}, 10)) {
+                assertTrue(cursor.next());
+            }
+            // request of the prefetched page is still answered and the client stays usable
+            assertEquals(1, client.execute(query -> query.selectAll(space, 1, 0)).join().getSize());
+        }
+    }
+
+    @Test
+    void testStreamShortCircuit() {
+        insert(100);
+        try (Stream<Integer> stream = template.streamAll(space, 10, result -> result.getInt(0))) {
+            assertEquals(IntStream.range(0, 15).boxed().collect(Collectors.toList()),
+                    stream.limit(15).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testUniqueSecondaryIndex() {
+        insert(25);
+        int index = stub.createIndex(space, "name", true, 1);
+        List<String> expected = IntStream.range(0, 25).mapToObj(i -> "FooBar" + i).sorted()
+                .collect(Collectors.toList());
+        int requests = stub.getRequestCount();
+        try (TarantoolCursor cursor = template.cursor(space, index, new int[]{1}, 7)) {
+            assertEquals(expected, cursor.stream(result -> result.getString(1)).collect(Collectors.toList()));
+        }
+        // index check and one select per page
+        assertEquals(requests + 5, stub.getRequestCount());
+
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", stub.getPort());
+             TarantoolCursor cursor = new TarantoolCursor(client, space, index, new int[]{1}, 7)) {
+            assertEquals(expected, cursor.stream(result -> result.getString(1)).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testNonUniqueIndex() {
+        for (int i = 0; i < 10; i++) {
+            // every key is shared by two tuples, so pages of three split them
+            stub.insert(space, i, "FooBar" + i / 2);
+        }
+        int index = stub.createIndex(space, "name", false, 1);
+        String message = "Cursor needs unique index, but index 1 in space " + space + " is not unique";
+        try (TarantoolCursor cursor = template.cursor(space, index, new int[]{1}, 3)) {
+            assertEquals(message, assertThrows(TarantoolException.class, cursor::next).getMessage());
+        }
+        try (TarantoolAsyncClient client = new TarantoolAsyncClientImpl("localhost", stub.getPort());
+             TarantoolCursor cursor = new TarantoolCursor(client, space, index, new int[]{1}, 3)) {
+            assertEquals(message, assertThrows(TarantoolException.class, cursor::next).getMessage());
+        }
+    }
+
+    @Test
+    void testWrongArguments() {
+        assertThrows(IllegalArgumentException.class, () -> template.cursor(space, 0));
+        assertThrows(IllegalArgumentException.class, () -> template.cursor(space, 0, new int[0], 10));
+    }
+}
@@ -1,14 +1,19 @@
 package com.sopovs.moradanen.tarantool;
 
 import com.sopovs.moradanen.tarantool.core.*;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Spliterator;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
+import static com.sopovs.moradanen.tarantool.TarantoolPooledClientSource.ACQUIRE_TIMEOUT;
 import static com.sopovs.moradanen.tarantool.TarantoolPooledClientSource.CONNECTION_CLOSED;
 import static com.sopovs.moradanen.tarantool.TarantoolPooledClientSource.POOL_CLOSED;
 import static org.junit.jupiter.api.Assertions.*;
@@ -201,6 +206,309 @@ class TarantoolPooledClientSourceTest {
         }
     }
 
+    @Test
+    void testAcquireTimeout() {
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(1);
+        poolConfig.setAcquireTimeout(50);
+        try (TarantoolClientSource pool = new TarantoolPooledClientSource(DUMMY_CONFIG, DummyTarantoolClient::new, poolConfig);
+             TarantoolClient ignored = pool.getClient()) {
+            TarantoolException exception = assertThrows(TarantoolException.class, pool::getClient);
+            assertTrue(exception.getMessage().startsWith(ACQUIRE_TIMEOUT));
+        }
+    }
+
+    @Test
+    void testThreadAffinity() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        try (TarantoolClientSource pool = new TarantoolPooledClientSource(DUMMY_CONFIG,
+                config -> new DummyVersionClient(String.valueOf(counter.incrementAndGet())), 2)) {
+            ExecutorService thread = Executors.newSingleThreadExecutor();
+            try {
+                TarantoolClient first = pool.getClient();
+                String second = thread.submit(() -> {
+                    try (TarantoolClient client = pool.getClient()) {
+                        return client.getVersion();
+                    }
+                }).get();
+                first.close();
+                // first is the most recently released, but the other thread gets back its own client
+                assertEquals(second, thread.submit(() -> {
+                    try (TarantoolClient client = pool.getClient()) {
+                        return client.getVersion();
+                    }
+                }).get());
+            } finally {
+                thread.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void testConcurrentUse() throws Exception {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger inUse = new AtomicInteger();
+        int threads = 16;
+        try (TarantoolClientSource pool = new TarantoolPooledClientSource(DUMMY_CONFIG, config -> {
+            created.incrementAndGet();
+            return new DummyTarantoolClient(config);
+        }, POOL_SIZE)) {
+            ExecutorService threadPool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(threadPool.submit(() -> {
+                    for (int j = 0; j < 10_000; j++) {
+                        //noinspection EmptyTryBlock
+                        try (TarantoolClient ignored = pool.getClient()) {
+                            assertTrue(inUse.incrementAndGet() <= POOL_SIZE);
+                            inUse.decrementAndGet();
+                        }
+                    }
+                }));
+            }
+            threadPool.shutdown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        }
+        assertTrue(created.get() <= POOL_SIZE);
+    }
+
+    @Test
+    void testServerErrorsKeepConnection() {
+        try (TarantoolStubServer stub = new TarantoolStubServer();
+             TarantoolClientSource pool = new TarantoolPooledClientSource(
+                     new TarantoolConfig("localhost", stub.getPort(), null, null), 1)) {
+            int space = stub.createSpace("javatest");
+            try (TarantoolClient client = pool.getClient()) {
+                for (int i = 0; i < 2; i++) {
+                    client.insert(space);
+                    client.setInt(1);
+                    client.addBatch();
+                }
+                assertThrows(TarantoolBatchException.class, client::executeBatchUpdate);
+
+                client.setSchemaVersion(client.getSchemaVersion());
+                stub.createSpace("other");
+                client.selectAll(space);
+                assertThrows(TarantoolSchemaException.class, client::execute);
+
+                client.setSchemaVersion(0);
+                client.selectAll(space);
+                assertEquals(1, client.execute().getSize());
+            }
+            try (TarantoolClient client = pool.getClient()) {
+                client.selectAll(space);
+                assertEquals(1, client.execute().getSize());
+            }
+            assertEquals(1, stub.getAcceptedCount());
+        }
+    }
+
+    @Test
+    void testMinIdle() {
+        List<DummyLifecycleClient> clients = new CopyOnWriteArrayList<>();
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(POOL_SIZE);
+        poolConfig.setMinIdle(2);
+        poolConfig.setMaxIdleTime(20);
+        poolConfig.setMaintenanceInterval(10);
+        try (TarantoolClientSource pool = createLifecyclePool(clients, poolConfig)) {
+            assertEquals(2, clients.size());
+            List<TarantoolClient> borrowed = new ArrayList<>();
+            for (int i = 0; i < POOL_SIZE; i++) {
+                borrowed.add(pool.getClient());
+            }
+            borrowed.forEach(TarantoolClient::close);
+            assertEquals(POOL_SIZE, clients.size());
+            // connections above minIdle are closed once unused for long enough
+            awaitAssertion(() -> assertEquals(POOL_SIZE - 2, clients.stream().filter(c -> c.closed).count()));
+        }
+        assertTrue(clients.stream().allMatch(c -> c.closed));
+    }
+
+    @Test
+    void testMinIdleRestored() {
+        List<DummyLifecycleClient> clients = new CopyOnWriteArrayList<>();
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(POOL_SIZE);
+        poolConfig.setMinIdle(1);
+        poolConfig.setMaintenanceInterval(10);
+        try (TarantoolClientSource pool = createLifecyclePool(clients, poolConfig)) {
+            TarantoolClient client = pool.getClient();
+            assertThrows(TarantoolException.class, client::execute);
+            // broken connection is replaced in background
+            awaitAssertion(() -> assertEquals(2, clients.size()));
+            assertTrue(clients.get(0).closed);
+            assertFalse(clients.get(1).closed);
+        }
+    }
+
+    @Test
+    void testMaxLifetime() throws Exception {
+        List<DummyLifecycleClient> clients = new CopyOnWriteArrayList<>();
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(POOL_SIZE);
+        poolConfig.setMaxLifetime(20);
+        poolConfig.setMaintenanceInterval(10);
+        try (TarantoolClientSource pool = createLifecyclePool(clients, poolConfig)) {
+            TarantoolClient first = pool.getClient();
+            pool.getClient().close();
+            Thread.sleep(30);
+            // connection in use is not interrupted, but closed on release
+            assertFalse(clients.get(0).closed);
+            first.close();
+            assertTrue(clients.get(0).closed);
+            awaitAssertion(() -> assertTrue(clients.get(1).closed));
+            pool.getClient().close();
+            assertEquals(3, clients.size());
+        }
+    }
+
+    @Test
+    void testValidation() {
+        List<DummyLifecycleClient> clients = new CopyOnWriteArrayList<>();
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(POOL_SIZE);
+        poolConfig.setValidationInterval(10);
+        poolConfig.setMaintenanceInterval(10);
+        try (TarantoolClientSource pool = createLifecyclePool(clients, poolConfig)) {
+            pool.getClient().close();
+            awaitAssertion(() -> assertTrue(clients.get(0).pings.get() >= 2));
+            assertFalse(clients.get(0).closed);
+            clients.get(0).alive = false;
+            awaitAssertion(() -> assertTrue(clients.get(0).closed));
+            pool.getClient().close();
+            assertEquals(2, clients.size());
+        }
+    }
+
+    @Test
+    void testMetrics() {
+        AtomicInteger acquired = new AtomicInteger();
+        AtomicInteger timeouts = new AtomicInteger();
+        AtomicInteger creationFailures = new AtomicInteger();
+        AtomicInteger discarded = new AtomicInteger();
+        List<TarantoolPooledClientSource> registered = new ArrayList<>();
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(2);
+        poolConfig.setAcquireTimeout(10);
+        poolConfig.setMetrics(new TarantoolPoolMetrics() {
+            @Override
+            public void register(TarantoolPooledClientSource pool) {
+                registered.add(pool);
+            }
+
+            @Override
+            public void acquired(long nanos) {
+                assertTrue(nanos >= 0);
+                acquired.incrementAndGet();
+            }
+
+            @Override
+            public void acquireTimedOut() {
+                timeouts.incrementAndGet();
+            }
+
+            @Override
+            public void creationFailed() {
+                creationFailures.incrementAndGet();
+            }
+
+            @Override
+            public void discarded() {
+                discarded.incrementAndGet();
+            }
+        });
+        AtomicInteger created = new AtomicInteger();
+        try (TarantoolPooledClientSource pool = new TarantoolPooledClientSource(DUMMY_CONFIG, config -> {
+            if (created.incrementAndGet() == 1) {
+                throw new TarantoolException("Cannot create!");
+            }
+            return new DummyTarantoolClient(config);
+        }, poolConfig)) {
+            assertEquals(Collections.singletonList(pool), registered);
+            assertThrows(TarantoolException.class, pool::getClient);
+            assertEquals(1, creationFailures.get());
+
+            TarantoolClient first = pool.getClient();
+            TarantoolClient second = pool.getClient();
+            assertEquals(2, acquired.get());
+            assertEquals(2, pool.getTotalConnections());
+            assertEquals(2, pool.getActiveConnections());
+            assertEquals(0, pool.getIdleConnections());
+            assertThrows(TarantoolException.class, pool::getClient);
+            assertEquals(1, timeouts.get());
+
+            assertThrows(TarantoolException.class, first::execute);
+            assertEquals(1, discarded.get());
+            second.close();
+            assertEquals(1, pool.getTotalConnections());
+            assertEquals(0, pool.getActiveConnections());
+            assertEquals(1, pool.getIdleConnections());
+            assertEquals(0, pool.getPendingThreads());
+        }
+    }
+
+    private static TarantoolClientSource createLifecyclePool(List<DummyLifecycleClient> clients,
+                                                             TarantoolPoolConfig poolConfig) {
+        return new TarantoolPooledClientSource(DUMMY_CONFIG, config -> {
+            DummyLifecycleClient client = new DummyLifecycleClient();
+            clients.add(client);
+            return client;
+        }, poolConfig);
+    }
+
+    private static void awaitAssertion(Runnable assertion) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (true) {
+            try {
+                assertion.run();
+                return;
+            } catch (AssertionError e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static class DummyLifecycleClient extends DummyTarantoolClient {
+        private final AtomicInteger pings = new AtomicInteger();
+        private volatile boolean alive = true;
+        private volatile boolean closed = false;
+
+        DummyLifecycleClient() {
+            super(DUMMY_CONFIG);
+        }
+
+        @Override
+        public void ping() {
+            pings.incrementAndGet();
+            if (!alive) {
+                throw new TarantoolException("Connection reset");
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    static class DummyVersionClient extends DummyTarantoolClient {
+        private final String version;
+
+        DummyVersionClient(String version) {
+            super(DUMMY_CONFIG);
+            this.version = version;
+        }
+
+        @Override
+        public String getVersion() {
+            return version;
+        }
+    }
+
     static class DummyTarantoolClient implements TarantoolClient {
 
         DummyTarantoolClient(@SuppressWarnings("unused") TarantoolConfig config) {
@@ -252,6 +560,16 @@ class TarantoolPooledClientSourceTest {
             throw new TarantoolException("Not implemented!");
         }
 
+        @Override
+        public void call(String function) {
+            throw new TarantoolException("Not implemented!");
+        }
+
+        @Override
+        public void call(TarantoolFunction function) {
+            throw new TarantoolException("Not implemented!");
+        }
+
         @Override
         public void insert(int space) {
             throw new TarantoolException("Not implemented!");
@@ -353,6 +671,11 @@ class TarantoolPooledClientSourceTest {
             throw new TarantoolException("Not implemented!");
         }
 
+        @Override
+        public void setRawTuple(ByteBuffer tuple) {
+            throw new TarantoolException("Not implemented!");
+        }
+
         @Override
         public String getVersion() {
             throw new TarantoolException("Not implemented!");
@@ -411,6 +734,11 @@ class TarantoolPooledClientSourceTest {
             throw new TarantoolException("Not implemented!");
         }
 
+        @Override
+        public int getByteSize() {
+            throw new TarantoolException("Not implemented!");
+        }
+
         @Override
         public boolean hasNext() {
             throw new TarantoolException("Not implemented!");
@@ -461,6 +789,11 @@ class TarantoolPooledClientSourceTest {
             throw new TarantoolException("Not implemented!");
         }
 
+        @Override
+        public ByteBuffer rawTuple() {
+            throw new TarantoolException("Not implemented!");
+        }
+
         @Override
         public int currentSize() {
             throw new TarantoolException("Not implemented!");
@@ -471,6 +804,16 @@ class TarantoolPooledClientSourceTest {
             throw new TarantoolException("Not implemented!");
         }
 
+        @Override
+        public int readColumns(int[] fieldIndexes, Column... columns) {
+            throw new TarantoolException("Not implemented!");
+        }
+
+        @Override
+        public <T> Spliterator<T> spliterator(TarantoolTemplate.ResultRowMapper<T> mapper) {
+            throw new TarantoolException("Not implemented!");
+        }
+
         @Override
         public void close() {
             throw new TarantoolException("Not implemented!");
@@ -0,0 +1,95 @@
+package com.sopovs.moradanen.tarantool;
+
+import com.sopovs.moradanen.tarantool.core.Iter;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarantoolTupleCacheTest {
+
+    private static TarantoolTupleCache.Key key(int space, int key) {
+        return new TarantoolTupleCache.Key(space, 0, Iter.EQ, Integer.MAX_VALUE, 0, new byte[]{(byte) key});
+    }
+
+    private static void put(TarantoolTupleCache cache, TarantoolTupleCache.Key key, int size) {
+        cache.put(key, new TarantoolTupleCache.Entry(key, new byte[size]), cache.getInvalidations());
+    }
+
+    @Test
+    void testGet() {
+        TarantoolTupleCache cache = new TarantoolTupleCache(10_000, 0, TimeUnit.SECONDS);
+        assertNull(cache.get(key(512, 1)));
+        put(cache, key(512, 1), 100);
+        TarantoolTupleCache.Entry entry = cache.get(key(512, 1));
+        assertNotNull(entry);
+        assertEquals(100, entry.data.length);
+        assertNull(cache.get(key(512, 2)));
+        assertNull(cache.get(key(513, 1)));
+        assertEquals(1, cache.getSize());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    void testByteLimit() {
+        TarantoolTupleCache cache = new TarantoolTupleCache(1000, 0, TimeUnit.SECONDS);
+        put(cache, key(512, 1), 300);
+        put(cache, key(512, 2), 300);
+        assertNotNull(cache.get(key(512, 1)));
+        put(cache, key(512, 3), 300);
+
+        // least recently used one is evicted
+        assertNull(cache.get(key(512, 2)));
+        assertNotNull(cache.get(key(512, 1)));
+        assertNotNull(cache.get(key(512, 3)));
+        assertEquals(2, cache.getSize());
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+
+        put(cache, key(512, 4), 1000);
+        assertNull(cache.get(key(512, 4)));
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    void testTtl() throws InterruptedException {
+        TarantoolTupleCache cache = new TarantoolTupleCache(10_000, 10, TimeUnit.MILLISECONDS);
+        put(cache, key(512, 1), 100);
+        Thread.sleep(20);
+        assertNull(cache.get(key(512, 1)));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    void testInvalidate() {
+        TarantoolTupleCache cache = new TarantoolTupleCache(10_000, 0, TimeUnit.SECONDS);
+        put(cache, key(512, 1), 100);
+        put(cache, key(512, 2), 100);
+        put(cache, key(513, 1), 100);
+        cache.invalidate(512);
+        assertNull(cache.get(key(512, 1)));
+        assertNull(cache.get(key(512, 2)));
+        assertNotNull(cache.get(key(513, 1)));
+        cache.invalidateAll();
+        assertNull(cache.get(key(513, 1)));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    void testLoadedBeforeInvalidate() {
+        TarantoolTupleCache cache = new TarantoolTupleCache(10_000, 0, TimeUnit.SECONDS);
+        long invalidations = cache.getInvalidations();
+        cache.invalidate(512);
+        TarantoolTupleCache.Key key = key(512, 1);
+        cache.put(key, new TarantoolTupleCache.Entry(key, new byte[100]), invalidations);
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    void testWrongArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new TarantoolTupleCache(0, 0, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new TarantoolTupleCache(100, -1, TimeUnit.SECONDS));
+    }
+}
@@ -26,9 +26,16 @@ public class TarantoolDriver implements Driver {
             return null;
         }
         Properties props = parseProperties(url, info);
-        return new TarantoolConnection(
-                new TarantoolClientImpl(props.getProperty("host"), Integer.parseInt(props.getProperty("port", "3301")),
-                        props.getProperty("user"), props.getProperty("password")));
+        int statementCacheSize = Integer.parseInt(props.getProperty("statementCacheSize",
+                String.valueOf(TarantoolClientImpl.DEFAULT_STATEMENT_CACHE_SIZE)));
+        if (statementCacheSize < 0) {
+            throw new SQLException("statementCacheSize can't be negative");
+        }
+        TarantoolClientImpl client = new TarantoolClientImpl(props.getProperty("host"),
+                Integer.parseInt(props.getProperty("port", "3301")), props.getProperty("user"),
+                props.getProperty("password"));
+        client.setStatementCacheSize(statementCacheSize);
+        return new TarantoolConnection(client);
     }
 
     @Override
@@ -39,7 +46,9 @@ public class TarantoolDriver implements Driver {
         DriverPropertyInfo port = new DriverPropertyInfo("port", props.getProperty("port", "3301"));
         port.required = true;
         return new DriverPropertyInfo[]{host, port, new DriverPropertyInfo("user", props.getProperty("user")),
-                new DriverPropertyInfo("password", props.getProperty("password"))};
+                new DriverPropertyInfo("password", props.getProperty("password")),
+                new DriverPropertyInfo("statementCacheSize", props.getProperty("statementCacheSize",
+                        String.valueOf(TarantoolClientImpl.DEFAULT_STATEMENT_CACHE_SIZE)))};
     }
 
     private Properties parseProperties(String url, Properties info) throws SQLException {
@@ -31,7 +31,7 @@ public class TarantoolPreparedStatement extends TarantoolStatement implements Pr
 
     private void executeAndSetParameters() throws SQLException {
         checkClosed();
-        client.sql(sql);
+        client.preparedSql(sql);
         for (int i = 0; i < parameters.size(); i++) {
             requireParameter(parameters.get(i), i).set(client);
         }
@@ -267,8 +267,22 @@ public class TarantoolPreparedStatement extends TarantoolStatement implements Pr
 
     @Override
     public void addBatch() throws SQLException {
-        executeAndSetParameters();
-        client.addBatch();
+        checkClosed();
+        Parameter[] batchParameters = new Parameter[parameters.size()];
+        for (int i = 0; i < batchParameters.length; i++) {
+            batchParameters[i] = requireParameter(parameters.get(i), i);
+        }
+        addToBatch(client -> {
+            client.preparedSql(sql);
+            for (Parameter parameter : batchParameters) {
+                parameter.set(client);
+            }
+        });
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        throw new SQLException("addBatch(String) can't be called on PreparedStatement");
     }
 
     @Override
@@ -2,12 +2,18 @@ package com.sopovs.moradanen.tarantool.jdbc;
 
 import com.sopovs.moradanen.tarantool.SqlResult;
 import com.sopovs.moradanen.tarantool.TarantoolClient;
+import com.sopovs.moradanen.tarantool.core.TarantoolBatchException;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class TarantoolStatement implements Statement {
     private final TarantoolConnection connection;
     final TarantoolClient client;
+    // queries are kept until executeBatch, so that the batch can be cleared before it is sent
+    private final List<Consumer<TarantoolClient>> batch = new ArrayList<>();
     private boolean closed = false;
 
      TarantoolStatement(TarantoolConnection connection) throws SQLException {
@@ -35,6 +41,7 @@ public class TarantoolStatement implements Statement {
             return;
         }
         closed = true;
+        batch.clear();
     }
 
     @Override
@@ -173,18 +180,49 @@ public class TarantoolStatement implements Statement {
 
     @Override
     public void addBatch(String sql) throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        checkClosed();
+        batch.add(client -> client.sql(sql));
+    }
+
+    void addToBatch(Consumer<TarantoolClient> query) {
+        batch.add(query);
     }
 
     @Override
     public void clearBatch() throws SQLException {
-        throw new SQLFeatureNotSupportedException();
+        checkClosed();
+        batch.clear();
     }
 
+    /**
+     * Sends all queries of the batch at once and then reads their update counts.
+     *
+     * @throws BatchUpdateException with update counts of all queries if some of them failed
+     */
     @Override
     public int[] executeBatch() throws SQLException {
         checkClosed();
-        return client.executeBatchUpdate();
+        try {
+            for (Consumer<TarantoolClient> query : batch) {
+                query.accept(client);
+                client.addBatch();
+            }
+        } catch (RuntimeException e) {
+            // queries added before the failed one are already sent, their responses have to be read
+            try {
+                client.executeBatchUpdate();
+            } catch (RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        } finally {
+            batch.clear();
+        }
+        try {
+            return client.executeBatchUpdate();
+        } catch (TarantoolBatchException e) {
+            throw new BatchUpdateException(e.getMessage(), e.getUpdateCounts(), e);
+        }
     }
 
     @Override
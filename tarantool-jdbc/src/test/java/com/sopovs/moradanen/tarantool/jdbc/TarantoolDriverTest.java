@@ -27,4 +27,15 @@ class TarantoolDriverTest {
         assertEquals("password", props[3].name);
         assertEquals("bar", props[3].value);
     }
+
+    @Test
+    void testStatementCacheSizeParsing() throws SQLException {
+        TarantoolDriver driver = new TarantoolDriver();
+        DriverPropertyInfo[] props = driver.getPropertyInfo("jdbc:tarantool://localhost", null);
+        assertEquals("statementCacheSize", props[4].name);
+        assertEquals("64", props[4].value);
+
+        props = driver.getPropertyInfo("jdbc:tarantool://localhost?statementCacheSize=0", null);
+        assertEquals("0", props[4].value);
+    }
 }
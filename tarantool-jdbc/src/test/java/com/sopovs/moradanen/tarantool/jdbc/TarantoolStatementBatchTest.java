@@ -0,0 +1,109 @@
+package com.sopovs.moradanen.tarantool.jdbc;
+
+import com.sopovs.moradanen.tarantool.TarantoolClientImpl;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import com.sopovs.moradanen.tarantool.test.TarantoolStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TarantoolStatementBatchTest {
+    private static final String INSERT = "INSERT INTO TABLE1 VALUES(?,?)";
+    private static final String DELETE = "DELETE FROM TABLE1";
+
+    private final TarantoolStubServer stub = new TarantoolStubServer()
+            .withSqlUpdate(INSERT, 1)
+            .withSqlUpdate(DELETE, 10);
+    private TarantoolConnection con;
+
+    @BeforeEach
+    void setup() {
+        con = new TarantoolConnection(new TarantoolClientImpl("localhost", stub.getPort()));
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        con.close();
+        stub.close();
+    }
+
+    @Test
+    void testPreparedBatch() throws SQLException {
+        try (TarantoolPreparedStatement pst = con.prepareStatement(INSERT)) {
+            for (int i = 0; i < 10; i++) {
+                pst.setInt(1, i);
+                pst.setString(2, "FooBar" + i);
+                pst.addBatch();
+            }
+            int requests = stub.getRequestCount();
+            assertArrayEquals(new int[]{1, 1, 1, 1, 1, 1, 1, 1, 1, 1}, pst.executeBatch());
+            // prepare and all the inserts
+            assertEquals(requests + 11, stub.getRequestCount());
+            assertArrayEquals(new int[0], pst.executeBatch());
+        }
+    }
+
+    @Test
+    void testFailedQuery() throws SQLException {
+        try (TarantoolStatement st = con.createStatement()) {
+            st.addBatch(DELETE);
+            st.addBatch("DROP TABLE TABLE1");
+            st.addBatch(DELETE);
+            BatchUpdateException e = assertThrows(BatchUpdateException.class, st::executeBatch);
+            assertArrayEquals(new int[]{10, Statement.EXECUTE_FAILED, 10}, e.getUpdateCounts());
+
+            // all responses are read, so the connection is still usable
+            assertEquals(10, st.executeUpdate(DELETE));
+        }
+    }
+
+    @Test
+    void testFailedToAddQuery() throws SQLException {
+        try (TarantoolStatement st = con.createStatement()) {
+            st.addBatch(DELETE);
+            st.addToBatch(client -> {
+                throw new TarantoolException("Failed to add query");
+            });
+            st.addBatch(DELETE);
+            int requests = stub.getRequestCount();
+            assertThrows(TarantoolException.class, st::executeBatch, "Failed to add query");
+            assertEquals(requests + 1, stub.getRequestCount());
+
+            // the query sent before the failed one is read, so nothing is left in the batch of the client
+            st.addBatch(DELETE);
+            assertArrayEquals(new int[]{10}, st.executeBatch());
+        }
+    }
+
+    @Test
+    void testClearBatch() throws SQLException {
+        try (TarantoolStatement st = con.createStatement()) {
+            st.addBatch(DELETE);
+            st.clearBatch();
+            int requests = stub.getRequestCount();
+            assertArrayEquals(new int[0], st.executeBatch());
+            assertEquals(requests, stub.getRequestCount());
+        }
+    }
+
+    @Test
+    void testMissingParameter() throws SQLException {
+        try (TarantoolPreparedStatement pst = con.prepareStatement(INSERT)) {
+            pst.setString(2, "FooBar");
+            assertThrows(SQLException.class, pst::addBatch, "Parameter 1 is not set");
+        }
+    }
+
+    @Test
+    void testSqlAddedToPrepared() throws SQLException {
+        try (TarantoolPreparedStatement pst = con.prepareStatement(INSERT)) {
+            assertThrows(SQLException.class, () -> pst.addBatch(DELETE));
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.sopovs.moradanen.tarantool.spring.boot;
 
 import com.sopovs.moradanen.tarantool.TarantoolClientSource;
 import com.sopovs.moradanen.tarantool.TarantoolConfig;
+import com.sopovs.moradanen.tarantool.TarantoolPoolConfig;
+import com.sopovs.moradanen.tarantool.TarantoolPoolMetrics;
 import com.sopovs.moradanen.tarantool.TarantoolPooledClientSource;
 import com.sopovs.moradanen.tarantool.TarantoolTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -22,10 +25,25 @@ public class TarantoolAutoConfiguration {
 
     @Bean
     @ConditionalOnMissingBean
-    public TarantoolClientSource tarantoolClientSource() {
+    public TarantoolClientSource tarantoolClientSource(ObjectProvider<TarantoolPoolMetrics> metrics) {
         TarantoolConfig config = new TarantoolConfig(properties.getHost(), properties.getPort(),
-                properties.getUsername(), properties.getPassword());
-        return clientSource = new TarantoolPooledClientSource(config, properties.getPoolSize());
+                properties.getUsername(), properties.getPassword(), properties.isNio());
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(properties.getPoolSize());
+        if (properties.getPoolAcquireTimeout() != null) {
+            poolConfig.setAcquireTimeout(properties.getPoolAcquireTimeout().toMillis());
+        }
+        poolConfig.setMinIdle(properties.getPoolMinIdle());
+        if (properties.getPoolMaxIdleTime() != null) {
+            poolConfig.setMaxIdleTime(properties.getPoolMaxIdleTime().toMillis());
+        }
+        if (properties.getPoolMaxLifetime() != null) {
+            poolConfig.setMaxLifetime(properties.getPoolMaxLifetime().toMillis());
+        }
+        if (properties.getPoolValidationInterval() != null) {
+            poolConfig.setValidationInterval(properties.getPoolValidationInterval().toMillis());
+        }
+        poolConfig.setMetrics(metrics.getIfAvailable(() -> TarantoolPoolMetrics.NO_OP));
+        return clientSource = new TarantoolPooledClientSource(config, poolConfig);
     }
 
     @Bean
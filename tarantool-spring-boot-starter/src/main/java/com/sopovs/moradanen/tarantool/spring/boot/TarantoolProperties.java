@@ -2,6 +2,8 @@ package com.sopovs.moradanen.tarantool.spring.boot;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @ConfigurationProperties(prefix = "spring.tarantool")
 public class TarantoolProperties {
     /**
@@ -38,6 +40,36 @@ public class TarantoolProperties {
     // application
     private int poolSize = 10;
 
+    /**
+     * Maximum time to wait for a free pooled connection, waits indefinitely if not set.
+     */
+    private Duration poolAcquireTimeout;
+
+    /**
+     * Number of pooled connections opened on startup and kept open when unused.
+     */
+    private int poolMinIdle;
+
+    /**
+     * Time after which unused pooled connections above pool-min-idle are closed, never if not set.
+     */
+    private Duration poolMaxIdleTime;
+
+    /**
+     * Time after which pooled connection is closed once it is not in use, never if not set.
+     */
+    private Duration poolMaxLifetime;
+
+    /**
+     * Time after which unused pooled connection is checked with ping, never if not set.
+     */
+    private Duration poolValidationInterval;
+
+    /**
+     * Whether to use NIO SocketChannel transport instead of socket streams.
+     */
+    private boolean nio;
+
     public String getHost() {
         return host;
     }
@@ -77,4 +109,52 @@ public class TarantoolProperties {
     public void setPoolSize(int poolSize) {
         this.poolSize = poolSize;
     }
+
+    public Duration getPoolAcquireTimeout() {
+        return poolAcquireTimeout;
+    }
+
+    public void setPoolAcquireTimeout(Duration poolAcquireTimeout) {
+        this.poolAcquireTimeout = poolAcquireTimeout;
+    }
+
+    public int getPoolMinIdle() {
+        return poolMinIdle;
+    }
+
+    public void setPoolMinIdle(int poolMinIdle) {
+        this.poolMinIdle = poolMinIdle;
+    }
+
+    public Duration getPoolMaxIdleTime() {
+        return poolMaxIdleTime;
+    }
+
+    public void setPoolMaxIdleTime(Duration poolMaxIdleTime) {
+        this.poolMaxIdleTime = poolMaxIdleTime;
+    }
+
+    public Duration getPoolMaxLifetime() {
+        return poolMaxLifetime;
+    }
+
+    public void setPoolMaxLifetime(Duration poolMaxLifetime) {
+        this.poolMaxLifetime = poolMaxLifetime;
+    }
+
+    public Duration getPoolValidationInterval() {
+        return poolValidationInterval;
+    }
+
+    public void setPoolValidationInterval(Duration poolValidationInterval) {
+        this.poolValidationInterval = poolValidationInterval;
+    }
+
+    public boolean isNio() {
+        return nio;
+    }
+
+    public void setNio(boolean nio) {
+        this.nio = nio;
+    }
 }
@@ -0,0 +1,88 @@
+package com.sopovs.moradanen.tarantool.spring.boot.metrics;
+
+import com.sopovs.moradanen.tarantool.TarantoolPoolMetrics;
+import com.sopovs.moradanen.tarantool.TarantoolPooledClientSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+public class MicrometerTarantoolPoolMetrics implements TarantoolPoolMetrics {
+    private final MeterRegistry registry;
+    private final Iterable<Tag> tags;
+    private final Timer acquire;
+    private final Counter acquireTimeouts;
+    private final Counter creationFailures;
+    private final Counter discarded;
+
+    public MicrometerTarantoolPoolMetrics(MeterRegistry registry) {
+        this(registry, Collections.emptyList());
+    }
+
+    public MicrometerTarantoolPoolMetrics(MeterRegistry registry, Iterable<Tag> tags) {
+        this.registry = registry;
+        this.tags = tags;
+        acquire = Timer.builder("tarantool.pool.acquire")
+                .description("Time spent waiting for a pooled connection")
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry);
+        acquireTimeouts = Counter.builder("tarantool.pool.acquire.timeouts")
+                .description("Number of times no pooled connection was freed within acquire timeout")
+                .tags(tags)
+                .register(registry);
+        creationFailures = Counter.builder("tarantool.pool.creation.failures")
+                .description("Number of failures to open a pooled connection")
+                .tags(tags)
+                .register(registry);
+        discarded = Counter.builder("tarantool.pool.discarded")
+                .description("Number of pooled connections closed after an exception")
+                .tags(tags)
+                .register(registry);
+    }
+
+    @Override
+    public void register(TarantoolPooledClientSource pool) {
+        gauge("tarantool.pool.connections.active", "Connections in use", pool,
+                TarantoolPooledClientSource::getActiveConnections);
+        gauge("tarantool.pool.connections.idle", "Open connections not in use", pool,
+                TarantoolPooledClientSource::getIdleConnections);
+        gauge("tarantool.pool.connections.total", "Open connections", pool,
+                TarantoolPooledClientSource::getTotalConnections);
+        gauge("tarantool.pool.connections.pending", "Threads waiting for a connection", pool,
+                TarantoolPooledClientSource::getPendingThreads);
+    }
+
+    private void gauge(String name, String description, TarantoolPooledClientSource pool,
+                       ToDoubleFunction<TarantoolPooledClientSource> value) {
+        Gauge.builder(name, pool, value)
+                .description(description)
+                .tags(tags)
+                .register(registry);
+    }
+
+    @Override
+    public void acquired(long nanos) {
+        acquire.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void acquireTimedOut() {
+        acquireTimeouts.increment();
+    }
+
+    @Override
+    public void creationFailed() {
+        creationFailures.increment();
+    }
+
+    @Override
+    public void discarded() {
+        discarded.increment();
+    }
+}
@@ -0,0 +1,29 @@
+package com.sopovs.moradanen.tarantool.spring.boot.metrics;
+
+import com.sopovs.moradanen.tarantool.TarantoolPoolMetrics;
+import com.sopovs.moradanen.tarantool.spring.boot.TarantoolAutoConfiguration;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnClass({TarantoolPoolMetrics.class, MeterRegistry.class})
+@ConditionalOnBean(MeterRegistry.class)
+@AutoConfigureAfter(name = {
+        "org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.export.simple.SimpleMetricsExportAutoConfiguration",
+        "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration"})
+@AutoConfigureBefore(TarantoolAutoConfiguration.class)
+public class TarantoolMetricsAutoConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TarantoolPoolMetrics tarantoolPoolMetrics(MeterRegistry meterRegistry) {
+        return new MicrometerTarantoolPoolMetrics(meterRegistry);
+    }
+}
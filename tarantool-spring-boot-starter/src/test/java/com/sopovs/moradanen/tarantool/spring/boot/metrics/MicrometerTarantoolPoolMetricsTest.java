@@ -0,0 +1,31 @@
+package com.sopovs.moradanen.tarantool.spring.boot.metrics;
+
+import com.sopovs.moradanen.tarantool.TarantoolConfig;
+import com.sopovs.moradanen.tarantool.TarantoolPoolConfig;
+import com.sopovs.moradanen.tarantool.TarantoolPooledClientSource;
+import com.sopovs.moradanen.tarantool.core.TarantoolException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MicrometerTarantoolPoolMetricsTest {
+
+    @Test
+    public void testCreationFailure() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TarantoolPoolConfig poolConfig = new TarantoolPoolConfig(2);
+        poolConfig.setMetrics(new MicrometerTarantoolPoolMetrics(registry));
+        try (TarantoolPooledClientSource pool = new TarantoolPooledClientSource(
+                new TarantoolConfig(null, 0, null, null), config -> {
+            throw new TarantoolException("Cannot create!");
+        }, poolConfig)) {
+            assertThrows(TarantoolException.class, pool::getClient);
+            assertEquals(1D, registry.get("tarantool.pool.creation.failures").counter().count());
+            assertEquals(0L, registry.get("tarantool.pool.acquire").timer().count());
+            assertEquals(0D, registry.get("tarantool.pool.connections.total").gauge().value());
+            assertEquals(0D, registry.get("tarantool.pool.connections.pending").gauge().value());
+        }
+    }
+}
@@ -6,6 +6,7 @@ import com.sopovs.moradanen.tarantool.TarantoolClientSource;
 import com.sopovs.moradanen.tarantool.core.IntOp;
 import com.sopovs.moradanen.tarantool.core.Iter;
 import com.sopovs.moradanen.tarantool.core.Op;
+import com.sopovs.moradanen.tarantool.core.TarantoolSchemaException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.core.convert.ConversionService;
@@ -23,6 +24,8 @@ import org.springframework.util.Assert;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 public class TarantoolSessionRepository
         implements FindByIndexNameSessionRepository<TarantoolSessionRepository.TarantoolSession> {
@@ -46,6 +49,7 @@ public class TarantoolSessionRepository
     private Integer space = null;
     private String attributesSpaceName = DEFAULT_ATTRIBUTES_SPACE_NAME;
     private Integer attributesSpace = null;
+    private volatile Spaces spaces = null;
 
     /**
      * If non-null, this value is used to override the default value for
@@ -64,34 +68,76 @@ public class TarantoolSessionRepository
         Assert.hasText(spaceName, "Space name must not be empty");
         this.spaceName = spaceName;
         this.space = null;
+        this.spaces = null;
     }
 
     public void setSpace(int space) {
         this.space = space;
+        this.spaces = null;
     }
 
     public void setAttributesSpaceName(String attributesSpaceName) {
         Assert.hasText(spaceName, "Attributes space name must not be empty");
         this.attributesSpaceName = attributesSpaceName;
         this.attributesSpace = null;
+        this.spaces = null;
     }
 
     public void setAttributesSpace(int attributesSpace) {
         this.attributesSpace = attributesSpace;
+        this.spaces = null;
+    }
+
+    private Spaces getSpaces(TarantoolClient client) {
+        Spaces result = spaces;
+        if (result == null) {
+            // version is taken before names are resolved, so that it is never newer than the resolved ids
+            long schemaVersion = space == null || attributesSpace == null ? client.getSchemaVersion() : 0L;
+            result = spaces = new Spaces(
+                    space != null ? space : client.space(spaceName),
+                    attributesSpace != null ? attributesSpace : client.space(attributesSpaceName),
+                    schemaVersion);
+        }
+        return result;
     }
 
     private int getSpace(TarantoolClient client) {
-        if (space == null) {
-            space = client.space(spaceName);
-        }
-        return space;
+        return getSpaces(client).space;
     }
 
     int getAttributesSpace(TarantoolClient client) {
-        if (attributesSpace == null) {
-            attributesSpace = client.space(attributesSpaceName);
+        return getSpaces(client).attributesSpace;
+    }
+
+    /**
+     * Requests are sent with the schema version space ids were resolved with, once spaces are recreated server
+     * rejects them and the action is retried with ids resolved again.
+     */
+    private <T> T withClient(Function<TarantoolClient, T> action) {
+        try {
+            return withClientOnce(action);
+        } catch (TarantoolSchemaException e) {
+            spaces = null;
+            return withClientOnce(action);
+        }
+    }
+
+    private void doWithClient(Consumer<TarantoolClient> action) {
+        withClient(client -> {
+            action.accept(client);
+            return null;
+        });
+    }
+
+    private <T> T withClientOnce(Function<TarantoolClient, T> action) {
+        try (TarantoolClient client = clientSource.getClient()) {
+            client.setSchemaVersion(getSpaces(client).schemaVersion);
+            try {
+                return action.apply(client);
+            } finally {
+                client.setSchemaVersion(0L);
+            }
         }
-        return attributesSpace;
     }
 
     /**
@@ -126,7 +172,7 @@ public class TarantoolSessionRepository
 
     @Override
     public void save(final TarantoolSession session) {
-        try (TarantoolClient client = clientSource.getClient()) {
+        doWithClient(client -> {
             int space = getSpace(client);
             int attributesSpace = getAttributesSpace(client);
             if (session.isNew()) {
@@ -189,23 +235,21 @@ public class TarantoolSessionRepository
                 }
 
             }
-        }
+        });
         session.clearChangeFlags();
     }
 
     @Override
     public TarantoolSession findById(final String id) {
-        try (TarantoolClient client = clientSource.getClient()) {
-            return findById(UUID.fromString(id), id, client);
-        }
+        UUID uuid = UUID.fromString(id);
+        return withClient(client -> findById(uuid, id, client));
     }
 
     @Override
     public void deleteById(final String id) {
         // TODO lua-procedure
-        try (TarantoolClient client = clientSource.getClient()) {
-            deleteById(UUID.fromString(id), id, client);
-        }
+        UUID uuid = UUID.fromString(id);
+        doWithClient(client -> deleteById(uuid, id, client));
     }
 
     private void deleteById(UUID id, TarantoolClient client) {
@@ -283,10 +327,9 @@ public class TarantoolSessionRepository
             return Collections.emptyMap();
         }
 
-        Map<String, TarantoolSession> sessionMap = new HashMap<>();
-
         // TODO N+1 queries - lua procedure for the rescue
-        try (TarantoolClient client = clientSource.getClient()) {
+        return withClient(client -> {
+            Map<String, TarantoolSession> sessionMap = new HashMap<>();
             client.select(getSpace(client), SPACE_NAME_INDEX);
             client.setString(indexValue);
             Result result = client.execute();
@@ -298,13 +341,13 @@ public class TarantoolSessionRepository
             for (TarantoolSession session : sessionMap.values()) {
                 getAttributes(session, client);
             }
-        }
-        return sessionMap;
+            return sessionMap;
+        });
     }
 
     void cleanUpExpiredSessions() {
         // TODO another lua procedure
-        try (TarantoolClient client = clientSource.getClient()) {
+        doWithClient(client -> {
             client.select(getSpace(client), SPACE_EXPIRY_INDEX, Integer.MAX_VALUE, 0, Iter.LE);
             client.setLong(System.currentTimeMillis());
             Result result = client.execute();
@@ -316,7 +359,7 @@ public class TarantoolSessionRepository
             if (logger.isDebugEnabled()) {
                 logger.debug("Cleaned up " + ids.size() + " expired sessions");
             }
-        }
+        });
     }
 
     private static GenericConversionService createDefaultConversionService() {
@@ -336,6 +379,19 @@ public class TarantoolSessionRepository
                 TypeDescriptor.valueOf(Object.class));
     }
 
+    // ids of spaces with version of schema they were resolved with
+    private static final class Spaces {
+        final int space;
+        final int attributesSpace;
+        final long schemaVersion;
+
+        Spaces(int space, int attributesSpace, long schemaVersion) {
+            this.space = space;
+            this.attributesSpace = attributesSpace;
+            this.schemaVersion = schemaVersion;
+        }
+    }
+
     static final class TarantoolSession implements Session {
 
         private final MapSession delegate;
@@ -493,6 +549,7 @@ public class TarantoolSessionRepository
         try (TarantoolClient client = clientSource.getClient()) {
             createSpaces(spaceName, attributesSpaceName, client);
         }
+        spaces = null;
     }
 
     private static void createSpaces(String spaceName, String attributesSpaceName, TarantoolClient client) {
@@ -85,6 +85,22 @@ class TarantoolSessionRepositoryTest {
         assertSessionEquals(sessionRepository.findById(session.getId()));
     }
 
+    @Test
+    void testFindByIdAfterSpacesRecreated() {
+        sessionRepository.save(session);
+        assertNotNull(sessionRepository.findById(session.getId()));
+        try (TarantoolClient client = clientSource.getClient()) {
+            client.evalFully("box.space." + DEFAULT_SPACE_NAME + ":drop()").close();
+            client.evalFully("box.space." + DEFAULT_ATTRIBUTES_SPACE_NAME + ":drop()").close();
+        }
+        // created by another instance, so ids resolved by this repository are stale
+        new TarantoolSessionRepository(clientSource).createSpaces();
+        assertNull(sessionRepository.findById(session.getId()));
+        TarantoolSession created = sessionRepository.createSession();
+        sessionRepository.save(created);
+        assertNotNull(sessionRepository.findById(created.getId()));
+    }
+
     @Test
     void testFindByIdWithPrincipalName() {
         testSaveWithPrincipalName();